@@ -0,0 +1,18 @@
+#!/bin/sh
+# Builds an AppCDS archive of the classes a rental start loads, then times
+# cold starts from text, from the startup image and from the image with the
+# archive. Needs JDK 13 or later for -XX:ArchiveClassesAtExit. CDS only
+# archives classes loaded from jars, so the compiled classes are packed first.
+#   ./appcds.sh [classes-dir] [vehicles] [runs]
+# Run the app the same way to use the archive:
+#   java -XX:SharedArchiveFile=rental-app.jsa -cp rental-app.jar VehicleRentalApp
+set -e
+CLASSES=${1:-bin}
+VEHICLES=${2:-20000}
+RUNS=${3:-5}
+JAR=rental-app.jar
+ARCHIVE=rental-app.jsa
+
+jar cf "$JAR" -C "$CLASSES" .
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$JAR" StartupBenchmark --train
+java -cp "$JAR" StartupBenchmark "$VEHICLES" "$RUNS" "$ARCHIVE"
@@ -0,0 +1,46 @@
+import java.time.LocalDate;
+
+// An open rental: the RENT record that started it and when it is due back.
+public class ActiveRental {
+    private final RentalRecord rentRecord;
+    private final LocalDate dueDate;
+
+    public ActiveRental(RentalRecord rentRecord, LocalDate dueDate) {
+        this.rentRecord = rentRecord;
+        this.dueDate = dueDate;
+    }
+
+    public RentalRecord getRentRecord() {
+        return rentRecord;
+    }
+
+    public Vehicle getVehicle() {
+        return rentRecord.getVehicle();
+    }
+
+    public Customer getCustomer() {
+        return rentRecord.getCustomer();
+    }
+
+    public LocalDate getStartDate() {
+        return rentRecord.getRecordDate();
+    }
+
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    public long getAmountCents() {
+        return rentRecord.getTotalAmountCents();
+    }
+
+    public boolean isOverdue(LocalDate today) {
+        return today.isAfter(dueDate);
+    }
+
+    @Override
+    public String toString() {
+        return "Plate: " + getVehicle().getLicensePlate() + " | Customer: " + getCustomer().getCustomerName()
+                + " | Since: " + getStartDate() + " | Due: " + dueDate;
+    }
+}
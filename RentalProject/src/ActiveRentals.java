@@ -0,0 +1,92 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Open rentals keyed by plate, with secondary indexes by customer and by due
+// date so "rented by X" and overdue listings never scan the history.
+public class ActiveRentals {
+    private final Map<String, ActiveRental> byPlate = new HashMap<>();
+    private final Map<Integer, Set<String>> byCustomer = new HashMap<>();
+    private final TreeMap<LocalDate, Set<String>> byDueDate = new TreeMap<>();
+
+    public synchronized ActiveRental open(RentalRecord rentRecord, LocalDate dueDate) {
+        String plate = key(rentRecord.getVehicle());
+        if (byPlate.containsKey(plate)) {
+            close(plate);
+        }
+        ActiveRental rental = new ActiveRental(rentRecord, dueDate);
+        byPlate.put(plate, rental);
+        byCustomer.computeIfAbsent(rentRecord.getCustomer().getCustomerId(), k -> new LinkedHashSet<>()).add(plate);
+        byDueDate.computeIfAbsent(dueDate, k -> new LinkedHashSet<>()).add(plate);
+        return rental;
+    }
+
+    public synchronized ActiveRental close(String licensePlate) {
+        String plate = licensePlate.toUpperCase();
+        ActiveRental rental = byPlate.remove(plate);
+        if (rental == null) {
+            return null;
+        }
+        removeFrom(byCustomer, rental.getCustomer().getCustomerId(), plate);
+        removeFrom(byDueDate, rental.getDueDate(), plate);
+        return rental;
+    }
+
+    public synchronized ActiveRental get(String licensePlate) {
+        return licensePlate == null ? null : byPlate.get(licensePlate.toUpperCase());
+    }
+
+    public synchronized List<ActiveRental> rentedBy(int customerId) {
+        Set<String> plates = byCustomer.get(customerId);
+        if (plates == null) {
+            return Collections.emptyList();
+        }
+        return lookup(plates);
+    }
+
+    // Rentals whose due date is before today, earliest first.
+    public synchronized List<ActiveRental> overdue(LocalDate today) {
+        List<ActiveRental> result = new ArrayList<>();
+        for (Set<String> plates : byDueDate.headMap(today, false).values()) {
+            result.addAll(lookup(plates));
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return byPlate.size();
+    }
+
+    public synchronized List<ActiveRental> all() {
+        return new ArrayList<>(byPlate.values());
+    }
+
+    private List<ActiveRental> lookup(Collection<String> plates) {
+        List<ActiveRental> result = new ArrayList<>(plates.size());
+        for (String plate : plates) {
+            result.add(byPlate.get(plate));
+        }
+        return result;
+    }
+
+    private static <K> void removeFrom(Map<K, Set<String>> index, K key, String plate) {
+        Set<String> plates = index.get(key);
+        if (plates != null) {
+            plates.remove(plate);
+            if (plates.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static String key(Vehicle vehicle) {
+        return vehicle.getLicensePlate().toUpperCase();
+    }
+}
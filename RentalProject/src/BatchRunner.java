@@ -0,0 +1,208 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Runs operations from a command stream instead of the interactive menu, one
+// command per line with comma-separated fields. Blank lines and lines
+// starting with # are skipped. Dates default to today.
+//   add-vehicle,car,PLATE,MAKE,MODEL,YEAR,SEATS
+//   add-vehicle,motorcycle,PLATE,MAKE,MODEL,YEAR,SIDECAR
+//   add-vehicle,truck,PLATE,MAKE,MODEL,YEAR,CARGO
+//   add-customer,ID,NAME
+//   rent,PLATE,CUSTOMER_ID,AMOUNT[,DATE]
+//   return,PLATE,CUSTOMER_ID,FEES[,DATE]
+//   status,PLATE,STATUS
+//   available
+//   history
+// A bad line is reported with its number and the run carries on.
+public class BatchRunner {
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private final RentalSystem system;
+    private final LocalDate today;
+
+    public BatchRunner(RentalSystem system, LocalDate today) {
+        this.system = system;
+        this.today = today;
+    }
+
+    public Summary run(BufferedReader in, PrintStream out) throws IOException {
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",", -1);
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fields[i].trim();
+            }
+            String command = fields[0].toLowerCase();
+            String error;
+            try {
+                error = execute(command, fields, out);
+            } catch (NumberFormatException | DateTimeParseException e) {
+                error = "bad value: " + e.getMessage();
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+            summary.count(command, error == null);
+            if (error != null) {
+                summary.error("line " + lineNumber + ": " + error);
+            }
+        }
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    // Returns null on success, otherwise why the command failed.
+    private String execute(String command, String[] f, PrintStream out) {
+        switch (command) {
+            case "add-vehicle": {
+                expect(f, 7, 7);
+                String kind = f[1].toLowerCase();
+                int year = Integer.parseInt(f[5]);
+                Vehicle vehicle;
+                if (kind.equals("car")) {
+                    vehicle = new Car(f[3], f[4], year, Integer.parseInt(f[6]));
+                } else if (kind.equals("motorcycle")) {
+                    vehicle = new Motorcycle(f[3], f[4], year, Boolean.parseBoolean(f[6]));
+                } else if (kind.equals("truck")) {
+                    vehicle = new Truck(f[3], f[4], year, Double.parseDouble(f[6]));
+                } else {
+                    return "unknown vehicle type " + f[1];
+                }
+                vehicle.setLicensePlate(f[2].toUpperCase());
+                return system.addVehicle(vehicle) ? null : "vehicle " + f[2] + " already exists";
+            }
+            case "add-customer":
+                expect(f, 3, 3);
+                return system.addCustomer(new Customer(Integer.parseInt(f[1]), f[2]))
+                        ? null : "customer " + f[1] + " already exists";
+            case "rent": {
+                expect(f, 4, 5);
+                Vehicle vehicle = vehicle(f[1]);
+                Customer customer = customer(f[2]);
+                if (vehicle == null || customer == null) {
+                    return vehicle == null ? "no vehicle " + f[1] : "no customer " + f[2];
+                }
+                return system.rentVehicleCents(vehicle, customer, date(f, 4), Money.parse(f[3]))
+                        ? null : f[1] + " is " + vehicle.getStatus();
+            }
+            case "return": {
+                expect(f, 4, 5);
+                Vehicle vehicle = vehicle(f[1]);
+                Customer customer = customer(f[2]);
+                if (vehicle == null || customer == null) {
+                    return vehicle == null ? "no vehicle " + f[1] : "no customer " + f[2];
+                }
+                return system.returnVehicleCents(vehicle, customer, date(f, 4), Money.parse(f[3]))
+                        ? null : f[1] + " could not be returned by " + f[2];
+            }
+            case "status": {
+                expect(f, 3, 3);
+                Vehicle vehicle = vehicle(f[1]);
+                if (vehicle == null) {
+                    return "no vehicle " + f[1];
+                }
+                system.updateVehicleStatus(vehicle, Vehicle.VehicleStatus.valueOf(f[2].toUpperCase()));
+                return null;
+            }
+            case "available":
+                expect(f, 1, 1);
+                for (VehicleState v : system.getSnapshot().getVehiclesWithStatus(Vehicle.VehicleStatus.AVAILABLE)) {
+                    out.println(v.getInfo());
+                }
+                return null;
+            case "history":
+                expect(f, 1, 1);
+                for (RentalRecord r : system.getRentalHistory().getRentalHistory()) {
+                    out.println(r);
+                }
+                return null;
+            default:
+                return "unknown command " + f[0];
+        }
+    }
+
+    private static void expect(String[] fields, int min, int max) {
+        if (fields.length < min || fields.length > max) {
+            throw new IllegalArgumentException(fields[0] + " takes " + (min == max ? "" + (min - 1) : (min - 1) + "-" + (max - 1))
+                    + " fields, got " + (fields.length - 1));
+        }
+    }
+
+    private Vehicle vehicle(String plate) {
+        return system.findVehicleByPlate(plate.toUpperCase());
+    }
+
+    private Customer customer(String id) {
+        return system.findCustomerById(Integer.parseInt(id));
+    }
+
+    private LocalDate date(String[] fields, int index) {
+        return fields.length > index && !fields[index].isEmpty() ? LocalDate.parse(fields[index]) : today;
+    }
+
+    public static final class Summary {
+        private final Map<String, int[]> byCommand = new TreeMap<>();
+        private final List<String> errors = new ArrayList<>();
+        private int succeeded;
+        private int failed;
+        private long elapsedNanos;
+
+        private void count(String command, boolean ok) {
+            int[] counts = byCommand.computeIfAbsent(command, c -> new int[2]);
+            counts[ok ? 0 : 1]++;
+            if (ok) {
+                succeeded++;
+            } else {
+                failed++;
+            }
+        }
+
+        private void error(String message) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(message);
+            }
+        }
+
+        public int getSucceeded() {
+            return succeeded;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (String e : errors) {
+                sb.append(e).append('\n');
+            }
+            if (failed > errors.size()) {
+                sb.append("... ").append(failed - errors.size()).append(" more errors\n");
+            }
+            for (Map.Entry<String, int[]> e : byCommand.entrySet()) {
+                sb.append(String.format("%-12s %8d ok %6d failed%n", e.getKey(), e.getValue()[0], e.getValue()[1]));
+            }
+            sb.append(String.format("%d commands, %d failed, %d ms%n", succeeded + failed, failed, elapsedNanos / 1_000_000));
+            return sb.toString();
+        }
+    }
+}
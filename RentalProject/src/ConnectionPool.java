@@ -0,0 +1,109 @@
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Fixed-size JDBC connection pool. Connections are opened lazily up to
+// maxSize; callers run work through withConnection so a connection always
+// goes back to the pool, and broken ones are replaced.
+public class ConnectionPool implements Closeable {
+    public interface SqlWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long timeoutMillis;
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> all = new ArrayList<>();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, int maxSize, long timeoutMillis) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.timeoutMillis = timeoutMillis;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    public <T> T withConnection(SqlWork<T> work) throws SQLException {
+        Connection connection = borrow();
+        boolean broken = false;
+        try {
+            return work.run(connection);
+        } catch (SQLException e) {
+            broken = !connection.isValid(1);
+            throw e;
+        } finally {
+            release(connection, broken);
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        Connection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        synchronized (this) {
+            if (all.size() < maxSize) {
+                connection = DriverManager.getConnection(url, user, password);
+                all.add(connection);
+                return connection;
+            }
+        }
+        try {
+            connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection", e);
+        }
+        if (connection == null) {
+            throw new SQLException("No connection available within " + timeoutMillis + " ms");
+        }
+        return connection;
+    }
+
+    private void release(Connection connection, boolean broken) {
+        if (broken || closed) {
+            synchronized (this) {
+                all.remove(connection);
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing connection: " + e.getMessage());
+            }
+            return;
+        }
+        idle.offer(connection);
+    }
+
+    public synchronized int size() {
+        return all.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Connection connection : all) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing connection: " + e.getMessage());
+            }
+        }
+        all.clear();
+        idle.clear();
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Name lookups for customers: exact match, prefix match on any word of the
+// name (trie) and typo-tolerant match (trigram candidates ranked by edit
+// distance). Names are compared lower-cased with collapsed whitespace.
+public class CustomerNameIndex {
+    private static final int MAX_EDITS = 2;
+    // One edit changes at most this many of a name's padded trigrams.
+    private static final int GRAMS_PER_EDIT = 3;
+
+    private final Map<String, List<Customer>> exact = new HashMap<>();
+    private final Map<String, List<Entry>> trigrams = new HashMap<>();
+    private final Node root = new Node();
+
+    // A trigram posting keeps the normalized name so fuzzy matching does not
+    // normalize candidates again.
+    private static final class Entry {
+        final Customer customer;
+        final String name;
+
+        Entry(Customer customer, String name) {
+            this.customer = customer;
+            this.name = name;
+        }
+    }
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        List<Customer> customers;
+
+        Node child(char c, boolean create) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            if (!create) {
+                return null;
+            }
+            int at = -i - 1;
+            Node node = new Node();
+            keys = insert(keys, at, c);
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, at);
+            grown[at] = node;
+            System.arraycopy(children, at, grown, at + 1, children.length - at);
+            children = grown;
+            return node;
+        }
+
+        private static char[] insert(char[] a, int at, char c) {
+            char[] grown = new char[a.length + 1];
+            System.arraycopy(a, 0, grown, 0, at);
+            grown[at] = c;
+            System.arraycopy(a, at, grown, at + 1, a.length - at);
+            return grown;
+        }
+    }
+
+    public synchronized void add(Customer customer) {
+        String name = normalize(customer.getCustomerName());
+        if (name.isEmpty()) {
+            return;
+        }
+        exact.computeIfAbsent(name, k -> new ArrayList<>(1)).add(customer);
+        // Every word start is a trie entry so "doe" finds "John Doe".
+        for (int i = 0; i < name.length(); i++) {
+            if (i == 0 || name.charAt(i - 1) == ' ') {
+                Node node = root;
+                for (int j = i; j < name.length(); j++) {
+                    node = node.child(name.charAt(j), true);
+                }
+                if (node.customers == null) {
+                    node.customers = new ArrayList<>(1);
+                }
+                node.customers.add(customer);
+            }
+        }
+        Entry entry = new Entry(customer, name);
+        for (String gram : grams(name)) {
+            List<Entry> list = trigrams.computeIfAbsent(gram, k -> new ArrayList<>());
+            if (list.isEmpty() || list.get(list.size() - 1) != entry) {
+                list.add(entry);
+            }
+        }
+    }
+
+    public synchronized Customer findExact(String name) {
+        List<Customer> matches = exact.get(normalize(name));
+        return matches == null ? null : matches.get(0);
+    }
+
+    public synchronized List<Customer> prefix(String query, int limit) {
+        Node node = root;
+        String q = normalize(query);
+        for (int i = 0; i < q.length() && node != null; i++) {
+            node = node.child(q.charAt(i), false);
+        }
+        if (node == null || q.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<Customer> found = new LinkedHashSet<>();
+        collect(node, found, limit);
+        return new ArrayList<>(found);
+    }
+
+    private void collect(Node node, Set<Customer> found, int limit) {
+        if (node.customers != null) {
+            for (Customer c : node.customers) {
+                if (found.size() >= limit) {
+                    return;
+                }
+                found.add(c);
+            }
+        }
+        for (Node child : node.children) {
+            if (found.size() >= limit) {
+                return;
+            }
+            collect(child, found, limit);
+        }
+    }
+
+    // A name within MAX_EDITS of the query shares all but GRAMS_PER_EDIT
+    // trigrams per edit with it, so candidates sharing fewer are skipped
+    // before the edit distance is computed. The rest are ranked by edit
+    // distance and name.
+    public synchronized List<Customer> fuzzy(String query, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> queryGrams = grams(q);
+        int minShared = Math.max(1, queryGrams.size() - GRAMS_PER_EDIT * MAX_EDITS);
+        Map<Entry, Integer> shared = new HashMap<>();
+        for (String gram : queryGrams) {
+            List<Entry> list = trigrams.get(gram);
+            if (list != null) {
+                for (Entry e : list) {
+                    shared.merge(e, 1, Integer::sum);
+                }
+            }
+        }
+        List<Object[]> scored = new ArrayList<>();
+        for (Map.Entry<Entry, Integer> candidate : shared.entrySet()) {
+            if (candidate.getValue() < minShared) {
+                continue;
+            }
+            Entry e = candidate.getKey();
+            int distance = boundedDistance(q, e.name, MAX_EDITS);
+            if (distance <= MAX_EDITS) {
+                scored.add(new Object[] { e.customer, distance });
+            }
+        }
+        scored.sort((a, b) -> {
+            int cmp = Integer.compare((Integer) a[1], (Integer) b[1]);
+            return cmp != 0 ? cmp : ((Customer) a[0]).getCustomerName().compareToIgnoreCase(((Customer) b[0]).getCustomerName());
+        });
+        List<Customer> result = new ArrayList<>();
+        for (int i = 0; i < scored.size() && i < limit; i++) {
+            result.add((Customer) scored.get(i)[0]);
+        }
+        return result;
+    }
+
+    // Exact matches first, then prefix matches, then close misspellings.
+    public List<Customer> search(String query, int limit) {
+        Set<Customer> result = new LinkedHashSet<>();
+        synchronized (this) {
+            List<Customer> matches = exact.get(normalize(query));
+            if (matches != null) {
+                result.addAll(matches);
+            }
+        }
+        for (Customer c : prefix(query, limit)) {
+            result.add(c);
+        }
+        if (result.size() < limit) {
+            result.addAll(fuzzy(query, limit));
+        }
+        List<Customer> list = new ArrayList<>(result);
+        return list.size() > limit ? list.subList(0, limit) : list;
+    }
+
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        return name.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    private static List<String> grams(String name) {
+        String padded = " " + name + " ";
+        List<String> grams = new ArrayList<>(padded.length());
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    // Levenshtein distance with an early exit once every cell in a row exceeds max.
+    static int boundedDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[b.length()];
+    }
+}
@@ -0,0 +1,96 @@
+import java.time.LocalDate;
+
+// Running totals for one customer, folded from their RentalRecords: rental
+// and return counts, lifetime spend and first/last rental dates. Immutable;
+// each record produces a new value in O(1).
+public final class CustomerStats {
+    public enum Tier { BRONZE, SILVER, GOLD, PLATINUM }
+
+    // Lifetime spend in cents or number of rentals needed for each tier above BRONZE.
+    private static final long[] TIER_CENTS = { 50_000, 150_000, 500_000 };
+    private static final int[] TIER_RENTALS = { 5, 20, 50 };
+
+    private final int customerId;
+    private final int rentals;
+    private final int returns;
+    private final long totalCents;
+    private final LocalDate firstRental;
+    private final LocalDate lastRental;
+
+    public CustomerStats(int customerId, int rentals, int returns, long totalCents, LocalDate firstRental, LocalDate lastRental) {
+        this.customerId = customerId;
+        this.rentals = rentals;
+        this.returns = returns;
+        this.totalCents = totalCents;
+        this.firstRental = firstRental;
+        this.lastRental = lastRental;
+    }
+
+    public static CustomerStats empty(int customerId) {
+        return new CustomerStats(customerId, 0, 0, 0, null, null);
+    }
+
+    public CustomerStats plus(RentalRecord record) {
+        if (!"RENT".equals(record.getRecordType())) {
+            return new CustomerStats(customerId, rentals, returns + 1, totalCents + record.getTotalAmountCents(),
+                    firstRental, lastRental);
+        }
+        LocalDate date = record.getRecordDate();
+        return new CustomerStats(customerId, rentals + 1, returns, totalCents + record.getTotalAmountCents(),
+                firstRental == null || date.isBefore(firstRental) ? date : firstRental,
+                lastRental == null || date.isAfter(lastRental) ? date : lastRental);
+    }
+
+    public CustomerStats plus(CustomerStats other) {
+        return new CustomerStats(customerId, rentals + other.rentals, returns + other.returns, totalCents + other.totalCents,
+                earliest(firstRental, other.firstRental), latest(lastRental, other.lastRental));
+    }
+
+    private static LocalDate earliest(LocalDate a, LocalDate b) {
+        return a == null ? b : b == null || a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDate latest(LocalDate a, LocalDate b) {
+        return a == null ? b : b == null || a.isAfter(b) ? a : b;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public int getRentals() {
+        return rentals;
+    }
+
+    public int getReturns() {
+        return returns;
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    // Null until the customer has rented something.
+    public LocalDate getFirstRental() {
+        return firstRental;
+    }
+
+    public LocalDate getLastRental() {
+        return lastRental;
+    }
+
+    public Tier getTier() {
+        for (int i = TIER_CENTS.length - 1; i >= 0; i--) {
+            if (totalCents >= TIER_CENTS[i] || rentals >= TIER_RENTALS[i]) {
+                return Tier.values()[i + 1];
+            }
+        }
+        return Tier.BRONZE;
+    }
+
+    @Override
+    public String toString() {
+        return "Customer " + customerId + ": " + rentals + " rentals, " + Money.format(totalCents)
+                + (lastRental == null ? "" : ", last " + lastRental) + ", " + getTier();
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// CustomerStats for every customer with history, plus two skip lists that
+// keep them ranked by lifetime spend and by rental count. An update replaces
+// the customer's entry in each list in O(log n); top-N reads walk the head
+// of a list without locking or sorting, and may miss a customer whose
+// entry is being replaced at that moment.
+public class CustomerStatsIndex {
+    private static final Comparator<CustomerStats> BY_SPEND = Comparator
+            .comparingLong(CustomerStats::getTotalCents).reversed()
+            .thenComparingInt(CustomerStats::getCustomerId);
+    private static final Comparator<CustomerStats> BY_RENTALS = Comparator
+            .comparingInt(CustomerStats::getRentals).reversed()
+            .thenComparing(BY_SPEND);
+
+    private final Map<Integer, CustomerStats> stats = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<CustomerStats> bySpend = new ConcurrentSkipListSet<>(BY_SPEND);
+    private final ConcurrentSkipListSet<CustomerStats> byRentals = new ConcurrentSkipListSet<>(BY_RENTALS);
+
+    public synchronized void record(RentalRecord record) {
+        CustomerStats old = current(record.getCustomer().getCustomerId());
+        replace(old, old.plus(record));
+    }
+
+    // Folds in totals computed elsewhere, e.g. an archive segment's summary.
+    public synchronized void add(CustomerStats summary) {
+        CustomerStats old = current(summary.getCustomerId());
+        replace(old, old.plus(summary));
+    }
+
+    private CustomerStats current(int customerId) {
+        CustomerStats s = stats.get(customerId);
+        return s == null ? CustomerStats.empty(customerId) : s;
+    }
+
+    private void replace(CustomerStats old, CustomerStats updated) {
+        bySpend.remove(old);
+        byRentals.remove(old);
+        stats.put(updated.getCustomerId(), updated);
+        bySpend.add(updated);
+        byRentals.add(updated);
+    }
+
+    // Never null; a customer without history gets empty stats.
+    public CustomerStats get(int customerId) {
+        return current(customerId);
+    }
+
+    public int size() {
+        return stats.size();
+    }
+
+    public List<CustomerStats> topBySpend(int n) {
+        return head(bySpend, n);
+    }
+
+    public List<CustomerStats> topByRentals(int n) {
+        return head(byRentals, n);
+    }
+
+    private static List<CustomerStats> head(ConcurrentSkipListSet<CustomerStats> ranked, int n) {
+        List<CustomerStats> top = new ArrayList<>(Math.min(n, 64));
+        Iterator<CustomerStats> it = ranked.iterator();
+        while (top.size() < n && it.hasNext()) {
+            top.add(it.next());
+        }
+        return top;
+    }
+
+    // Counts over the given customers, not just those with history: a
+    // customer without stats is BRONZE.
+    public Map<CustomerStats.Tier, Integer> countByTier(Iterable<Customer> customers) {
+        Map<CustomerStats.Tier, Integer> counts = new EnumMap<>(CustomerStats.Tier.class);
+        for (Customer customer : customers) {
+            counts.merge(current(customer.getCustomerId()).getTier(), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
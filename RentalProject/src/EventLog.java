@@ -0,0 +1,100 @@
+import java.util.List;
+import java.util.function.LongFunction;
+
+// In-memory log of RentalEvents with dense sequences from 1. It is not
+// persisted: each start seeds it from the stores, so it describes changes
+// since load and is a check on live state, not a way to recover data.
+// Appends are serialized; readers take the current PersistentVector and
+// iterate it without locking. Past MAX_RETAINED events the oldest half is
+// folded into a base projection and dropped, so memory stays bounded.
+// Live subscribers get each event through a ring buffer in log order.
+public class EventLog {
+    private static final int FEED_CAPACITY = 1024;
+    static final int MAX_RETAINED = 100_000;
+
+    private final int maxRetained;
+    private volatile PersistentVector<RentalEvent> events = PersistentVector.empty();
+    // Everything up to baseSequence, folded; only replaced, never modified.
+    private EventProjection base = new EventProjection();
+    private volatile long baseSequence;
+    private final EventRingBuffer feed = new EventRingBuffer(FEED_CAPACITY);
+
+    public EventLog() {
+        this(MAX_RETAINED);
+    }
+
+    EventLog(int maxRetained) {
+        this.maxRetained = maxRetained;
+    }
+
+    // The factory receives the sequence the event will have.
+    public synchronized <E extends RentalEvent> E append(LongFunction<E> factory) {
+        E event = factory.apply(baseSequence + events.size() + 1L);
+        events = events.plus(event);
+        if (events.size() > maxRetained) {
+            truncate(events.size() / 2);
+        }
+        if (feed.hasSubscribers()) {
+            feed.publish(event);
+        }
+        return event;
+    }
+
+    private void truncate(int count) {
+        PersistentVector<RentalEvent> current = events;
+        EventProjection folded = EventProjection.rebuild(base, current.subList(0, count), 1);
+        PersistentVector<RentalEvent> tail = PersistentVector.empty();
+        for (int i = count; i < current.size(); i++) {
+            tail = tail.plus(current.get(i));
+        }
+        base = folded;
+        baseSequence += count;
+        events = tail;
+    }
+
+    // The retained events folded onto the base, partitioned for rebuild().
+    public EventProjection project(int partitions) {
+        EventProjection from;
+        PersistentVector<RentalEvent> tail;
+        synchronized (this) {
+            from = base;
+            tail = events;
+        }
+        return EventProjection.rebuild(from, tail, partitions);
+    }
+
+    // The subscriber receives events appended after this call on its own
+    // thread; earlier ones are available through since().
+    public synchronized EventRingBuffer.Subscription subscribe(String name, EventRingBuffer.Listener listener) {
+        return feed.subscribe(name, listener);
+    }
+
+    public EventRingBuffer getFeed() {
+        return feed;
+    }
+
+    // The retained events only; older ones are in the base projection.
+    public List<RentalEvent> getEvents() {
+        return events;
+    }
+
+    public synchronized long getFirstSequence() {
+        return baseSequence + 1;
+    }
+
+    public synchronized long getLastSequence() {
+        return baseSequence + events.size();
+    }
+
+    // Retained events after sequence; those before getFirstSequence() are gone.
+    public List<RentalEvent> since(long sequence) {
+        PersistentVector<RentalEvent> current;
+        long first;
+        synchronized (this) {
+            current = events;
+            first = baseSequence;
+        }
+        int from = (int) Math.max(0, Math.min(sequence - first, current.size()));
+        return current.subList(from, current.size());
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+// Current state folded from RentalEvents: status per plate, the open rental
+// per plate and total spend per customer. Plate state only depends on that
+// plate's events, so the log can be split by plate, folded in parallel and
+// merged; customer totals are sums and merge by adding.
+public class EventProjection {
+    private final Map<String, Vehicle.VehicleStatus> statusByPlate = new HashMap<>();
+    private final Map<String, RentalEvent.VehicleRented> openRentals = new HashMap<>();
+    private final Map<Integer, Long> centsByCustomer = new HashMap<>();
+
+    public void apply(RentalEvent event) {
+        String plate = event.getLicensePlate();
+        switch (event.getType()) {
+            case VEHICLE_ADDED:
+                if (plate != null) {
+                    statusByPlate.put(plate, ((RentalEvent.VehicleAdded) event).getStatus());
+                }
+                break;
+            case CUSTOMER_ADDED:
+                RentalEvent.CustomerAdded added = (RentalEvent.CustomerAdded) event;
+                centsByCustomer.merge(added.getCustomerId(), added.getOpeningCents(), Long::sum);
+                break;
+            case VEHICLE_RENTED:
+                RentalEvent.VehicleRented rented = (RentalEvent.VehicleRented) event;
+                statusByPlate.put(plate, Vehicle.VehicleStatus.RENTED);
+                openRentals.put(plate, rented);
+                centsByCustomer.merge(rented.getCustomerId(), rented.getAmountCents(), Long::sum);
+                break;
+            case VEHICLE_RETURNED:
+                RentalEvent.VehicleReturned returned = (RentalEvent.VehicleReturned) event;
+                statusByPlate.put(plate, Vehicle.VehicleStatus.AVAILABLE);
+                openRentals.remove(plate);
+                centsByCustomer.merge(returned.getCustomerId(), returned.getAmountCents(), Long::sum);
+                break;
+            case STATUS_CHANGED:
+                statusByPlate.put(plate, ((RentalEvent.StatusChanged) event).getNewStatus());
+                break;
+            default:
+                break;
+        }
+    }
+
+    public Vehicle.VehicleStatus getStatus(String plate) {
+        return statusByPlate.get(plate.toUpperCase());
+    }
+
+    public RentalEvent.VehicleRented getOpenRental(String plate) {
+        return openRentals.get(plate.toUpperCase());
+    }
+
+    public Map<String, Vehicle.VehicleStatus> getStatuses() {
+        return statusByPlate;
+    }
+
+    public Map<String, RentalEvent.VehicleRented> getOpenRentals() {
+        return openRentals;
+    }
+
+    public long getTotalCents(int customerId) {
+        Long cents = centsByCustomer.get(customerId);
+        return cents == null ? 0 : cents;
+    }
+
+    public Map<Integer, Long> getCustomerTotals() {
+        return centsByCustomer;
+    }
+
+    // Plates never overlap between partitions; customer totals add up. Folds
+    // into this one, which is always a partial result nobody else holds.
+    private EventProjection merge(EventProjection other) {
+        statusByPlate.putAll(other.statusByPlate);
+        openRentals.putAll(other.openRentals);
+        other.centsByCustomer.forEach((id, cents) -> centsByCustomer.merge(id, cents, Long::sum));
+        return this;
+    }
+
+    public static EventProjection fold(List<RentalEvent> events) {
+        return fold(new EventProjection(), events);
+    }
+
+    private static EventProjection fold(EventProjection projection, List<RentalEvent> events) {
+        for (RentalEvent e : events) {
+            projection.apply(e);
+        }
+        return projection;
+    }
+
+    public static EventProjection rebuild(List<RentalEvent> events, int partitions) {
+        return rebuild(new EventProjection(), events, partitions);
+    }
+
+    // Splits the log by plate (customer events by id) and folds the
+    // partitions on the common pool, each starting from its share of base.
+    // Order within a plate is preserved. base itself is not modified.
+    public static EventProjection rebuild(EventProjection base, List<RentalEvent> events, int partitions) {
+        List<List<RentalEvent>> parts = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (RentalEvent e : events) {
+            int key = e.getLicensePlate() != null ? e.getLicensePlate().hashCode()
+                    : e instanceof RentalEvent.CustomerAdded ? ((RentalEvent.CustomerAdded) e).getCustomerId() : 0;
+            parts.get(Math.floorMod(key, partitions)).add(e);
+        }
+        return IntStream.range(0, partitions).parallel()
+                .mapToObj(i -> fold(base.partition(i, partitions), parts.get(i)))
+                .reduce(EventProjection::merge)
+                .orElseGet(EventProjection::new);
+    }
+
+    // A copy of the plates rebuild() would put in partition i; customer
+    // totals go by id, since they only add up.
+    private EventProjection partition(int i, int partitions) {
+        EventProjection part = new EventProjection();
+        statusByPlate.forEach((plate, status) -> {
+            if (Math.floorMod(plate.hashCode(), partitions) == i) {
+                part.statusByPlate.put(plate, status);
+            }
+        });
+        openRentals.forEach((plate, rented) -> {
+            if (Math.floorMod(plate.hashCode(), partitions) == i) {
+                part.openRentals.put(plate, rented);
+            }
+        });
+        centsByCustomer.forEach((id, cents) -> {
+            if (Math.floorMod(id, partitions) == i) {
+                part.centsByCustomer.put(id, cents);
+            }
+        });
+        return part;
+    }
+
+    // Human-readable differences, empty when both projections agree.
+    public List<String> diff(EventProjection other) {
+        List<String> differences = new ArrayList<>();
+        TreeSet<String> plates = new TreeSet<>(statusByPlate.keySet());
+        plates.addAll(other.statusByPlate.keySet());
+        for (String plate : plates) {
+            Vehicle.VehicleStatus a = statusByPlate.get(plate);
+            Vehicle.VehicleStatus b = other.statusByPlate.get(plate);
+            if (a != b) {
+                differences.add(plate + ": status " + a + " vs " + b);
+            }
+            RentalEvent.VehicleRented ra = openRentals.get(plate);
+            RentalEvent.VehicleRented rb = other.openRentals.get(plate);
+            if ((ra == null) != (rb == null)
+                    || (ra != null && (ra.getCustomerId() != rb.getCustomerId() || !ra.getDate().equals(rb.getDate())))) {
+                differences.add(plate + ": open rental " + describe(ra) + " vs " + describe(rb));
+            }
+        }
+        TreeSet<Integer> ids = new TreeSet<>(centsByCustomer.keySet());
+        ids.addAll(other.centsByCustomer.keySet());
+        for (int id : ids) {
+            if (getTotalCents(id) != other.getTotalCents(id)) {
+                differences.add("customer " + id + ": total " + Money.format(getTotalCents(id))
+                        + " vs " + Money.format(other.getTotalCents(id)));
+            }
+        }
+        return differences;
+    }
+
+    private static String describe(RentalEvent.VehicleRented rental) {
+        return rental == null ? "none" : "customer " + rental.getCustomerId() + " since " + rental.getDate();
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Disruptor-style fan-out of RentalEvents: one preallocated power-of-two ring,
+// one producer, and any number of subscribers that each track their own
+// sequence on their own thread. Publishing is a slot write plus a volatile
+// cursor store; consumers read batches up to the cursor without locks.
+// A producer that would lap the slowest subscriber waits for it, so a stuck
+// listener holds up writers until its subscription is closed.
+public class EventRingBuffer {
+    public interface Listener {
+        // endOfBatch is true for the last event currently available.
+        void onEvent(RentalEvent event, long sequence, boolean endOfBatch);
+    }
+
+    private final RentalEvent[] entries;
+    private final int mask;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile long cursor = -1;
+
+    public EventRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two");
+        }
+        entries = new RentalEvent[capacity];
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    public List<Subscription> getSubscriptions() {
+        return Collections.unmodifiableList(subscriptions);
+    }
+
+    public synchronized void publish(RentalEvent event) {
+        long next = cursor + 1;
+        long wrapPoint = next - entries.length;
+        while (wrapPoint > slowestSequence()) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        entries[(int) (next & mask)] = event;
+        cursor = next;
+        for (Subscription s : subscriptions) {
+            if (s.waiting) {
+                LockSupport.unpark(s.thread);
+            }
+        }
+    }
+
+    private long slowestSequence() {
+        long min = Long.MAX_VALUE;
+        for (Subscription s : subscriptions) {
+            min = Math.min(min, s.sequence);
+        }
+        return min;
+    }
+
+    // The subscriber sees every event published after this call.
+    public synchronized Subscription subscribe(String name, Listener listener) {
+        Subscription s = new Subscription(name, listener, cursor);
+        subscriptions.add(s);
+        s.thread.start();
+        return s;
+    }
+
+    public final class Subscription implements AutoCloseable {
+        private final String name;
+        private final Listener listener;
+        private final Thread thread;
+        private final long startedAt;
+        private volatile long sequence;
+        private volatile boolean waiting;
+        private volatile boolean running = true;
+        private volatile long errors;
+
+        private Subscription(String name, Listener listener, long start) {
+            this.name = name;
+            this.listener = listener;
+            this.startedAt = start;
+            this.sequence = start;
+            this.thread = new Thread(this::run, "rental-events-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            int idle = 0;
+            while (running) {
+                long available = cursor;
+                long next = sequence + 1;
+                if (next > available) {
+                    // Spin briefly, then park until the producer wakes us.
+                    if (++idle < 100) {
+                        Thread.yield();
+                    } else {
+                        waiting = true;
+                        if (cursor < next && running) {
+                            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                        }
+                        waiting = false;
+                    }
+                    continue;
+                }
+                idle = 0;
+                for (long seq = next; seq <= available; seq++) {
+                    try {
+                        listener.onEvent(entries[(int) (seq & mask)], seq, seq == available);
+                    } catch (RuntimeException e) {
+                        errors++;
+                        System.err.println("Subscriber " + name + " failed on event " + seq + ": " + e.getMessage());
+                    }
+                }
+                sequence = available;
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Events published but not yet handled by this subscriber.
+        public long getLag() {
+            return cursor - sequence;
+        }
+
+        public long getProcessed() {
+            return sequence - startedAt;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        // Waits until this subscriber has caught up with everything published so far.
+        public boolean awaitCaughtUp(long timeoutMillis) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (getLag() > 0) {
+                if (System.nanoTime() > deadline || !running) {
+                    return false;
+                }
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            subscriptions.remove(this);
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name + ": processed " + getProcessed() + ", lag " + getLag() + ", errors " + errors;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+// The original flat-file layout: vehicles.txt, customers.txt and
+// rental_records.txt, each an append-only checksummed journal, plus
+// service.txt for maintenance state.
+public class FileRentalStore implements RentalStore {
+    static final String STATUS_PREFIX = "STATUS | ";
+
+    private final String vehiclesFile;
+    private final String customersFile;
+    private final String recordsFile;
+    private final String serviceFile;
+    private final File archiveDir;
+    private final File imageDir;
+    private final File utilizationFile;
+    private final List<RecoveryReport> recoveryReports = new ArrayList<>();
+
+    // A null dataDir means the working directory.
+    public FileRentalStore(String dataDir) {
+        if (dataDir != null) {
+            new File(dataDir).mkdirs();
+        }
+        vehiclesFile = new File(dataDir, "vehicles.txt").getPath();
+        customersFile = new File(dataDir, "customers.txt").getPath();
+        recordsFile = new File(dataDir, "rental_records.txt").getPath();
+        serviceFile = new File(dataDir, "service.txt").getPath();
+        archiveDir = new File(dataDir, "history");
+        imageDir = new File(dataDir == null ? "." : dataDir);
+        utilizationFile = new File(dataDir, "utilization.bin");
+    }
+
+    @Override
+    public void saveVehicle(Vehicle vehicle) throws IOException {
+        JournalFile.append(vehiclesFile, vehicle.getInfo());
+    }
+
+    @Override
+    public void saveVehicleStatus(Vehicle vehicle) throws IOException {
+        JournalFile.append(vehiclesFile, STATUS_PREFIX + vehicle.getLicensePlate() + " | " + vehicle.getStatus());
+    }
+
+    @Override
+    public void saveCustomer(Customer customer) throws IOException {
+        JournalFile.append(customersFile, customer.toString());
+    }
+
+    @Override
+    public void saveRecord(RentalRecord record) throws IOException {
+        JournalFile.append(recordsFile, record.toLine());
+    }
+
+    @Override
+    public void saveServiceState(String line) throws IOException {
+        JournalFile.append(serviceFile, line);
+    }
+
+    @Override
+    public List<String> loadVehicleLines() throws IOException {
+        return recoverLines(vehiclesFile);
+    }
+
+    @Override
+    public List<String> loadCustomerLines() throws IOException {
+        return recoverLines(customersFile);
+    }
+
+    @Override
+    public List<String> loadRecordLines() throws IOException {
+        return recoverLines(recordsFile);
+    }
+
+    @Override
+    public List<String> loadServiceLines() throws IOException {
+        return recoverLines(serviceFile);
+    }
+
+    // Repairs rental_records.txt the same way, then streams it with byte
+    // offsets instead of holding every line, so history can be paged lazily.
+    public void scanRecords(JournalFile.LineVisitor visitor) throws IOException {
+        recover(new RecoveryReport(recordsFile, false));
+        JournalFile.scan(recordsFile, visitor);
+    }
+
+    // Verifies checksums and cuts off a torn final line before anything is parsed.
+    private List<String> recoverLines(String path) throws IOException {
+        return recover(new RecoveryReport(path)).getLines();
+    }
+
+    private RecoveryReport recover(RecoveryReport report) throws IOException {
+        JournalFile.recover(report, true);
+        recoveryReports.add(report);
+        if (!report.isClean()) {
+            System.err.println("Recovered " + report);
+        }
+        return report;
+    }
+
+    // Writes one line per vehicle to a temp file and renames it over vehicles.txt.
+    @Override
+    public void compactVehicles(List<Vehicle> vehicles) throws IOException {
+        List<String> lines = new ArrayList<>(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            lines.add(vehicle.getInfo());
+        }
+        replace(vehiclesFile, lines);
+    }
+
+    @Override
+    public void compactServiceState(List<String> lines) throws IOException {
+        replace(serviceFile, lines);
+    }
+
+    private static void replace(String path, List<String> lines) throws IOException {
+        File target = new File(path);
+        File temp = new File(path + ".tmp");
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp, false))) {
+                for (String line : lines) {
+                    writer.write(JournalFile.seal(line) + "\n");
+                }
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    // Rewrites rental_records.txt with only the lines keep accepts, through a
+    // temp file and a rename. Used once old months are in the archive.
+    public void rewriteRecords(Predicate<String> keep) throws IOException {
+        File target = new File(recordsFile);
+        File temp = new File(recordsFile + ".tmp");
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp, false))) {
+                IOException[] failure = new IOException[1];
+                JournalFile.scan(recordsFile, (offset, line) -> {
+                    if (failure[0] != null || !keep.test(line)) {
+                        return;
+                    }
+                    try {
+                        writer.write(JournalFile.seal(line) + "\n");
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    @Override
+    public List<RecoveryReport> getRecoveryReports() {
+        return Collections.unmodifiableList(recoveryReports);
+    }
+
+    public String getVehiclesFile() {
+        return vehiclesFile;
+    }
+
+    public String getCustomersFile() {
+        return customersFile;
+    }
+
+    public String getRecordsFile() {
+        return recordsFile;
+    }
+
+    public File getArchiveDir() {
+        return archiveDir;
+    }
+
+    // Where startup images are written; see StartupImage.
+    public File getImageDir() {
+        return imageDir;
+    }
+
+    public File getUtilizationFile() {
+        return utilizationFile;
+    }
+}
@@ -0,0 +1,583 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Cold rental history, one compressed segment file per month (yyyy-MM.seg).
+// A segment starts with an uncompressed header (date range, totals and the
+// plate/customer dictionaries) that is read at open, so queries can skip
+// segments by month, plate or customer without inflating them. The body is
+// one varint row per record: date delta, plate and customer dictionary
+// indexes, type and amount, then Deflate. The last few decoded segments are
+// kept in memory. Since version 2 the header also carries each customer's
+// rental counts and dates, so CustomerStats need no body reads.
+// pin() hands out a frozen copy of the segment set; a segment file replaced
+// later is kept under a retained name for as long as a copy still uses it.
+public class HistoryArchive {
+    private static final int MAGIC = 0x52534547;
+    private static final int VERSION = 2;
+    private static final String PENDING = "pending";
+
+    private final File dir;
+    private final Function<String, Vehicle> vehicles;
+    private final IntFunction<Customer> customers;
+    private final TreeMap<YearMonth, Segment> segments = new TreeMap<>();
+    private final int cachedSegments;
+    private final Map<YearMonth, List<RentalRecord>> decoded;
+    private final RetainedFiles retained;
+    private int segmentsRead;
+
+    public HistoryArchive(File dir, Function<String, Vehicle> vehicles, IntFunction<Customer> customers) throws IOException {
+        this(dir, vehicles, customers, 2);
+    }
+
+    public HistoryArchive(File dir, Function<String, Vehicle> vehicles, IntFunction<Customer> customers, int cachedSegments)
+            throws IOException {
+        this.dir = dir;
+        this.vehicles = vehicles;
+        this.customers = customers;
+        this.cachedSegments = cachedSegments;
+        this.decoded = cache(cachedSegments);
+        this.retained = new RetainedFiles();
+        recoverTemps();
+        RetainedFiles.deleteStale(dir);
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".seg"));
+        if (files != null) {
+            for (File f : files) {
+                Segment segment = readHeader(f);
+                segments.put(segment.month, segment);
+            }
+        }
+    }
+
+    private HistoryArchive(HistoryArchive live) {
+        this.dir = live.dir;
+        this.vehicles = live.vehicles;
+        this.customers = live.customers;
+        this.cachedSegments = live.cachedSegments;
+        this.decoded = cache(cachedSegments);
+        this.retained = live.retained;
+        this.segments.putAll(live.segments);
+    }
+
+    private static Map<YearMonth, List<RentalRecord>> cache(int cachedSegments) {
+        return new LinkedHashMap<YearMonth, List<RentalRecord>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<YearMonth, List<RentalRecord>> eldest) {
+                return size() > cachedSegments;
+            }
+        };
+    }
+
+    // A read-only copy of the archive as it is now, unaffected by later runs.
+    public synchronized HistoryArchive pin() {
+        return new HistoryArchive(this);
+    }
+
+    // Retained segment files whose pinned copies are still reachable.
+    public int getRetainedCount() {
+        retained.purge();
+        return retained.size();
+    }
+
+    public synchronized Collection<YearMonth> getMonths() {
+        return new ArrayList<>(segments.keySet());
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (Segment s : segments.values()) {
+            size += s.count;
+        }
+        return size;
+    }
+
+    public synchronized long getTotalAmountCents() {
+        long total = 0;
+        for (Segment s : segments.values()) {
+            total += s.totalCents;
+        }
+        return total;
+    }
+
+    public synchronized long getTotalAmountCentsByCustomer(int customerId) {
+        long total = 0;
+        for (Segment s : segments.values()) {
+            Long cents = s.centsByCustomer.get(customerId);
+            if (cents != null) {
+                total += cents;
+            }
+        }
+        return total;
+    }
+
+    // Adds every segment's per-customer summary to the index. Older segments
+    // without one are summarised from their records once and rewritten in
+    // the current version, so later calls and restarts read the header only.
+    public synchronized void addCustomerStats(CustomerStatsIndex index) {
+        for (Segment s : new ArrayList<>(segments.values())) {
+            if (s.statsByCustomer.isEmpty() && !s.centsByCustomer.isEmpty()) {
+                s = upgrade(s);
+            }
+            for (CustomerStats stats : s.statsByCustomer.values()) {
+                index.add(stats);
+            }
+        }
+    }
+
+    private Segment upgrade(Segment segment) {
+        List<RentalRecord> records = records(segment);
+        for (RentalRecord r : records) {
+            int id = r.getCustomer().getCustomerId();
+            segment.statsByCustomer.put(id, segment.statsByCustomer.getOrDefault(id, CustomerStats.empty(id)).plus(r));
+        }
+        // Records whose vehicle or customer no longer resolves would be lost.
+        if (records.size() != segment.count) {
+            return segment;
+        }
+        try {
+            Segment rewritten = write(segment.month, records);
+            install(segment, rewritten);
+            return rewritten;
+        } catch (IOException e) {
+            System.err.println("Error upgrading history segment " + segment.file + ": " + e.getMessage());
+            return segment;
+        }
+    }
+
+    // Number of segment bodies inflated so far; lets callers see pruning work.
+    public synchronized int getSegmentsRead() {
+        return segmentsRead;
+    }
+
+    public synchronized List<RentalRecord> getAll() {
+        List<RentalRecord> result = new ArrayList<>();
+        for (Segment s : segments.values()) {
+            result.addAll(records(s));
+        }
+        return result;
+    }
+
+    // Empty when from is after to.
+    public synchronized List<RentalRecord> getRecordsBetween(LocalDate from, LocalDate to) {
+        List<RentalRecord> result = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return result;
+        }
+        for (Segment s : segments.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values()) {
+            if (s.maxDate.isBefore(from) || s.minDate.isAfter(to)) {
+                continue;
+            }
+            for (RentalRecord r : records(s)) {
+                if (!r.getRecordDate().isBefore(from) && !r.getRecordDate().isAfter(to)) {
+                    result.add(r);
+                }
+            }
+        }
+        return result;
+    }
+
+    public synchronized List<RentalRecord> getRecordsByVehicle(String licensePlate) {
+        String plate = licensePlate.toUpperCase();
+        List<RentalRecord> result = new ArrayList<>();
+        for (Segment s : segments.values()) {
+            if (!s.plates.contains(plate)) {
+                continue;
+            }
+            for (RentalRecord r : records(s)) {
+                if (r.getVehicle().getLicensePlate().equals(plate)) {
+                    result.add(r);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Same substring match on Customer.toString() as RentalHistory.
+    public synchronized List<RentalRecord> getRecordsByCustomer(String customerName) {
+        String query = customerName.toLowerCase();
+        List<RentalRecord> result = new ArrayList<>();
+        for (Segment s : segments.values()) {
+            Set<Integer> matching = new HashSet<>();
+            for (int id : s.centsByCustomer.keySet()) {
+                Customer c = customers.apply(id);
+                if (c != null && c.toString().toLowerCase().contains(query)) {
+                    matching.add(id);
+                }
+            }
+            if (matching.isEmpty()) {
+                continue;
+            }
+            for (RentalRecord r : records(s)) {
+                if (matching.contains(r.getCustomer().getCustomerId())) {
+                    result.add(r);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Adds records to their month segments, merging with what is already
+    // archived. New segments are written as temp files first; the pending
+    // marker (holding the boundary) is the commit point, after which the temps
+    // are renamed into place. The caller trims the journal and then calls
+    // finishPending(). A marker found at open means that last step still has
+    // to be done; temps without a marker are an aborted run and are dropped.
+    public synchronized void archive(List<RentalRecord> records, LocalDate boundary) throws IOException {
+        Map<YearMonth, List<RentalRecord>> byMonth = new TreeMap<>();
+        for (RentalRecord r : records) {
+            byMonth.computeIfAbsent(YearMonth.from(r.getRecordDate()), k -> new ArrayList<>()).add(r);
+        }
+        // Every month to merge into is read before anything is written, so a
+        // segment that cannot be read in full aborts the run untouched.
+        Map<YearMonth, List<RentalRecord>> merged = new TreeMap<>();
+        for (Map.Entry<YearMonth, List<RentalRecord>> e : byMonth.entrySet()) {
+            List<RentalRecord> month = new ArrayList<>();
+            Segment existing = segments.get(e.getKey());
+            if (existing != null) {
+                List<RentalRecord> archived = records(existing);
+                // Records whose vehicle or customer no longer resolves would be lost.
+                if (archived.size() != existing.count) {
+                    throw new IOException("History segment " + existing.file + " read " + archived.size()
+                            + " of " + existing.count + " records; archive run aborted");
+                }
+                month.addAll(archived);
+            }
+            month.addAll(e.getValue());
+            merged.put(e.getKey(), month);
+        }
+        dir.mkdirs();
+        List<Segment> staged = new ArrayList<>();
+        for (Map.Entry<YearMonth, List<RentalRecord>> e : merged.entrySet()) {
+            staged.add(write(e.getKey(), e.getValue()));
+        }
+        Files.write(new File(dir, PENDING).toPath(), boundary.toString().getBytes(StandardCharsets.UTF_8));
+        for (Segment segment : staged) {
+            install(segments.get(segment.month), segment);
+        }
+    }
+
+    // Renames a staged segment into place. The file it replaces stays
+    // readable under a retained name by pinned copies holding the old segment.
+    private void install(Segment previous, Segment staged) throws IOException {
+        if (previous != null) {
+            previous.file = retained.retain(previous.file, previous);
+        }
+        Files.move(tempFile(staged.month).toPath(), staged.file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        segments.put(staged.month, staged);
+        decoded.remove(staged.month);
+    }
+
+    // Boundary of an archive run whose journal trim has not finished, or null.
+    public LocalDate getPendingBoundary() throws IOException {
+        File marker = new File(dir, PENDING);
+        if (!marker.exists()) {
+            return null;
+        }
+        return LocalDate.parse(new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).trim());
+    }
+
+    public void finishPending() throws IOException {
+        Files.deleteIfExists(new File(dir, PENDING).toPath());
+    }
+
+    private void recoverTemps() throws IOException {
+        File[] temps = dir.listFiles((d, name) -> name.endsWith(".seg.tmp"));
+        if (temps == null) {
+            return;
+        }
+        boolean committed = new File(dir, PENDING).exists();
+        for (File temp : temps) {
+            if (committed) {
+                File target = new File(dir, temp.getName().substring(0, temp.getName().length() - ".tmp".length()));
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                temp.delete();
+            }
+        }
+    }
+
+    private File tempFile(YearMonth month) {
+        return new File(dir, month + ".seg.tmp");
+    }
+
+    private List<RentalRecord> records(Segment segment) {
+        List<RentalRecord> records = decoded.get(segment.month);
+        if (records == null) {
+            try {
+                records = readBody(segment);
+            } catch (IOException | DataFormatException e) {
+                System.err.println("Error reading history segment " + segment.file + ": " + e.getMessage());
+                return new ArrayList<>();
+            }
+            segmentsRead++;
+            decoded.put(segment.month, records);
+        }
+        return records;
+    }
+
+    private Segment write(YearMonth month, List<RentalRecord> records) throws IOException {
+        Segment segment = new Segment(month, new File(dir, month + ".seg"));
+        Map<String, Integer> plateIds = new LinkedHashMap<>();
+        Map<Integer, Integer> customerIds = new LinkedHashMap<>();
+        Map<String, Integer> typeIds = new LinkedHashMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(records.size() * 8);
+        long previousDay = month.atDay(1).toEpochDay();
+        segment.minDate = LocalDate.MAX;
+        segment.maxDate = LocalDate.MIN;
+        for (RentalRecord r : records) {
+            String plate = r.getVehicle().getLicensePlate().toUpperCase();
+            int customerId = r.getCustomer().getCustomerId();
+            long day = r.getRecordDate().toEpochDay();
+            writeVarLong(body, zigzag(day - previousDay));
+            previousDay = day;
+            writeVarLong(body, dictionaryId(plateIds, plate));
+            writeVarLong(body, dictionaryId(customerIds, customerId));
+            writeVarLong(body, dictionaryId(typeIds, r.getRecordType()));
+            writeVarLong(body, zigzag(r.getTotalAmountCents()));
+
+            segment.count++;
+            segment.totalCents += r.getTotalAmountCents();
+            segment.plates.add(plate);
+            segment.centsByCustomer.merge(customerId, r.getTotalAmountCents(), Long::sum);
+            segment.statsByCustomer.put(customerId, segment.statsByCustomer
+                    .getOrDefault(customerId, CustomerStats.empty(customerId)).plus(r));
+            if (r.getRecordDate().isBefore(segment.minDate)) {
+                segment.minDate = r.getRecordDate();
+            }
+            if (r.getRecordDate().isAfter(segment.maxDate)) {
+                segment.maxDate = r.getRecordDate();
+            }
+        }
+        byte[] raw = body.toByteArray();
+        byte[] compressed = deflate(raw);
+
+        File temp = tempFile(month);
+        boolean written = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeInt(month.getYear());
+                out.writeByte(month.getMonthValue());
+                out.writeInt(segment.count);
+                out.writeLong(segment.totalCents);
+                out.writeLong(segment.minDate.toEpochDay());
+                out.writeLong(segment.maxDate.toEpochDay());
+                out.writeInt(plateIds.size());
+                for (String plate : plateIds.keySet()) {
+                    out.writeUTF(plate);
+                }
+                out.writeInt(customerIds.size());
+                for (int id : customerIds.keySet()) {
+                    CustomerStats stats = segment.statsByCustomer.get(id);
+                    out.writeInt(id);
+                    out.writeLong(segment.centsByCustomer.get(id));
+                    out.writeInt(stats.getRentals());
+                    out.writeInt(stats.getReturns());
+                    out.writeLong(stats.getRentals() == 0 ? 0 : stats.getFirstRental().toEpochDay());
+                    out.writeLong(stats.getRentals() == 0 ? 0 : stats.getLastRental().toEpochDay());
+                }
+                out.writeInt(typeIds.size());
+                for (String type : typeIds.keySet()) {
+                    out.writeUTF(type);
+                }
+                out.writeInt(raw.length);
+                out.writeInt(compressed.length);
+                out.write(compressed);
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                temp.delete();
+            }
+        }
+        segment.plateDictionary = new ArrayList<>(plateIds.keySet());
+        segment.customerDictionary = new ArrayList<>(customerIds.keySet());
+        segment.typeDictionary = new ArrayList<>(typeIds.keySet());
+        return segment;
+    }
+
+    private static Segment readHeader(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return readHeader(file, in);
+        }
+    }
+
+    private static Segment readHeader(File file, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a history segment: " + file);
+        }
+        int version = in.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported history segment version " + version + ": " + file);
+        }
+        Segment s = new Segment(YearMonth.of(in.readInt(), in.readByte()), file);
+        s.count = in.readInt();
+        s.totalCents = in.readLong();
+        s.minDate = LocalDate.ofEpochDay(in.readLong());
+        s.maxDate = LocalDate.ofEpochDay(in.readLong());
+        int plates = in.readInt();
+        for (int i = 0; i < plates; i++) {
+            String plate = in.readUTF();
+            s.plates.add(plate);
+            s.plateDictionary.add(plate);
+        }
+        int customerCount = in.readInt();
+        for (int i = 0; i < customerCount; i++) {
+            int id = in.readInt();
+            long cents = in.readLong();
+            s.centsByCustomer.put(id, cents);
+            s.customerDictionary.add(id);
+            if (version >= 2) {
+                int rentals = in.readInt();
+                int returns = in.readInt();
+                long first = in.readLong();
+                long last = in.readLong();
+                s.statsByCustomer.put(id, new CustomerStats(id, rentals, returns, cents,
+                        rentals == 0 ? null : LocalDate.ofEpochDay(first), rentals == 0 ? null : LocalDate.ofEpochDay(last)));
+            }
+        }
+        int types = in.readInt();
+        for (int i = 0; i < types; i++) {
+            s.typeDictionary.add(in.readUTF());
+        }
+        return s;
+    }
+
+    private List<RentalRecord> readBody(Segment segment) throws IOException, DataFormatException {
+        byte[] raw;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)))) {
+            readHeader(segment.file, in);
+            raw = new byte[in.readInt()];
+            byte[] compressed = new byte[in.readInt()];
+            in.readFully(compressed);
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int n = 0;
+                while (n < raw.length && !inflater.finished()) {
+                    n += inflater.inflate(raw, n, raw.length - n);
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+        List<RentalRecord> records = new ArrayList<>(segment.count);
+        int[] pos = { 0 };
+        long day = segment.month.atDay(1).toEpochDay();
+        for (int i = 0; i < segment.count; i++) {
+            day += unzigzag(readVarLong(raw, pos));
+            Vehicle vehicle = vehicles.apply(segment.plateDictionary.get((int) readVarLong(raw, pos)));
+            Customer customer = customers.apply(segment.customerDictionary.get((int) readVarLong(raw, pos)));
+            String type = segment.typeDictionary.get((int) readVarLong(raw, pos));
+            long cents = unzigzag(readVarLong(raw, pos));
+            if (vehicle != null && customer != null) {
+                records.add(new RentalRecord(vehicle, customer, LocalDate.ofEpochDay(day), type, cents));
+            }
+        }
+        return records;
+    }
+
+    private static <K> int dictionaryId(Map<K, Integer> dictionary, K key) {
+        Integer id = dictionary.get(key);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.put(key, id);
+        }
+        return id;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buf = new byte[4096];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(byte[] buf, int[] pos) {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buf[pos[0]++];
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+            shift += 7;
+        }
+    }
+
+    private static final class Segment {
+        final YearMonth month;
+        // Moves to the retained copy once a newer segment replaces this one.
+        volatile File file;
+        int count;
+        long totalCents;
+        LocalDate minDate;
+        LocalDate maxDate;
+        final Set<String> plates = new HashSet<>();
+        final Map<Integer, Long> centsByCustomer = new HashMap<>();
+        // Empty for version 1 segments, which predate per-customer counts.
+        final Map<Integer, CustomerStats> statsByCustomer = new HashMap<>();
+        List<String> plateDictionary = new ArrayList<>();
+        List<Integer> customerDictionary = new ArrayList<>();
+        List<String> typeDictionary = new ArrayList<>();
+
+        Segment(YearMonth month, File file) {
+            this.month = month;
+            this.file = file;
+        }
+    }
+}
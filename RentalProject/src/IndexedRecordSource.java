@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Records already in an IndexedRecordStore at startup (JDBC or LSM), answered
+// by its indexed queries. Only counts and totals stay on the heap; records
+// written later belong to the in-memory tier, so queries stop at the sequence
+// seen on load.
+public class IndexedRecordSource implements RecordSource {
+    private final IndexedRecordStore store;
+    private final Function<String, RentalRecord> parser;
+    private final long through;
+    private final Map<String, Integer> countByPlate = new HashMap<>();
+    private final Map<Integer, Integer> countByCustomer = new HashMap<>();
+    private final Map<Integer, Customer> customers = new LinkedHashMap<>();
+    private final Map<Integer, Long> centsByCustomer = new HashMap<>();
+    private int size;
+    private long totalCents;
+
+    public IndexedRecordSource(IndexedRecordStore store, Function<String, RentalRecord> parser) {
+        this.store = store;
+        this.parser = parser;
+        this.through = store.getLastSequence();
+    }
+
+    void add(RentalRecord record) {
+        int customerId = record.getCustomer().getCustomerId();
+        countByPlate.merge(record.getVehicle().getLicensePlate().toUpperCase(), 1, Integer::sum);
+        countByCustomer.merge(customerId, 1, Integer::sum);
+        customers.putIfAbsent(customerId, record.getCustomer());
+        centsByCustomer.merge(customerId, record.getTotalAmountCents(), Long::sum);
+        totalCents += record.getTotalAmountCents();
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getTotalAmountCents() {
+        return totalCents;
+    }
+
+    @Override
+    public long getTotalAmountCentsByCustomer(int customerId) {
+        return centsByCustomer.getOrDefault(customerId, 0L);
+    }
+
+    @Override
+    public List<RentalRecord> readAll() {
+        try {
+            return parse(store.getRecordLinesThrough(through));
+        } catch (IOException e) {
+            System.err.println("Error reading rental records: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public List<RentalRecord> readByVehicle(String licensePlate, int from, int limit) {
+        if (countByVehicle(licensePlate) <= from) {
+            return new ArrayList<>();
+        }
+        try {
+            return parse(store.getRecordLinesByVehicle(licensePlate, through, from, limit));
+        } catch (IOException e) {
+            System.err.println("Error reading rental records: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public int countByVehicle(String licensePlate) {
+        return countByPlate.getOrDefault(licensePlate.toUpperCase(), 0);
+    }
+
+    @Override
+    public List<RentalRecord> readByCustomer(String customerName, int from, int limit) {
+        List<Integer> ids = customerIds(customerName);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return parse(store.getRecordLinesByCustomers(ids, through, from, limit));
+        } catch (IOException e) {
+            System.err.println("Error reading rental records: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public int countByCustomer(String customerName) {
+        int count = 0;
+        for (int id : customerIds(customerName)) {
+            count += countByCustomer.get(id);
+        }
+        return count;
+    }
+
+    private List<Integer> customerIds(String customerName) {
+        String query = customerName.toLowerCase();
+        List<Integer> ids = new ArrayList<>();
+        for (Map.Entry<Integer, Customer> e : customers.entrySet()) {
+            if (e.getValue().toString().toLowerCase().contains(query)) {
+                ids.add(e.getKey());
+            }
+        }
+        return ids;
+    }
+
+    private List<RentalRecord> parse(List<String> lines) {
+        List<RentalRecord> result = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            RentalRecord record = parser.apply(line);
+            if (record != null) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,19 @@
+import java.io.IOException;
+import java.util.List;
+
+// A store that can answer history lookups itself, so records stored before
+// startup need not be held in memory. Sequence numbers grow with every saved
+// record; queries bounded by 'through' ignore records saved after it.
+public interface IndexedRecordStore extends RentalStore {
+    // Streams every record line with its sequence number.
+    void scanRecords(JournalFile.LineVisitor visitor) throws IOException;
+
+    long getLastSequence();
+
+    List<String> getRecordLinesThrough(long through) throws IOException;
+
+    // One page of the plate's records with sequence numbers up to through.
+    List<String> getRecordLinesByVehicle(String plate, long through, int from, int limit) throws IOException;
+
+    List<String> getRecordLinesByCustomers(List<Integer> customerIds, long through, int from, int limit) throws IOException;
+}
@@ -0,0 +1,351 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// RentalStore on an in-process JDBC database (H2 or SQLite file URLs, e.g.
+// "jdbc:h2:./rental" or "jdbc:sqlite:rental.db"; the driver jar has to be on
+// the classpath). Writes go straight through unless batching is asked for:
+// then records and status changes are queued together and written in one
+// transaction once batchSize records are waiting or maxDelayMillis has passed,
+// so a crash loses at most that window and never a record without its status.
+// Every read flushes the queue first, and so does close().
+public class JdbcRentalStore implements IndexedRecordStore {
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS vehicles (plate VARCHAR(16) PRIMARY KEY, status VARCHAR(16) NOT NULL, info VARCHAR(512) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS vehicle_service (plate VARCHAR(16) PRIMARY KEY, line VARCHAR(128) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS customers (id INT PRIMARY KEY, name VARCHAR(256) NOT NULL, line VARCHAR(512) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS rental_records (seq BIGINT PRIMARY KEY, plate VARCHAR(16) NOT NULL, "
+            + "customer_id INT NOT NULL, record_date DATE NOT NULL, amount_cents BIGINT NOT NULL, "
+            + "record_type VARCHAR(8) NOT NULL, line VARCHAR(512) NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS idx_records_plate ON rental_records (plate)",
+        "CREATE INDEX IF NOT EXISTS idx_records_customer ON rental_records (customer_id)",
+        "CREATE INDEX IF NOT EXISTS idx_records_date ON rental_records (record_date)"
+    };
+
+    private final ConnectionPool pool;
+    private final int batchSize;
+    private final List<RentalRecord> pending = new ArrayList<>();
+    // plate -> {status, info}, last change wins; guarded by pending.
+    private final Map<String, String[]> pendingStatus = new LinkedHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private long nextSequence;
+
+    public JdbcRentalStore(String url) throws IOException {
+        this(new ConnectionPool(url, null, null, 4, 5000));
+    }
+
+    public JdbcRentalStore(ConnectionPool pool) throws IOException {
+        this(pool, 1, 0);
+    }
+
+    public JdbcRentalStore(ConnectionPool pool, int batchSize, long maxDelayMillis) throws IOException {
+        if (batchSize > 1 && maxDelayMillis <= 0) {
+            throw new IllegalArgumentException("Batched writes need a positive maxDelayMillis, got " + maxDelayMillis);
+        }
+        this.pool = pool;
+        this.batchSize = batchSize;
+        try {
+            pool.withConnection(c -> {
+                try (Statement st = c.createStatement()) {
+                    for (String ddl : SCHEMA) {
+                        st.execute(ddl);
+                    }
+                }
+                try (Statement st = c.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(seq), 0) FROM rental_records")) {
+                    rs.next();
+                    nextSequence = rs.getLong(1) + 1;
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IOException("Failed to initialise schema", e);
+        }
+        if (batchSize > 1) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "jdbc-store-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public void saveVehicle(Vehicle vehicle) throws IOException {
+        execute(c -> {
+            upsertVehicle(c, vehicle.getLicensePlate(), vehicle.getStatus().name(), vehicle.getInfo());
+            return null;
+        });
+    }
+
+    @Override
+    public void saveVehicleStatus(Vehicle vehicle) throws IOException {
+        if (flusher == null) {
+            saveVehicle(vehicle);
+            return;
+        }
+        synchronized (pending) {
+            pendingStatus.put(vehicle.getLicensePlate(), new String[] {vehicle.getStatus().name(), vehicle.getInfo()});
+        }
+    }
+
+    // Holds the lock flush() takes, so the timer cannot commit a status
+    // without the record queued after it.
+    @Override
+    public synchronized void saveTogether(Runnable writes) {
+        writes.run();
+    }
+
+    @Override
+    public void saveServiceState(String line) throws IOException {
+        String plate = line.substring(0, line.indexOf(" | ")).toUpperCase();
+        execute(c -> {
+            if (update(c, "UPDATE vehicle_service SET line = ? WHERE plate = ?", line, plate) == 0) {
+                update(c, "INSERT INTO vehicle_service (plate, line) VALUES (?, ?)", plate, line);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void saveCustomer(Customer customer) throws IOException {
+        execute(c -> update(c, "INSERT INTO customers (id, name, line) VALUES (?, ?, ?)",
+                customer.getCustomerId(), customer.getCustomerName(), customer.toString()));
+    }
+
+    @Override
+    public void saveRecord(RentalRecord record) throws IOException {
+        boolean full;
+        synchronized (pending) {
+            pending.add(record);
+            full = pending.size() >= batchSize;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size() + pendingStatus.size();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Error flushing rental records: " + e.getMessage());
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        List<RentalRecord> batch;
+        Map<String, String[]> statuses;
+        synchronized (pending) {
+            if (pending.isEmpty() && pendingStatus.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            statuses = new LinkedHashMap<>(pendingStatus);
+            pending.clear();
+            pendingStatus.clear();
+        }
+        try {
+            writeBatch(batch, statuses);
+        } catch (IOException e) {
+            // Put the writes back ahead of anything queued since, to retry later.
+            synchronized (pending) {
+                pending.addAll(0, batch);
+                for (Map.Entry<String, String[]> s : statuses.entrySet()) {
+                    pendingStatus.putIfAbsent(s.getKey(), s.getValue());
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void writeBatch(List<RentalRecord> batch, Map<String, String[]> statuses) throws IOException {
+        execute(c -> {
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            long firstSequence = nextSequence;
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO rental_records "
+                    + "(seq, plate, customer_id, record_date, amount_cents, record_type, line) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (RentalRecord r : batch) {
+                    ps.setLong(1, nextSequence++);
+                    ps.setString(2, r.getVehicle().getLicensePlate().toUpperCase());
+                    ps.setInt(3, r.getCustomer().getCustomerId());
+                    ps.setDate(4, Date.valueOf(r.getRecordDate()));
+                    ps.setLong(5, r.getTotalAmountCents());
+                    ps.setString(6, r.getRecordType());
+                    ps.setString(7, r.toLine());
+                    ps.addBatch();
+                }
+                if (!batch.isEmpty()) {
+                    ps.executeBatch();
+                }
+                for (Map.Entry<String, String[]> e : statuses.entrySet()) {
+                    upsertVehicle(c, e.getKey(), e.getValue()[0], e.getValue()[1]);
+                }
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                nextSequence = firstSequence;
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public List<String> loadVehicleLines() throws IOException {
+        return lines("SELECT info FROM vehicles ORDER BY plate");
+    }
+
+    @Override
+    public List<String> loadCustomerLines() throws IOException {
+        return lines("SELECT line FROM customers ORDER BY id");
+    }
+
+    @Override
+    public List<String> loadServiceLines() throws IOException {
+        return lines("SELECT line FROM vehicle_service ORDER BY plate");
+    }
+
+    @Override
+    public List<String> loadRecordLines() throws IOException {
+        return lines("SELECT line FROM rental_records ORDER BY seq");
+    }
+
+    public List<String> getRecordLinesByVehicle(String plate) throws IOException {
+        return lines("SELECT line FROM rental_records WHERE plate = ? ORDER BY seq", plate.toUpperCase());
+    }
+
+    public List<String> getRecordLinesByCustomer(int customerId) throws IOException {
+        return lines("SELECT line FROM rental_records WHERE customer_id = ? ORDER BY seq", customerId);
+    }
+
+    // Streams every record line with its sequence number, oldest first.
+    @Override
+    public void scanRecords(JournalFile.LineVisitor visitor) throws IOException {
+        flush();
+        execute(c -> {
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT seq, line FROM rental_records ORDER BY seq")) {
+                while (rs.next()) {
+                    visitor.visit(rs.getLong(1), rs.getString(2));
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    @Override
+    public List<String> getRecordLinesByVehicle(String plate, long through, int from, int limit) throws IOException {
+        return lines("SELECT line FROM rental_records WHERE plate = ? AND seq <= ? ORDER BY seq LIMIT ? OFFSET ?",
+                plate.toUpperCase(), through, limit, from);
+    }
+
+    @Override
+    public List<String> getRecordLinesByCustomers(List<Integer> customerIds, long through, int from, int limit) throws IOException {
+        if (customerIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        StringBuilder sql = new StringBuilder("SELECT line FROM rental_records WHERE customer_id IN (");
+        List<Object> params = new ArrayList<>(customerIds);
+        for (int i = 0; i < customerIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") AND seq <= ? ORDER BY seq LIMIT ? OFFSET ?");
+        params.add(through);
+        params.add(limit);
+        params.add(from);
+        return lines(sql.toString(), params.toArray());
+    }
+
+    @Override
+    public List<String> getRecordLinesThrough(long through) throws IOException {
+        return lines("SELECT line FROM rental_records WHERE seq <= ? ORDER BY seq", through);
+    }
+
+    public List<String> getRecordLines(LocalDate from, LocalDate to) throws IOException {
+        return lines("SELECT line FROM rental_records WHERE record_date BETWEEN ? AND ? ORDER BY record_date, seq",
+                Date.valueOf(from), Date.valueOf(to));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        try {
+            flush();
+        } finally {
+            pool.close();
+        }
+    }
+
+    private List<String> lines(String sql, Object... params) throws IOException {
+        flush();
+        return execute(c -> {
+            List<String> result = new ArrayList<>();
+            try (PreparedStatement ps = prepare(c, sql, params); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getString(1));
+                }
+            }
+            return result;
+        });
+    }
+
+    private static void upsertVehicle(Connection c, String plate, String status, String info) throws SQLException {
+        if (update(c, "UPDATE vehicles SET status = ?, info = ? WHERE plate = ?", status, info, plate) == 0) {
+            update(c, "INSERT INTO vehicles (plate, status, info) VALUES (?, ?, ?)", plate, status, info);
+        }
+    }
+
+    private static int update(Connection c, String sql, Object... params) throws SQLException {
+        try (PreparedStatement ps = prepare(c, sql, params)) {
+            return ps.executeUpdate();
+        }
+    }
+
+    private static PreparedStatement prepare(Connection c, String sql, Object... params) throws SQLException {
+        PreparedStatement ps = c.prepareStatement(sql);
+        for (int i = 0; i < params.length; i++) {
+            ps.setObject(i + 1, params[i]);
+        }
+        return ps;
+    }
+
+    private <T> T execute(ConnectionPool.SqlWork<T> work) throws IOException {
+        try {
+            return pool.withConnection(work);
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
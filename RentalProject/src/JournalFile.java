@@ -0,0 +1,235 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// Append-only text journal where every line carries a CRC32 suffix
+// ("<line> #1a2b3c4d"). Lines written before checksums existed are still
+// accepted but reported as unverified.
+public final class JournalFile {
+    private static final String MARK = " #";
+    private static final int SUFFIX_LENGTH = MARK.length() + 8;
+
+    public interface LineVisitor {
+        void visit(long offset, String line);
+    }
+
+    private JournalFile() {
+    }
+
+    public static String seal(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return line + MARK + hex(checksum(bytes, bytes.length));
+    }
+
+    public static void append(String path, String line) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path, true))) {
+            writer.write(seal(line) + "\n");
+        }
+    }
+
+    // Single pass over the file. A last line that fails its checksum or stops
+    // partway through one is a torn write and is cut off when repair is true.
+    // So is an unterminated last line without a checksum once earlier lines
+    // carry one, since the write may have stopped inside the body; only in an
+    // entirely legacy file is such a line kept. Bad lines in the middle are
+    // skipped and reported.
+    public static RecoveryReport recover(String path, boolean repair) throws IOException {
+        return recover(new RecoveryReport(path), repair);
+    }
+
+    public static RecoveryReport recover(RecoveryReport report, boolean repair) throws IOException {
+        String path = report.getPath();
+        long offset = 0;
+        long lineStart = 0;
+        long validEnd = 0;
+        boolean tailNeedsNewline = false;
+        boolean checksummed = false;
+        byte[] buf = new byte[256];
+        int len = 0;
+
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(path), 1 << 16)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    if (len == buf.length) {
+                        buf = Arrays.copyOf(buf, len * 2);
+                    }
+                    buf[len++] = (byte) b;
+                    continue;
+                }
+                int state = verify(buf, len, report);
+                if (state < 0) {
+                    report.addCorruptRange(lineStart, offset);
+                } else {
+                    validEnd = offset;
+                }
+                checksummed |= state != 0;
+                lineStart = offset;
+                len = 0;
+            }
+        } catch (FileNotFoundException e) {
+            return report;
+        }
+
+        long end = offset;
+        if (len > 0) {
+            // Unterminated tail: kept, with its newline, if its checksum matches or
+            // the file has never had checksums.
+            boolean torn = endsInPartialSuffix(buf, len) || (checksummed && !hasSuffix(buf, len));
+            if (!torn && verify(buf, len, report) >= 0) {
+                validEnd = end;
+                tailNeedsNewline = true;
+            } else {
+                report.addCorruptRange(lineStart, end);
+            }
+        }
+
+        // Only the trailing run of bad bytes can be a torn append.
+        long tornFrom = validEnd;
+        if (tornFrom < end) {
+            report.setTruncatedBytes(end - tornFrom);
+        }
+        if (repair && (tornFrom < end || tailNeedsNewline)) {
+            try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+                raf.setLength(tornFrom);
+                if (tailNeedsNewline) {
+                    raf.seek(tornFrom);
+                    raf.write('\n');
+                }
+            }
+        }
+        return report;
+    }
+
+    // Streams every intact line with the byte offset it starts at. Meant for
+    // files that recover() has already repaired; bad lines are skipped.
+    public static void scan(String path, LineVisitor visitor) throws IOException {
+        long offset = 0;
+        long lineStart = 0;
+        byte[] buf = new byte[256];
+        int len = 0;
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(path), 1 << 16)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    if (len == buf.length) {
+                        buf = Arrays.copyOf(buf, len * 2);
+                    }
+                    buf[len++] = (byte) b;
+                    continue;
+                }
+                String line = unseal(buf, len);
+                if (line != null && !line.trim().isEmpty()) {
+                    visitor.visit(lineStart, line);
+                }
+                lineStart = offset;
+                len = 0;
+            }
+        } catch (FileNotFoundException e) {
+            return;
+        }
+    }
+
+    // Reads back the single line starting at offset; null if it fails its checksum.
+    public static String readAt(RandomAccessFile file, long offset) throws IOException {
+        file.seek(offset);
+        byte[] buf = new byte[256];
+        int len = 0;
+        while (true) {
+            if (len == buf.length) {
+                buf = Arrays.copyOf(buf, len * 2);
+            }
+            int n = file.read(buf, len, buf.length - len);
+            if (n < 0) {
+                return unseal(buf, len);
+            }
+            for (int i = len; i < len + n; i++) {
+                if (buf[i] == '\n') {
+                    return unseal(buf, i);
+                }
+            }
+            len += n;
+        }
+    }
+
+    private static String unseal(byte[] buf, int len) {
+        if (len > 0 && buf[len - 1] == '\r') {
+            len--;
+        }
+        if (!hasSuffix(buf, len)) {
+            return new String(buf, 0, len, StandardCharsets.UTF_8);
+        }
+        int bodyLength = len - SUFFIX_LENGTH;
+        long expected = parseHex(buf, bodyLength + MARK.length());
+        if (expected < 0 || expected != checksum(buf, bodyLength)) {
+            return null;
+        }
+        return new String(buf, 0, bodyLength, StandardCharsets.UTF_8);
+    }
+
+    // Returns 1 for a verified line, 0 for a legacy or blank line, -1 for a mismatch.
+    private static int verify(byte[] buf, int len, RecoveryReport report) {
+        if (len > 0 && buf[len - 1] == '\r') {
+            len--;
+        }
+        if (!hasSuffix(buf, len)) {
+            String line = new String(buf, 0, len, StandardCharsets.UTF_8);
+            if (!line.trim().isEmpty()) {
+                report.addLine(line, false);
+            }
+            return 0;
+        }
+        int bodyLength = len - SUFFIX_LENGTH;
+        long expected = parseHex(buf, bodyLength + MARK.length());
+        if (expected < 0 || expected != checksum(buf, bodyLength)) {
+            return -1;
+        }
+        report.addLine(new String(buf, 0, bodyLength, StandardCharsets.UTF_8), true);
+        return 1;
+    }
+
+    private static boolean hasSuffix(byte[] buf, int len) {
+        return len >= SUFFIX_LENGTH && buf[len - SUFFIX_LENGTH] == ' ' && buf[len - SUFFIX_LENGTH + 1] == '#';
+    }
+
+    // " #" followed by fewer than the eight hex digits of a full suffix.
+    private static boolean endsInPartialSuffix(byte[] buf, int len) {
+        int i = len;
+        while (i > 0 && len - i < 7 && Character.digit(buf[i - 1], 16) >= 0) {
+            i--;
+        }
+        return i >= MARK.length() && buf[i - 2] == ' ' && buf[i - 1] == '#';
+    }
+
+    private static long checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+
+    private static long parseHex(byte[] buf, int from) {
+        long value = 0;
+        for (int i = from; i < from + 8; i++) {
+            int digit = Character.digit(buf[i], 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static String hex(long value) {
+        String s = Long.toHexString(value);
+        return "00000000".substring(s.length()) + s;
+    }
+}
@@ -0,0 +1,395 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Soak test for a RentalSystem: builds a synthetic fleet and customer base,
+// then runs a rent/return/lookup mix from several threads for a fixed time
+// and reports throughput, latency percentiles, heap and GC activity.
+//   java LoadGenerator [seconds] [threads] [vehicles] [customers] [rent%] [return%]
+// Whatever is left of 100% after rents and returns is lookups.
+public class LoadGenerator {
+    public enum Op { RENT, RETURN, LOOKUP }
+
+    private static final LocalDate BASE_DATE = LocalDate.of(2024, 1, 1);
+    private static final String[][] MODELS = {
+        {"Toyota", "Corolla"}, {"Honda", "Civic"}, {"Ford", "Transit"}, {"Harley", "Davidson"}, {"Porsche", "911"}
+    };
+
+    private final RentalSystem system;
+    private final int threads;
+    private final int rentPercent;
+    private final int returnPercent;
+    private final List<Vehicle> fleet = new ArrayList<>();
+    private final List<Customer> customers = new ArrayList<>();
+
+    public LoadGenerator(RentalSystem system, int threads, int rentPercent, int returnPercent) {
+        if (threads <= 0 || rentPercent < 0 || returnPercent < 0 || rentPercent + returnPercent > 100) {
+            throw new IllegalArgumentException("Need at least one thread and a mix within 100%");
+        }
+        this.system = system;
+        this.threads = threads;
+        this.rentPercent = rentPercent;
+        this.returnPercent = returnPercent;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int vehicles = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        int customerCount = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+        int rent = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+        int ret = args.length > 5 ? Integer.parseInt(args[5]) : 30;
+
+        RentalSystem system = new RentalSystem(Files.createTempDirectory("load-gen").toString());
+        LoadGenerator generator = new LoadGenerator(system, threads, rent, ret);
+        generator.populate(vehicles, customerCount);
+        System.out.println("Running " + threads + " threads for " + seconds + " s against "
+                + vehicles + " vehicles and " + customerCount + " customers (" + rent + "% rent, "
+                + ret + "% return, " + (100 - rent - ret) + "% lookup)");
+        System.out.print(generator.run(seconds * 1000L));
+        system.close();
+    }
+
+    // Adds vehicles of every type with unique plates, and numbered customers.
+    public void populate(int vehicles, int customerCount) {
+        quietly(() -> {
+            for (int i = 0; i < vehicles; i++) {
+                String[] model = MODELS[i % MODELS.length];
+                int year = 2015 + i % 10;
+                Vehicle v;
+                switch (i % MODELS.length) {
+                    case 2: v = new Truck(model[0], model[1], year, 1000 + i % 5 * 500); break;
+                    case 3: v = new Motorcycle(model[0], model[1], year, i % 2 == 0); break;
+                    case 4: v = new SportCar(model[0], model[1], year, 2, 300 + i % 200, i % 2 == 0); break;
+                    default: v = new Car(model[0], model[1], year, 5); break;
+                }
+                v.setLicensePlate(plate(i));
+                if (system.addVehicle(v)) {
+                    fleet.add(v);
+                }
+            }
+            int firstId = 100_000;
+            for (int i = 0; i < customerCount; i++) {
+                Customer c = new Customer(firstId + i, "Load Customer " + i);
+                if (system.addCustomer(c)) {
+                    customers.add(c);
+                }
+            }
+        });
+    }
+
+    // Runs the mix for durationMillis and returns what was measured. The
+    // system's per-operation console messages are suppressed meanwhile.
+    public Report run(long durationMillis) {
+        if (fleet.isEmpty() || customers.isEmpty()) {
+            throw new IllegalStateException("populate() the system first");
+        }
+        Report report = new Report(threads);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        long gcCountBefore = gcCount(collectors);
+        long gcTimeBefore = gcTime(collectors);
+        report.heapBefore = memory.getHeapMemoryUsage().getUsed();
+        AtomicLong peakHeap = new AtomicLong(report.heapBefore);
+
+        quietly(() -> {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<>();
+            long deadline = System.nanoTime() + durationMillis * 1_000_000L;
+            for (int t = 0; t < threads; t++) {
+                Histogram[] histograms = report.histogramsFor(t);
+                long[] failures = report.failuresFor(t);
+                Thread worker = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        int roll = random.nextInt(100);
+                        Op op = roll < rentPercent ? Op.RENT : roll < rentPercent + returnPercent ? Op.RETURN : Op.LOOKUP;
+                        long began = System.nanoTime();
+                        boolean ok = execute(op, random);
+                        histograms[op.ordinal()].record(System.nanoTime() - began);
+                        if (!ok) {
+                            failures[op.ordinal()]++;
+                        }
+                    }
+                }, "load-" + t);
+                workers.add(worker);
+                worker.start();
+            }
+            long began = System.nanoTime();
+            start.countDown();
+            for (Thread worker : workers) {
+                while (worker.isAlive()) {
+                    peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        worker.join(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            report.elapsedNanos = System.nanoTime() - began;
+        });
+
+        report.heapAfter = memory.getHeapMemoryUsage().getUsed();
+        report.heapPeak = Math.max(peakHeap.get(), report.heapAfter);
+        report.heapMax = memory.getHeapMemoryUsage().getMax();
+        report.gcCount = gcCount(collectors) - gcCountBefore;
+        report.gcMillis = gcTime(collectors) - gcTimeBefore;
+        return report;
+    }
+
+    // Returns false when the system turned the request down, e.g. renting a
+    // vehicle someone else already has.
+    private boolean execute(Op op, ThreadLocalRandom random) {
+        Vehicle vehicle = fleet.get(random.nextInt(fleet.size()));
+        switch (op) {
+            case RENT: {
+                Customer customer = customers.get(random.nextInt(customers.size()));
+                LocalDate date = BASE_DATE.plusDays(random.nextInt(365));
+                if (vehicle.getStatus() == Vehicle.VehicleStatus.MAINTENANCE) {
+                    // Play the workshop, or usage-based service drains the fleet.
+                    system.getScheduler().serviceCompleted(vehicle, date);
+                }
+                return system.rentVehicleCents(vehicle, customer, date, 2500 + random.nextInt(20000));
+            }
+            case RETURN: {
+                ActiveRental open = system.getActiveRental(vehicle.getLicensePlate());
+                if (open == null) {
+                    return false;
+                }
+                LocalDate date = open.getStartDate().plusDays(1 + random.nextInt(10));
+                return system.returnVehicleCents(vehicle, open.getCustomer(), date, random.nextInt(4) == 0 ? 1500 : 0);
+            }
+            default:
+                switch (random.nextInt(4)) {
+                    case 0:
+                        return system.findVehicleByPlate(vehicle.getLicensePlate()) != null;
+                    case 1:
+                        return !system.searchCustomers("Load Customer " + random.nextInt(100), 10).isEmpty();
+                    case 2:
+                        return system.findVehicles(VehicleQuery.where().make(vehicle.getMake())
+                                .status(Vehicle.VehicleStatus.AVAILABLE)) != null;
+                    default:
+                        Customer customer = customers.get(random.nextInt(customers.size()));
+                        system.getRentalsByCustomer(customer.getCustomerId());
+                        return true;
+                }
+        }
+    }
+
+    private static synchronized void quietly(Runnable work) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        try {
+            work.run();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static long gcCount(List<GarbageCollectorMXBean> collectors) {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long gcTime(List<GarbageCollectorMXBean> collectors) {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    // Three letters and three digits, unique for i below 26^3 * 1000.
+    private static String plate(int i) {
+        int letters = i / 1000;
+        return "" + (char) ('A' + letters / 676 % 26) + (char) ('A' + letters / 26 % 26) + (char) ('A' + letters % 26)
+                + String.format("%03d", i % 1000);
+    }
+
+    // Log-linear latency histogram: 16 sub-buckets per power of two, so any
+    // recorded value is reported within about 6%. One per thread per op, merged
+    // after the run, so recording never contends.
+    public static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private final long[] counts = new long[64 << SUB_BITS];
+        private long total;
+        private long max;
+
+        void record(long nanos) {
+            long value = Math.max(1, nanos);
+            counts[index(value)]++;
+            total++;
+            max = Math.max(max, value);
+        }
+
+        private static int index(long value) {
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            if (exponent < SUB_BITS) {
+                return (int) value;
+            }
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+            return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+        }
+
+        private static long upperBound(int index) {
+            if (index < 1 << SUB_BITS) {
+                return index;
+            }
+            int exponent = (index >>> SUB_BITS) + SUB_BITS - 1;
+            long sub = index & ((1 << SUB_BITS) - 1);
+            return ((1L << SUB_BITS | sub) + 1 << (exponent - SUB_BITS)) - 1;
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+            max = Math.max(max, other.max);
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        // Latency in nanoseconds at or below which the given fraction of samples fall.
+        public long percentile(double fraction) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    public static final class Report {
+        private final Histogram[][] perThread;
+        private final long[][] failures;
+        private long elapsedNanos;
+        private long heapBefore;
+        private long heapAfter;
+        private long heapPeak;
+        private long heapMax;
+        private long gcCount;
+        private long gcMillis;
+
+        private Report(int threads) {
+            perThread = new Histogram[threads][Op.values().length];
+            failures = new long[threads][Op.values().length];
+            for (Histogram[] row : perThread) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = new Histogram();
+                }
+            }
+        }
+
+        private Histogram[] histogramsFor(int thread) {
+            return perThread[thread];
+        }
+
+        private long[] failuresFor(int thread) {
+            return failures[thread];
+        }
+
+        public Histogram getLatency(Op op) {
+            Histogram merged = new Histogram();
+            for (Histogram[] row : perThread) {
+                merged.add(row[op.ordinal()]);
+            }
+            return merged;
+        }
+
+        public long getOperations(Op op) {
+            return getLatency(op).getCount();
+        }
+
+        public long getTotalOperations() {
+            long total = 0;
+            for (Op op : Op.values()) {
+                total += getOperations(op);
+            }
+            return total;
+        }
+
+        public long getFailures(Op op) {
+            long total = 0;
+            for (long[] row : failures) {
+                total += row[op.ordinal()];
+            }
+            return total;
+        }
+
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : getTotalOperations() / (elapsedNanos / 1e9);
+        }
+
+        public long getHeapPeak() {
+            return heapPeak;
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        public long getGcMillis() {
+            return gcMillis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d operations in %.1f s: %.0f ops/s%n", getTotalOperations(), elapsedNanos / 1e9, getThroughput()));
+            sb.append(String.format("%-7s %9s %8s %9s %9s %9s %9s %9s%n", "op", "count", "failed", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+            for (Op op : Op.values()) {
+                Histogram h = getLatency(op);
+                sb.append(String.format("%-7s %9d %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n", op, h.getCount(), getFailures(op),
+                        h.percentile(0.50) / 1e3, h.percentile(0.90) / 1e3, h.percentile(0.99) / 1e3,
+                        h.percentile(0.999) / 1e3, h.getMax() / 1e3));
+            }
+            sb.append(String.format("heap: %d MB before, %d MB after, %d MB peak of %d MB max%n",
+                    heapBefore >> 20, heapAfter >> 20, heapPeak >> 20, heapMax >> 20));
+            sb.append(String.format("gc: %d collections, %d ms total%s%n", gcCount, gcMillis,
+                    gcCount == 0 ? "" : String.format(", %.1f ms average", gcMillis / (double) gcCount)));
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// In-process transport: entries are handed straight to subscribed followers.
+// Disconnecting drops live traffic, which lets tests exercise catch-up.
+public class LoopbackTransport implements ReplicationTransport {
+    private final List<ReplicationFollower> followers = new CopyOnWriteArrayList<>();
+    private volatile ReplicationLeader leader;
+    private volatile boolean connected = true;
+
+    @Override
+    public void connect(ReplicationLeader leader) {
+        this.leader = leader;
+    }
+
+    @Override
+    public void subscribe(ReplicationFollower follower) {
+        followers.add(follower);
+    }
+
+    @Override
+    public void unsubscribe(ReplicationFollower follower) {
+        followers.remove(follower);
+        if (leader != null) {
+            leader.release(follower.getId());
+        }
+    }
+
+    @Override
+    public void send(ReplicationEntry entry) {
+        if (!connected) {
+            return;
+        }
+        for (ReplicationFollower follower : followers) {
+            follower.receive(entry);
+        }
+    }
+
+    @Override
+    public List<ReplicationEntry> fetchSince(long sequence) {
+        if (!connected || leader == null) {
+            return Collections.emptyList();
+        }
+        return leader.entriesSince(sequence);
+    }
+
+    @Override
+    public void acknowledge(ReplicationFollower follower, long sequence) {
+        if (connected && leader != null) {
+            leader.acknowledge(follower.getId(), sequence);
+        }
+    }
+
+    public void setConnected(boolean connected) {
+        this.connected = connected;
+    }
+}
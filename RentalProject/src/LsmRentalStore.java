@@ -0,0 +1,258 @@
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// RentalStore on an embedded LsmTree. Keys are laid out so range scans follow
+// the natural orders:
+//   v/<PLATE>                       -> vehicle line (overwritten on status change)
+//   c/<id, offset to sort unsigned> -> customer line
+//   r/<yyyy-mm-dd>/<sequence>       -> rental record line
+//   s/<PLATE>                       -> service state line
+//   x/v/<PLATE>/<date>/<sequence>   -> "" (index of r/<date>/<sequence>)
+//   x/c/<id>/<date>/<sequence>      -> "" (index of r/<date>/<sequence>)
+// A record and its index keys are written in one batch.
+public class LsmRentalStore implements IndexedRecordStore {
+    private static final String SEQUENCE_KEY = "m/record-sequence";
+    private static final String INDEXED_KEY = "m/record-index";
+    private static final int INDEX_BATCH = 1024;
+    // "<yyyy-mm-dd>/<12-digit sequence>"
+    private static final int SUFFIX_LENGTH = 23;
+
+    private final LsmTree tree;
+    private long nextSequence;
+
+    public LsmRentalStore(String dataDir) throws IOException {
+        this(dataDir, 4096);
+    }
+
+    public LsmRentalStore(String dataDir, int memtableLimit) throws IOException {
+        tree = new LsmTree(new File(dataDir), memtableLimit);
+        String sequence = tree.get(SEQUENCE_KEY);
+        nextSequence = sequence == null ? 1 : Long.parseLong(sequence);
+    }
+
+    @Override
+    public void saveVehicle(Vehicle vehicle) throws IOException {
+        tree.put(vehicleKey(vehicle.getLicensePlate()), vehicle.getInfo());
+    }
+
+    @Override
+    public void saveVehicleStatus(Vehicle vehicle) throws IOException {
+        saveVehicle(vehicle);
+    }
+
+    @Override
+    public void saveCustomer(Customer customer) throws IOException {
+        tree.put(customerKey(customer.getCustomerId()), customer.toString());
+    }
+
+    @Override
+    public synchronized void saveRecord(RentalRecord record) throws IOException {
+        long sequence = nextSequence++;
+        String suffix = String.format("%s/%012d", record.getRecordDate(), sequence);
+        Map<String, String> entries = new HashMap<>();
+        entries.put(SEQUENCE_KEY, Long.toString(nextSequence));
+        entries.put("r/" + suffix, record.toLine());
+        addIndexKeys(entries, suffix, record);
+        tree.putAll(entries);
+    }
+
+    // Adds the x/ index keys for records stored before the index existed,
+    // a batch at a time. Done once; parser resolves lines to records.
+    public synchronized void indexRecords(Function<String, RentalRecord> parser) throws IOException {
+        if (tree.get(INDEXED_KEY) != null) {
+            return;
+        }
+        String from = "r/";
+        while (true) {
+            List<Map.Entry<String, String>> batch = new ArrayList<>();
+            tree.scan(from, "r0", (k, v) -> {
+                batch.add(new AbstractMap.SimpleEntry<>(k, v));
+                return batch.size() < INDEX_BATCH;
+            });
+            Map<String, String> entries = new HashMap<>();
+            for (Map.Entry<String, String> e : batch) {
+                try {
+                    RentalRecord record = parser.apply(e.getValue());
+                    if (record != null) {
+                        addIndexKeys(entries, e.getKey().substring(2), record);
+                    }
+                } catch (RuntimeException ex) {
+                    System.err.println("Failed to index rental record: " + e.getValue() + " (" + ex.getMessage() + ")");
+                }
+            }
+            if (!entries.isEmpty()) {
+                tree.putAll(entries);
+            }
+            if (batch.size() < INDEX_BATCH) {
+                break;
+            }
+            from = batch.get(batch.size() - 1).getKey() + "\0";
+        }
+        tree.put(INDEXED_KEY, "1");
+    }
+
+    @Override
+    public void saveServiceState(String line) throws IOException {
+        tree.put("s/" + line.substring(0, line.indexOf(" | ")).toUpperCase(), line);
+    }
+
+    @Override
+    public List<String> loadVehicleLines() throws IOException {
+        return new ArrayList<>(tree.scan("v/", "v0").values());
+    }
+
+    @Override
+    public List<String> loadCustomerLines() throws IOException {
+        return new ArrayList<>(tree.scan("c/", "c0").values());
+    }
+
+    @Override
+    public List<String> loadRecordLines() throws IOException {
+        return new ArrayList<>(tree.scan("r/", "r0").values());
+    }
+
+    @Override
+    public List<String> loadServiceLines() throws IOException {
+        return new ArrayList<>(tree.scan("s/", "s0").values());
+    }
+
+    public String getVehicleLine(String plate) throws IOException {
+        return tree.get(vehicleKey(plate));
+    }
+
+    public String getCustomerLine(int customerId) throws IOException {
+        return tree.get(customerKey(customerId));
+    }
+
+    // Record lines by date, with the sequence number as the offset.
+    @Override
+    public void scanRecords(JournalFile.LineVisitor visitor) throws IOException {
+        tree.scan("r/", "r0", (k, v) -> {
+            visitor.visit(sequence(k), v);
+            return true;
+        });
+    }
+
+    @Override
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    @Override
+    public List<String> getRecordLinesThrough(long through) throws IOException {
+        List<String> lines = new ArrayList<>();
+        tree.scan("r/", "r0", (k, v) -> {
+            if (sequence(k) <= through) {
+                lines.add(v);
+            }
+            return true;
+        });
+        return lines;
+    }
+
+    @Override
+    public List<String> getRecordLinesByVehicle(String plate, long through, int from, int limit) throws IOException {
+        List<String> suffixes = new ArrayList<>();
+        int[] skipped = {0};
+        tree.scan(vehicleIndex(plate), end(vehicleIndex(plate)), (k, v) -> {
+            String suffix = indexSuffix(k, vehicleIndex(plate), through);
+            if (suffix != null && skipped[0]++ >= from) {
+                suffixes.add(suffix);
+            }
+            return suffixes.size() < limit;
+        });
+        return records(suffixes);
+    }
+
+    @Override
+    public List<String> getRecordLinesByCustomers(List<Integer> customerIds, long through, int from, int limit) throws IOException {
+        List<String> suffixes = new ArrayList<>();
+        for (int customerId : customerIds) {
+            String prefix = customerIndex(customerId);
+            tree.scan(prefix, end(prefix), (k, v) -> {
+                String suffix = indexSuffix(k, prefix, through);
+                if (suffix != null) {
+                    suffixes.add(suffix);
+                }
+                return true;
+            });
+        }
+        Collections.sort(suffixes);
+        if (from >= suffixes.size()) {
+            return new ArrayList<>();
+        }
+        return records(suffixes.subList(from, Math.min(suffixes.size(), from + limit)));
+    }
+
+    // Record lines dated from..to inclusive, oldest first.
+    public List<String> getRecordLines(LocalDate from, LocalDate to) throws IOException {
+        return new ArrayList<>(tree.scan("r/" + from, "r/" + to.plusDays(1)).values());
+    }
+
+    public void flush() throws IOException {
+        tree.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        tree.close();
+    }
+
+    private static void addIndexKeys(Map<String, String> entries, String suffix, RentalRecord record) {
+        entries.put(vehicleIndex(record.getVehicle().getLicensePlate()) + suffix, "");
+        entries.put(customerIndex(record.getCustomer().getCustomerId()) + suffix, "");
+    }
+
+    private List<String> records(List<String> suffixes) throws IOException {
+        List<String> lines = new ArrayList<>(suffixes.size());
+        for (String suffix : suffixes) {
+            String line = tree.get("r/" + suffix);
+            if (line != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    // The record suffix of an index key under prefix, or null when the key
+    // belongs to a longer plate or to a record saved after through.
+    private static String indexSuffix(String key, String prefix, long through) {
+        if (key.length() != prefix.length() + SUFFIX_LENGTH || sequence(key) > through) {
+            return null;
+        }
+        return key.substring(prefix.length());
+    }
+
+    private static long sequence(String key) {
+        return Long.parseLong(key.substring(key.length() - 12));
+    }
+
+    // First key after every key starting with prefix, which ends in '/'.
+    private static String end(String prefix) {
+        return prefix.substring(0, prefix.length() - 1) + "0";
+    }
+
+    private static String vehicleIndex(String plate) {
+        return "x/v/" + plate.toUpperCase() + "/";
+    }
+
+    private static String customerIndex(int customerId) {
+        return "x/c/" + customerKey(customerId).substring(2) + "/";
+    }
+
+    private static String vehicleKey(String plate) {
+        return "v/" + plate.toUpperCase();
+    }
+
+    private static String customerKey(int customerId) {
+        return String.format("c/%010d", (long) customerId - Integer.MIN_VALUE);
+    }
+}
@@ -0,0 +1,417 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Small embedded LSM tree for String keys and values. Writes go to a
+// checksummed write-ahead log and a sorted in-memory memtable; a full memtable
+// is flushed to an immutable sorted table file with a sparse key index, and
+// tables are merged once there are too many. Lookups check the memtable and
+// then tables newest first, reading at most one index block per table; range
+// scans stream a merge of all of them without collecting the range.
+public class LsmTree implements Closeable {
+    private static final String TOMBSTONE = new String("<deleted>");
+    private static final int INDEX_INTERVAL = 32;
+    private static final int MAX_TABLES = 8;
+    private static final String COMPACT_LOG = "compact.log";
+
+    // Receives entries in key order; returning false ends the scan. A visitor
+    // runs under the tree's lock and must not write to the tree.
+    public interface EntryVisitor {
+        boolean visit(String key, String value) throws IOException;
+    }
+
+    private final File dir;
+    private final File walFile;
+    private final int memtableLimit;
+    private final List<Table> tables = new ArrayList<>();
+    private TreeMap<String, String> memtable = new TreeMap<>();
+    private long nextTableId = 1;
+
+    public LsmTree(File dir, int memtableLimit) throws IOException {
+        this.dir = dir;
+        this.memtableLimit = memtableLimit;
+        dir.mkdirs();
+        finishCompaction();
+        File[] files = dir.listFiles((d, name) -> name.startsWith("table-") && name.endsWith(".sst"));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File f : files) {
+                tables.add(new Table(f));
+                nextTableId = Math.max(nextTableId, tableId(f) + 1);
+            }
+        }
+        walFile = new File(dir, "wal.log");
+        for (String line : JournalFile.recover(walFile.getPath(), true).getLines()) {
+            String[] parts = line.split("\t", -1);
+            if (parts[0].equals("B")) {
+                for (int i = 1; i + 1 < parts.length; i += 2) {
+                    memtable.put(unescape(parts[i]), unescape(parts[i + 1]));
+                }
+                continue;
+            }
+            String key = unescape(parts[1]);
+            memtable.put(key, parts[0].equals("D") ? TOMBSTONE : unescape(parts[2]));
+        }
+    }
+
+    // A compaction that stopped after its merged table was written still has
+    // to delete the tables it replaced; one that stopped earlier is dropped.
+    private void finishCompaction() throws IOException {
+        File log = new File(dir, COMPACT_LOG);
+        if (!log.exists()) {
+            return;
+        }
+        List<String> names = Files.readAllLines(log.toPath(), StandardCharsets.UTF_8);
+        if (!names.isEmpty() && new File(dir, names.get(0)).exists()) {
+            for (String name : names.subList(1, names.size())) {
+                Files.deleteIfExists(new File(dir, name).toPath());
+            }
+        }
+        Files.delete(log.toPath());
+    }
+
+    public synchronized void put(String key, String value) throws IOException {
+        JournalFile.append(walFile.getPath(), "P\t" + escape(key) + "\t" + escape(value));
+        memtable.put(key, value);
+        if (memtable.size() >= memtableLimit) {
+            flush();
+        }
+    }
+
+    // Puts every entry with a single log write, so a crash keeps all or none.
+    public synchronized void putAll(Map<String, String> entries) throws IOException {
+        StringBuilder line = new StringBuilder("B");
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            line.append('\t').append(escape(e.getKey())).append('\t').append(escape(e.getValue()));
+        }
+        JournalFile.append(walFile.getPath(), line.toString());
+        memtable.putAll(entries);
+        if (memtable.size() >= memtableLimit) {
+            flush();
+        }
+    }
+
+    public synchronized void delete(String key) throws IOException {
+        JournalFile.append(walFile.getPath(), "D\t" + escape(key));
+        memtable.put(key, TOMBSTONE);
+        if (memtable.size() >= memtableLimit) {
+            flush();
+        }
+    }
+
+    public synchronized String get(String key) throws IOException {
+        String value = memtable.get(key);
+        if (value == null) {
+            for (int i = tables.size() - 1; i >= 0 && value == null; i--) {
+                value = tables.get(i).get(key);
+            }
+        }
+        return value == TOMBSTONE ? null : value;
+    }
+
+    // Live entries with from <= key < to, in key order.
+    public synchronized SortedMap<String, String> scan(String from, String to) throws IOException {
+        TreeMap<String, String> result = new TreeMap<>();
+        scan(from, to, (k, v) -> {
+            result.put(k, v);
+            return true;
+        });
+        return result;
+    }
+
+    // Streams live entries with from <= key < to (null for no bound) in key
+    // order. Each table and the memtable is read through its own cursor and
+    // the newest value of a key wins, so only one entry per source is held.
+    public synchronized void scan(String from, String to, EntryVisitor visitor) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>((a, b) -> {
+            int c = a.key.compareTo(b.key);
+            return c != 0 ? c : Integer.compare(b.rank, a.rank);
+        });
+        for (int i = 0; i < tables.size(); i++) {
+            Cursor cursor = new Cursor(i, tables.get(i), null);
+            if (cursor.seek(from, to)) {
+                queue.add(cursor);
+            }
+        }
+        SortedMap<String, String> recent = to == null ? memtable.tailMap(from) : memtable.subMap(from, to);
+        Cursor newest = new Cursor(tables.size(), null, recent.entrySet().iterator());
+        if (newest.seek(from, to)) {
+            queue.add(newest);
+        }
+        while (!queue.isEmpty()) {
+            Cursor top = queue.poll();
+            String key = top.key;
+            String value = top.value;
+            if (top.next(to)) {
+                queue.add(top);
+            }
+            while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+                Cursor older = queue.poll();
+                if (older.next(to)) {
+                    queue.add(older);
+                }
+            }
+            if (value != TOMBSTONE && !visitor.visit(key, value)) {
+                return;
+            }
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        if (memtable.isEmpty()) {
+            return;
+        }
+        tables.add(writeTable(memtable));
+        memtable = new TreeMap<>();
+        // The table is durable, so the log can start over. A crash before this
+        // point only replays puts that are already in the table.
+        Files.write(walFile.toPath(), new byte[0]);
+        if (tables.size() > MAX_TABLES) {
+            compact();
+        }
+    }
+
+    // Merges every table into one, dropping deleted keys. Without their
+    // tombstones the old tables must all be gone before the merged one is
+    // trusted, so they are listed in compact.log before it is written; see
+    // finishCompaction().
+    public synchronized void compact() throws IOException {
+        if (tables.size() <= 1) {
+            return;
+        }
+        TreeMap<String, String> merged = new TreeMap<>();
+        for (Table table : tables) {
+            table.scan("", null, merged);
+        }
+        merged.values().removeIf(v -> v == TOMBSTONE);
+        List<String> names = new ArrayList<>();
+        names.add(tableFile(nextTableId).getName());
+        for (Table table : tables) {
+            names.add(table.file.getName());
+        }
+        File log = new File(dir, COMPACT_LOG);
+        File logTemp = new File(dir, COMPACT_LOG + ".tmp");
+        Files.write(logTemp.toPath(), names, StandardCharsets.UTF_8);
+        Files.move(logTemp.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Table combined = writeTable(merged);
+        for (Table table : tables) {
+            table.close();
+            Files.deleteIfExists(table.file.toPath());
+        }
+        tables.clear();
+        tables.add(combined);
+        Files.delete(log.toPath());
+    }
+
+    public synchronized int tableCount() {
+        return tables.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Table table : tables) {
+            table.close();
+        }
+    }
+
+    // Layout: entries (key, flag, [value]) in key order, then every
+    // INDEX_INTERVAL-th key with its offset, then the index offset and count.
+    private Table writeTable(SortedMap<String, String> entries) throws IOException {
+        File target = tableFile(nextTableId++);
+        File temp = new File(target.getPath() + ".tmp");
+        List<String> indexKeys = new ArrayList<>();
+        List<Long> indexOffsets = new ArrayList<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            int n = 0;
+            for (Map.Entry<String, String> e : entries.entrySet()) {
+                if (n++ % INDEX_INTERVAL == 0) {
+                    indexKeys.add(e.getKey());
+                    indexOffsets.add((long) out.size());
+                }
+                out.writeUTF(e.getKey());
+                if (e.getValue() == TOMBSTONE) {
+                    out.writeByte(1);
+                } else {
+                    out.writeByte(0);
+                    out.writeUTF(e.getValue());
+                }
+            }
+            long indexOffset = out.size();
+            out.writeInt(indexKeys.size());
+            for (int i = 0; i < indexKeys.size(); i++) {
+                out.writeUTF(indexKeys.get(i));
+                out.writeLong(indexOffsets.get(i));
+            }
+            out.writeLong(indexOffset);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return new Table(target);
+    }
+
+    private File tableFile(long id) {
+        return new File(dir, String.format("table-%012d.sst", id));
+    }
+
+    private static long tableId(File f) {
+        String name = f.getName();
+        return Long.parseLong(name.substring("table-".length(), name.length() - ".sst".length()));
+    }
+
+    private static final class Table implements Closeable {
+        final File file;
+        final RandomAccessFile raf;
+        final String[] indexKeys;
+        final long[] indexOffsets;
+        final long dataEnd;
+
+        Table(File file) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "r");
+            raf.seek(raf.length() - 8);
+            dataEnd = raf.readLong();
+            raf.seek(dataEnd);
+            int count = raf.readInt();
+            indexKeys = new String[count];
+            indexOffsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                indexKeys[i] = raf.readUTF();
+                indexOffsets[i] = raf.readLong();
+            }
+        }
+
+        // Index of the block that could hold key, or -1 if key sorts first.
+        private int block(String key) {
+            int i = Arrays.binarySearch(indexKeys, key);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        String get(String key) throws IOException {
+            int b = block(key);
+            if (b < 0) {
+                return null;
+            }
+            raf.seek(indexOffsets[b]);
+            long end = b + 1 < indexOffsets.length ? indexOffsets[b + 1] : dataEnd;
+            while (raf.getFilePointer() < end) {
+                String k = raf.readUTF();
+                String v = raf.readByte() == 1 ? TOMBSTONE : raf.readUTF();
+                int cmp = k.compareTo(key);
+                if (cmp == 0) {
+                    return v;
+                }
+                if (cmp > 0) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        void scan(String from, String to, Map<String, String> out) throws IOException {
+            if (indexKeys.length == 0) {
+                return;
+            }
+            raf.seek(indexOffsets[Math.max(0, block(from))]);
+            while (raf.getFilePointer() < dataEnd) {
+                String k = raf.readUTF();
+                String v = raf.readByte() == 1 ? TOMBSTONE : raf.readUTF();
+                if (to != null && k.compareTo(to) >= 0) {
+                    return;
+                }
+                if (k.compareTo(from) >= 0) {
+                    out.put(k, v);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+
+    // One source of a merged scan: a table read from its own position, or the
+    // memtable. A higher rank is newer.
+    private static final class Cursor {
+        final int rank;
+        final Table table;
+        final Iterator<Map.Entry<String, String>> entries;
+        long position;
+        String key;
+        String value;
+
+        Cursor(int rank, Table table, Iterator<Map.Entry<String, String>> entries) {
+            this.rank = rank;
+            this.table = table;
+            this.entries = entries;
+        }
+
+        // Moves to the first entry at or after from; false if there is none before to.
+        boolean seek(String from, String to) throws IOException {
+            if (table != null) {
+                if (table.indexKeys.length == 0) {
+                    return false;
+                }
+                position = table.indexOffsets[Math.max(0, table.block(from))];
+            }
+            while (next(to)) {
+                if (key.compareTo(from) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean next(String to) throws IOException {
+            if (table == null) {
+                if (!entries.hasNext()) {
+                    return false;
+                }
+                Map.Entry<String, String> e = entries.next();
+                key = e.getKey();
+                value = e.getValue();
+            } else {
+                if (position >= table.dataEnd) {
+                    return false;
+                }
+                table.raf.seek(position);
+                key = table.raf.readUTF();
+                value = table.raf.readByte() == 1 ? TOMBSTONE : table.raf.readUTF();
+                position = table.raf.getFilePointer();
+            }
+            return to == null || key.compareTo(to) < 0;
+        }
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char n = s.charAt(++i);
+                sb.append(n == 't' ? '\t' : n == 'n' ? '\n' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,86 @@
+// Money amounts are carried as long cents. These helpers format and parse the
+// "$12.34" text used in the data files without going through double or
+// allocating intermediate strings.
+public final class Money {
+    private Money() {
+    }
+
+    public static long ofDouble(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static double toDouble(long cents) {
+        return cents / 100.0;
+    }
+
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    public static StringBuilder appendTo(StringBuilder sb, long cents) {
+        if (cents == Long.MIN_VALUE) {
+            return sb.append("-92233720368547758.08");
+        }
+        if (cents < 0) {
+            sb.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        sb.append(cents / 100).append('.');
+        sb.append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+        return sb;
+    }
+
+    public static long parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    // Accepts an optional '$' and sign, then digits with up to two decimals;
+    // a third decimal rounds half up. Exponent forms left behind by
+    // Double.toString in older files fall back to the slow path.
+    public static long parse(CharSequence text, int from, int to) {
+        while (from < to && text.charAt(from) == ' ') from++;
+        while (to > from && text.charAt(to - 1) == ' ') to--;
+        if (from < to && text.charAt(from) == '$') from++;
+        boolean negative = false;
+        if (from < to && (text.charAt(from) == '-' || text.charAt(from) == '+')) {
+            negative = text.charAt(from) == '-';
+            from++;
+        }
+        if (from < to && text.charAt(from) == '$') from++;
+        if (from >= to) {
+            throw new NumberFormatException("Empty amount");
+        }
+        long whole = 0;
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        boolean inFraction = false;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !inFraction) {
+                inFraction = true;
+            } else if (c >= '0' && c <= '9') {
+                if (!inFraction) {
+                    whole = Math.addExact(Math.multiplyExact(whole, 10), c - '0');
+                } else if (fractionDigits < 2) {
+                    fraction = fraction * 10 + (c - '0');
+                    fractionDigits++;
+                } else if (fractionDigits == 2) {
+                    roundUp = c >= '5';
+                    fractionDigits++;
+                }
+            } else if (c == 'E' || c == 'e') {
+                long cents = ofDouble(Double.parseDouble(text.subSequence(from, to).toString()));
+                return negative ? -cents : cents;
+            } else {
+                throw new NumberFormatException("Invalid amount: " + text.subSequence(from, to));
+            }
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+        long cents = Math.addExact(Math.multiplyExact(whole, 100), fraction + (roundUp ? 1 : 0));
+        return negative ? -cents : cents;
+    }
+}
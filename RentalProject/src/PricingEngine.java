@@ -0,0 +1,188 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+// Computes rental prices from per-type rule tables, a monthly season table and
+// live demand (share of each type currently rented). A vehicle's base daily
+// rate is compiled once; season x demand factors are cached per type and month
+// and only recomputed after a rent, return or new vehicle changes the demand.
+public class PricingEngine {
+    private static final double[] DEFAULT_SEASON = {
+        0.85, 0.85, 0.95, 1.00, 1.05, 1.20, 1.30, 1.30, 1.05, 1.00, 0.95, 1.15
+    };
+    // Demand factor by utilization decile: 0-9% rented .. 90-100% rented.
+    private static final double[] DEFAULT_DEMAND = {
+        1.00, 1.00, 1.00, 1.00, 1.05, 1.10, 1.15, 1.25, 1.35, 1.50, 1.50
+    };
+
+    private final Map<Class<?>, Integer> typeIndex = new LinkedHashMap<>();
+    private final Map<Class<?>, Integer> resolvedTypes = new HashMap<>();
+    private final List<ToDoubleFunction<Vehicle>> rules = new ArrayList<>();
+    private final double[] season = DEFAULT_SEASON.clone();
+    private final double[] demand = DEFAULT_DEMAND.clone();
+    private final Map<Vehicle, Double> baseRates = new IdentityHashMap<>();
+    private int[] fleetCounts = new int[0];
+    private int[] rentedCounts = new int[0];
+    private double[][] factorCache = new double[0][];
+
+    public PricingEngine() {
+        // Most specific types first; lookups walk up the class hierarchy.
+        addRule(SportCar.class, v -> {
+            SportCar s = (SportCar) v;
+            return 90 + 0.10 * s.getHorsepower() + (s.hasTurbo() ? 25 : 0);
+        });
+        addRule(Car.class, v -> 40 + 5 * Math.max(0, ((Car) v).getNumSeats() - 4));
+        addRule(Truck.class, v -> 70 + 15 * ((Truck) v).getCargoCapacity());
+        addRule(Motorcycle.class, v -> 30 + (((Motorcycle) v).hasSidecar() ? 10 : 0));
+    }
+
+    public synchronized void addRule(Class<? extends Vehicle> type, ToDoubleFunction<Vehicle> dailyRate) {
+        Integer index = typeIndex.get(type);
+        if (index == null) {
+            typeIndex.put(type, rules.size());
+            rules.add(dailyRate);
+            fleetCounts = Arrays.copyOf(fleetCounts, rules.size());
+            rentedCounts = Arrays.copyOf(rentedCounts, rules.size());
+            factorCache = new double[rules.size()][];
+        } else {
+            rules.set(index, dailyRate);
+        }
+        resolvedTypes.clear();
+        baseRates.clear();
+    }
+
+    public synchronized void setSeasonFactor(int month, double factor) {
+        season[month - 1] = factor;
+        invalidateFactors();
+    }
+
+    public synchronized void setDemandFactor(int decile, double factor) {
+        demand[decile] = factor;
+        invalidateFactors();
+    }
+
+    public synchronized void vehicleAdded(Vehicle vehicle) {
+        int t = indexOf(vehicle);
+        if (t < 0) {
+            return;
+        }
+        fleetCounts[t]++;
+        if (vehicle.getStatus() == Vehicle.VehicleStatus.RENTED) {
+            rentedCounts[t]++;
+        }
+        factorCache[t] = null;
+    }
+
+    public synchronized void vehicleRented(Vehicle vehicle) {
+        adjustRented(vehicle, 1);
+    }
+
+    public synchronized void vehicleReturned(Vehicle vehicle) {
+        adjustRented(vehicle, -1);
+    }
+
+    private void adjustRented(Vehicle vehicle, int delta) {
+        int t = indexOf(vehicle);
+        if (t < 0) {
+            return;
+        }
+        rentedCounts[t] = Math.max(0, rentedCounts[t] + delta);
+        factorCache[t] = null;
+    }
+
+    public double dailyRate(Vehicle vehicle, LocalDate date) {
+        return Money.toDouble(dailyRateCents(vehicle, date));
+    }
+
+    public synchronized long dailyRateCents(Vehicle vehicle, LocalDate date) {
+        int t = indexOf(vehicle);
+        if (t < 0) {
+            throw new IllegalArgumentException("No pricing rule for " + vehicle.getClass().getSimpleName());
+        }
+        return Math.round(baseRate(vehicle, t) * factors(t)[date.getMonthValue() - 1] * 100);
+    }
+
+    public double quote(Vehicle vehicle, LocalDate start, int days) {
+        return Money.toDouble(quoteCents(vehicle, start, days));
+    }
+
+    // Each day is priced in whole cents, so a quote equals the sum of its daily rates.
+    public synchronized long quoteCents(Vehicle vehicle, LocalDate start, int days) {
+        if (days <= 0) {
+            throw new IllegalArgumentException("Rental must be at least one day");
+        }
+        int t = indexOf(vehicle);
+        if (t < 0) {
+            throw new IllegalArgumentException("No pricing rule for " + vehicle.getClass().getSimpleName());
+        }
+        double base = baseRate(vehicle, t);
+        double[] f = factors(t);
+        long total = 0;
+        LocalDate day = start;
+        for (int i = 0; i < days; i++) {
+            total += Math.round(base * f[day.getMonthValue() - 1] * 100);
+            day = day.plusDays(1);
+        }
+        return total;
+    }
+
+    // Quotes every AVAILABLE vehicle; plates map to the total for the stay in cents.
+    public synchronized Map<String, Long> quoteAvailable(List<Vehicle> fleet, LocalDate start, int days) {
+        Map<String, Long> quotes = new LinkedHashMap<>();
+        for (Vehicle v : fleet) {
+            if (v.getStatus() == Vehicle.VehicleStatus.AVAILABLE && indexOf(v) >= 0) {
+                quotes.put(v.getLicensePlate(), quoteCents(v, start, days));
+            }
+        }
+        return quotes;
+    }
+
+    private double baseRate(Vehicle vehicle, int t) {
+        Double rate = baseRates.get(vehicle);
+        if (rate == null) {
+            rate = rules.get(t).applyAsDouble(vehicle);
+            baseRates.put(vehicle, rate);
+        }
+        return rate;
+    }
+
+    private double[] factors(int t) {
+        double[] f = factorCache[t];
+        if (f == null) {
+            int decile = fleetCounts[t] == 0 ? 0 : (int) (10L * rentedCounts[t] / fleetCounts[t]);
+            double d = demand[Math.min(decile, demand.length - 1)];
+            f = new double[12];
+            for (int m = 0; m < 12; m++) {
+                f[m] = season[m] * d;
+            }
+            factorCache[t] = f;
+        }
+        return f;
+    }
+
+    private int indexOf(Vehicle vehicle) {
+        Integer resolved = resolvedTypes.get(vehicle.getClass());
+        if (resolved != null) {
+            return resolved;
+        }
+        int index = -1;
+        for (Class<?> c = vehicle.getClass(); c != null && index < 0; c = c.getSuperclass()) {
+            Integer candidate = typeIndex.get(c);
+            if (candidate != null) {
+                index = candidate;
+            }
+        }
+        resolvedTypes.put(vehicle.getClass(), index);
+        return index;
+    }
+
+    private void invalidateFactors() {
+        Arrays.fill(factorCache, null);
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Offset index over a rental records journal. Only byte offsets (grouped by
+// plate and by customer) and running totals stay on the heap; records are
+// read back from disk and parsed when a query asks for them.
+public class RecordPager implements RecordSource {
+    // Moves to a retained copy when the journal is rewritten under this pager.
+    private volatile String path;
+    private final Function<String, RentalRecord> parser;
+    private final Map<String, Offsets> byPlate = new HashMap<>();
+    private final Map<Integer, Offsets> byCustomer = new HashMap<>();
+    private final Map<Integer, Customer> customers = new LinkedHashMap<>();
+    private final Map<Integer, Long> centsByCustomer = new HashMap<>();
+    private final Offsets all = new Offsets();
+    private long totalCents;
+
+    public RecordPager(String path, Function<String, RentalRecord> parser) {
+        this.path = path;
+        this.parser = parser;
+    }
+
+    void moveTo(String retainedPath) {
+        path = retainedPath;
+    }
+
+    void add(long offset, RentalRecord record) {
+        String plate = record.getVehicle().getLicensePlate().toUpperCase();
+        int customerId = record.getCustomer().getCustomerId();
+        all.add(offset);
+        offsets(byPlate, plate).add(offset);
+        offsets(byCustomer, customerId).add(offset);
+        customers.putIfAbsent(customerId, record.getCustomer());
+        totalCents += record.getTotalAmountCents();
+        centsByCustomer.merge(customerId, record.getTotalAmountCents(), Long::sum);
+    }
+
+    private static <K> Offsets offsets(Map<K, Offsets> map, K key) {
+        Offsets o = map.get(key);
+        if (o == null) {
+            o = new Offsets();
+            map.put(key, o);
+        }
+        return o;
+    }
+
+    @Override
+    public int size() {
+        return all.size;
+    }
+
+    @Override
+    public long getTotalAmountCents() {
+        return totalCents;
+    }
+
+    @Override
+    public long getTotalAmountCentsByCustomer(int customerId) {
+        Long cents = centsByCustomer.get(customerId);
+        return cents == null ? 0 : cents;
+    }
+
+    @Override
+    public int countByVehicle(String licensePlate) {
+        Offsets o = byPlate.get(licensePlate.toUpperCase());
+        return o == null ? 0 : o.size;
+    }
+
+    @Override
+    public List<RentalRecord> readAll() {
+        return read(all.values(), 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<RentalRecord> readByVehicle(String licensePlate, int from, int limit) {
+        Offsets o = byPlate.get(licensePlate.toUpperCase());
+        return o == null ? new ArrayList<>() : read(o.values(), from, limit);
+    }
+
+    @Override
+    public List<RentalRecord> readByCustomer(String customerName, int from, int limit) {
+        return read(customerOffsets(customerName), from, limit);
+    }
+
+    @Override
+    public int countByCustomer(String customerName) {
+        return customerOffsets(customerName).length;
+    }
+
+    private long[] customerOffsets(String customerName) {
+        String query = customerName.toLowerCase();
+        long[] merged = new long[0];
+        int size = 0;
+        for (Map.Entry<Integer, Customer> e : customers.entrySet()) {
+            if (!e.getValue().toString().toLowerCase().contains(query)) {
+                continue;
+            }
+            Offsets o = byCustomer.get(e.getKey());
+            merged = Arrays.copyOf(merged, size + o.size);
+            System.arraycopy(o.values, 0, merged, size, o.size);
+            size += o.size;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private List<RentalRecord> read(long[] offsets, int from, int limit) {
+        List<RentalRecord> result = new ArrayList<>();
+        int end = (int) Math.min(offsets.length, (long) from + limit);
+        if (from >= end) {
+            return result;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            for (int i = from; i < end; i++) {
+                String line = JournalFile.readAt(file, offsets[i]);
+                RentalRecord record = line == null ? null : parser.apply(line);
+                if (record != null) {
+                    result.add(record);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading rental records: " + e.getMessage());
+            return Collections.emptyList();
+        }
+        return result;
+    }
+
+    private static final class Offsets {
+        long[] values = new long[4];
+        int size;
+
+        void add(long offset) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = offset;
+        }
+
+        long[] values() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
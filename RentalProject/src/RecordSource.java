@@ -0,0 +1,22 @@
+import java.util.List;
+
+// Rental records that were in the store at startup, read on demand rather
+// than held by RentalHistory. Customer lookups use the same substring match
+// on Customer.toString() as the in-memory history.
+public interface RecordSource {
+    int size();
+
+    long getTotalAmountCents();
+
+    long getTotalAmountCentsByCustomer(int customerId);
+
+    List<RentalRecord> readAll();
+
+    List<RentalRecord> readByVehicle(String licensePlate, int from, int limit);
+
+    int countByVehicle(String licensePlate);
+
+    List<RentalRecord> readByCustomer(String customerName, int from, int limit);
+
+    int countByCustomer(String customerName);
+}
@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of scanning one journal file: the usable lines plus every byte range
+// that failed verification and how much of a torn tail was cut off.
+public class RecoveryReport {
+    private final String path;
+    private final List<String> lines = new ArrayList<>();
+    private final List<long[]> corruptRanges = new ArrayList<>();
+    private final boolean keepLines;
+    private int lineCount;
+    private int unverifiedLines;
+    private long truncatedBytes;
+
+    public RecoveryReport(String path) {
+        this(path, true);
+    }
+
+    // Without keepLines only the counts are recorded, for callers that stream
+    // the file themselves afterwards.
+    public RecoveryReport(String path, boolean keepLines) {
+        this.path = path;
+        this.keepLines = keepLines;
+    }
+
+    void addLine(String line, boolean verified) {
+        lineCount++;
+        if (keepLines) {
+            lines.add(line);
+        }
+        if (!verified) {
+            unverifiedLines++;
+        }
+    }
+
+    void addCorruptRange(long start, long end) {
+        corruptRanges.add(new long[] { start, end });
+    }
+
+    void setTruncatedBytes(long truncatedBytes) {
+        this.truncatedBytes = truncatedBytes;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public List<String> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    // Each range is {startOffset, endOffset} in bytes, end exclusive.
+    public List<long[]> getCorruptRanges() {
+        return Collections.unmodifiableList(corruptRanges);
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int getUnverifiedLines() {
+        return unverifiedLines;
+    }
+
+    public long getTruncatedBytes() {
+        return truncatedBytes;
+    }
+
+    public boolean isClean() {
+        return corruptRanges.isEmpty() && truncatedBytes == 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(path).append(": ").append(lineCount).append(" records");
+        if (unverifiedLines > 0) {
+            sb.append(" (").append(unverifiedLines).append(" without checksum)");
+        }
+        for (long[] range : corruptRanges) {
+            sb.append(" | corrupt bytes ").append(range[0]).append("-").append(range[1]);
+        }
+        if (truncatedBytes > 0) {
+            sb.append(" | truncated torn tail of ").append(truncatedBytes).append(" bytes");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,302 @@
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Hands out "any available vehicle of this type matching these criteria" to
+// concurrent callers without letting them race for the same plates. Each
+// type has a FIFO waitlist; a free vehicle is offered to the oldest waiter
+// it matches and only that waiter tries to rent it, so a hot model costs one
+// rent attempt per vehicle rather than one per terminal. Waiters whose
+// criteria match nothing free keep their place without blocking later ones.
+// Waitlists are bounded: a caller that would queue past the limit, or asks
+// for something the fleet does not have at all, is rejected at once.
+// Returns, repairs and new vehicles reach the waitlists through the change
+// feed; the listener never takes the RentalSystem lock, so it cannot stall
+// writers. Each waiter keeps the bitmap of vehicles its criteria match, so
+// an event costs one bit test per waiter rather than a search. A single
+// sweep every SWEEP_MILLIS catches anything an event missed.
+public class RentalAllocator implements AutoCloseable {
+    public enum Outcome { ALLOCATED, TIMED_OUT, REJECTED }
+
+    public static final class Result {
+        private final Outcome outcome;
+        private final Vehicle vehicle;
+        private final long waitedMillis;
+        private final String message;
+
+        Result(Outcome outcome, Vehicle vehicle, long waitedMillis, String message) {
+            this.outcome = outcome;
+            this.vehicle = vehicle;
+            this.waitedMillis = waitedMillis;
+            this.message = message;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        // Null unless ALLOCATED.
+        public Vehicle getVehicle() {
+            return vehicle;
+        }
+
+        public long getWaitedMillis() {
+            return waitedMillis;
+        }
+
+        // Why the request was rejected; null unless REJECTED.
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return outcome + (vehicle == null ? "" : " " + vehicle.getLicensePlate()) + " after " + waitedMillis + " ms"
+                    + (message == null ? "" : ": " + message);
+        }
+    }
+
+    private static final class Request {
+        // Type and criteria whatever the status; free is the same plus AVAILABLE.
+        final VehicleQuery matching;
+        final VehicleQuery free;
+        CompressedBitmap candidates;
+        Vehicle offer;
+
+        Request(VehicleQuery matching, CompressedBitmap candidates) {
+            this.matching = matching;
+            this.free = VehicleQuery.where().and(matching).status(Vehicle.VehicleStatus.AVAILABLE);
+            this.candidates = candidates;
+        }
+    }
+
+    // How often free vehicles are matched against waiters in case an event was missed.
+    static final long SWEEP_MILLIS = 1000;
+
+    private final RentalSystem system;
+    private final int maxWaitersPerType;
+    private final Map<String, Deque<Request>> waitlists = new HashMap<>();
+    private final Set<Vehicle> offered = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final EventRingBuffer.Subscription feed;
+    private final ScheduledExecutorService sweeper;
+    private long allocated;
+    private long timedOut;
+    private long rejected;
+    private boolean closed;
+
+    public RentalAllocator(RentalSystem system, int maxWaitersPerType) {
+        this.system = system;
+        this.maxWaitersPerType = maxWaitersPerType;
+        feed = system.subscribe("allocator", this::onEvent);
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "allocator-sweep");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Rents the customer a vehicle of the given type that also matches
+    // criteria (may be null), waiting up to timeoutMillis for one to free up.
+    public Result allocate(String type, VehicleQuery criteria, Customer customer, LocalDate date, long amountCents, long timeoutMillis) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        VehicleQuery matching = VehicleQuery.where().type(type);
+        if (criteria != null) {
+            matching.and(criteria);
+        }
+        CompressedBitmap candidates = system.getVehicleIndex().match(matching);
+        if (candidates.isEmpty()) {
+            return reject(start, "No " + type + " in the fleet matches the request.");
+        }
+        Request request = new Request(matching, candidates);
+        Deque<Request> waitlist;
+        synchronized (this) {
+            waitlist = waitlists.computeIfAbsent(type, t -> new ArrayDeque<>());
+            if (closed || waitlist.size() >= maxWaitersPerType) {
+                return reject(start, "Too many requests waiting for a " + type + ", try again later.");
+            }
+            waitlist.addLast(request);
+            offerFree(waitlist, request);
+        }
+        while (true) {
+            Vehicle offer;
+            synchronized (this) {
+                while (request.offer == null) {
+                    long remaining = deadline - System.nanoTime();
+                    if (closed || remaining <= 0) {
+                        waitlist.remove(request);
+                        timedOut++;
+                        return new Result(Outcome.TIMED_OUT, null, millisSince(start), null);
+                    }
+                    try {
+                        wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        waitlist.remove(request);
+                        if (request.offer != null) {
+                            Vehicle released = request.offer;
+                            offered.remove(released);
+                            offerVehicle(waitlist, released);
+                        }
+                        timedOut++;
+                        return new Result(Outcome.TIMED_OUT, null, millisSince(start), null);
+                    }
+                }
+                offer = request.offer;
+            }
+            boolean rented = system.rentVehicleCents(offer, customer, date, amountCents);
+            synchronized (this) {
+                offered.remove(offer);
+                request.offer = null;
+                if (rented) {
+                    waitlist.remove(request);
+                    allocated++;
+                    return new Result(Outcome.ALLOCATED, offer, millisSince(start), null);
+                }
+                // Rented outside the allocator; keep our place and look again.
+                offerFree(waitlist, request);
+            }
+        }
+    }
+
+    private synchronized Result reject(long start, String message) {
+        rejected++;
+        return new Result(Outcome.REJECTED, null, millisSince(start), message);
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    // One search for a waiter that has no offer. Each free match still goes
+    // to the oldest waiter it matches, so a caller arriving between a return
+    // and its event cannot take the vehicle ahead of the queue.
+    private void offerFree(Deque<Request> waitlist, Request request) {
+        for (Vehicle v : system.findVehicles(request.free)) {
+            if (request.offer != null) {
+                return;
+            }
+            offerVehicle(waitlist, v);
+        }
+    }
+
+    // Offers one vehicle to the oldest waiter without an offer whose
+    // criteria it matches, if it is free and not already on offer.
+    private boolean offerVehicle(Deque<Request> waitlist, Vehicle vehicle) {
+        if (vehicle.getStatus() != Vehicle.VehicleStatus.AVAILABLE || offered.contains(vehicle)) {
+            return false;
+        }
+        int ordinal = system.getVehicleIndex().ordinal(vehicle);
+        if (ordinal < 0) {
+            return false;
+        }
+        for (Request r : waitlist) {
+            if (r.offer == null && r.candidates.contains(ordinal)) {
+                r.offer = vehicle;
+                offered.add(vehicle);
+                notifyAll();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onEvent(RentalEvent event, long sequence, boolean endOfBatch) {
+        if (!freesVehicle(event)) {
+            return;
+        }
+        Vehicle vehicle = system.findVehicleByPlate(event.getLicensePlate());
+        if (vehicle == null) {
+            return;
+        }
+        synchronized (this) {
+            Deque<Request> waitlist = waitlists.get(VehicleCodecs.typeName(vehicle));
+            if (waitlist == null || waitlist.isEmpty()) {
+                return;
+            }
+            if (event.getType() == RentalEvent.Type.VEHICLE_ADDED) {
+                // Candidates were taken at arrival and cannot know this vehicle.
+                int ordinal = system.getVehicleIndex().ordinal(vehicle);
+                for (Request r : waitlist) {
+                    if (ordinal >= 0 && !r.candidates.contains(ordinal)) {
+                        r.candidates = system.getVehicleIndex().match(r.matching);
+                    }
+                }
+            }
+            offerVehicle(waitlist, vehicle);
+        }
+    }
+
+    // One search per type with waiters lacking an offer, covering events
+    // that were dropped or raced a waiter's arrival.
+    private synchronized void sweep() {
+        for (Map.Entry<String, Deque<Request>> entry : waitlists.entrySet()) {
+            Deque<Request> waitlist = entry.getValue();
+            int unserved = 0;
+            for (Request r : waitlist) {
+                if (r.offer == null) {
+                    unserved++;
+                }
+            }
+            if (unserved == 0) {
+                continue;
+            }
+            VehicleQuery free = VehicleQuery.where().type(entry.getKey()).status(Vehicle.VehicleStatus.AVAILABLE);
+            for (Vehicle v : system.findVehicles(free)) {
+                if (offerVehicle(waitlist, v) && --unserved == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean freesVehicle(RentalEvent event) {
+        switch (event.getType()) {
+            case VEHICLE_RETURNED:
+                return true;
+            case STATUS_CHANGED:
+                return ((RentalEvent.StatusChanged) event).getNewStatus() == Vehicle.VehicleStatus.AVAILABLE;
+            case VEHICLE_ADDED:
+                return ((RentalEvent.VehicleAdded) event).getStatus() == Vehicle.VehicleStatus.AVAILABLE;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized int getWaiting(String type) {
+        Deque<Request> waitlist = waitlists.get(type);
+        return waitlist == null ? 0 : waitlist.size();
+    }
+
+    public synchronized long getAllocated() {
+        return allocated;
+    }
+
+    public synchronized long getTimedOut() {
+        return timedOut;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    // Stops listening; callers still waiting give up with TIMED_OUT.
+    @Override
+    public void close() {
+        feed.close();
+        sweeper.shutdownNow();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+    }
+}
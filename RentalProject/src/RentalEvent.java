@@ -0,0 +1,179 @@
+import java.time.LocalDate;
+
+// Immutable record of one change to a RentalSystem. Events carry plates and
+// customer ids rather than live objects so a log can be replayed anywhere.
+public abstract class RentalEvent {
+    public enum Type { VEHICLE_ADDED, CUSTOMER_ADDED, VEHICLE_RENTED, VEHICLE_RETURNED, STATUS_CHANGED }
+
+    private final long sequence;
+    private final Type type;
+    private final String licensePlate;
+
+    RentalEvent(long sequence, Type type, String licensePlate) {
+        this.sequence = sequence;
+        this.type = type;
+        this.licensePlate = licensePlate == null ? null : licensePlate.toUpperCase();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    // Null for customer events and for vehicles registered without a plate.
+    public String getLicensePlate() {
+        return licensePlate;
+    }
+
+    public static final class VehicleAdded extends RentalEvent {
+        private final String info;
+        private final Vehicle.VehicleStatus status;
+
+        public VehicleAdded(long sequence, Vehicle vehicle) {
+            this(sequence, vehicle, vehicle.getStatus());
+        }
+
+        public VehicleAdded(long sequence, Vehicle vehicle, Vehicle.VehicleStatus status) {
+            super(sequence, Type.VEHICLE_ADDED, vehicle.getLicensePlate());
+            this.info = vehicle.getInfo();
+            this.status = status;
+        }
+
+        public String getInfo() {
+            return info;
+        }
+
+        public Vehicle.VehicleStatus getStatus() {
+            return status;
+        }
+
+        @Override
+        public String toString() {
+            return getSequence() + " VEHICLE_ADDED " + info;
+        }
+    }
+
+    public static final class CustomerAdded extends RentalEvent {
+        private final int customerId;
+        private final String name;
+        private final long openingCents;
+
+        // openingCents carries spending from history that predates the log.
+        public CustomerAdded(long sequence, Customer customer, long openingCents) {
+            super(sequence, Type.CUSTOMER_ADDED, null);
+            this.customerId = customer.getCustomerId();
+            this.name = customer.getCustomerName();
+            this.openingCents = openingCents;
+        }
+
+        public int getCustomerId() {
+            return customerId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getOpeningCents() {
+            return openingCents;
+        }
+
+        @Override
+        public String toString() {
+            return getSequence() + " CUSTOMER_ADDED " + customerId + " " + name;
+        }
+    }
+
+    public static final class VehicleRented extends RentalEvent {
+        private final int customerId;
+        private final LocalDate date;
+        private final LocalDate dueDate;
+        private final long amountCents;
+
+        public VehicleRented(long sequence, String licensePlate, int customerId, LocalDate date, LocalDate dueDate, long amountCents) {
+            super(sequence, Type.VEHICLE_RENTED, licensePlate);
+            this.customerId = customerId;
+            this.date = date;
+            this.dueDate = dueDate;
+            this.amountCents = amountCents;
+        }
+
+        public int getCustomerId() {
+            return customerId;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public LocalDate getDueDate() {
+            return dueDate;
+        }
+
+        public long getAmountCents() {
+            return amountCents;
+        }
+
+        @Override
+        public String toString() {
+            return getSequence() + " VEHICLE_RENTED " + getLicensePlate() + " to " + customerId + " on " + date;
+        }
+    }
+
+    public static final class VehicleReturned extends RentalEvent {
+        private final int customerId;
+        private final LocalDate date;
+        private final long amountCents;
+
+        public VehicleReturned(long sequence, String licensePlate, int customerId, LocalDate date, long amountCents) {
+            super(sequence, Type.VEHICLE_RETURNED, licensePlate);
+            this.customerId = customerId;
+            this.date = date;
+            this.amountCents = amountCents;
+        }
+
+        public int getCustomerId() {
+            return customerId;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public long getAmountCents() {
+            return amountCents;
+        }
+
+        @Override
+        public String toString() {
+            return getSequence() + " VEHICLE_RETURNED " + getLicensePlate() + " by " + customerId + " on " + date;
+        }
+    }
+
+    public static final class StatusChanged extends RentalEvent {
+        private final Vehicle.VehicleStatus oldStatus;
+        private final Vehicle.VehicleStatus newStatus;
+
+        public StatusChanged(long sequence, String licensePlate, Vehicle.VehicleStatus oldStatus, Vehicle.VehicleStatus newStatus) {
+            super(sequence, Type.STATUS_CHANGED, licensePlate);
+            this.oldStatus = oldStatus;
+            this.newStatus = newStatus;
+        }
+
+        public Vehicle.VehicleStatus getOldStatus() {
+            return oldStatus;
+        }
+
+        public Vehicle.VehicleStatus getNewStatus() {
+            return newStatus;
+        }
+
+        @Override
+        public String toString() {
+            return getSequence() + " STATUS_CHANGED " + getLicensePlate() + " " + oldStatus + " -> " + newStatus;
+        }
+    }
+}
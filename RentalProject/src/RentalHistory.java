@@ -1,34 +1,262 @@
+import java.time.LocalDate;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.function.Supplier;
 
+// Records come from up to three tiers, oldest first: compressed month
+// segments in a HistoryArchive, records stored before startup and read on
+// demand through a RecordSource (the journal's RecordPager, or the JDBC or
+// LSM store's indexed queries), and records added since startup, held here.
 public class RentalHistory {
-    private List<RentalRecord> rentalRecords = new ArrayList<>();
+    // Replaced on every add, so readers can hold on to a version lock-free.
+    private volatile PersistentVector<RentalRecord> rentalRecords = PersistentVector.empty();
+    private final RecordSource pager;
+    private volatile HistoryArchive archive;
+    // Query results by (kind, term, from, limit), weighed by record count.
+    // Adding a record touches no entries: each page remembers how many recent
+    // records it has seen and is checked against the newer ones when read.
+    private final TinyLfuCache<QueryKey, CachedPage> queryCache =
+            new TinyLfuCache<>(QUERY_CACHE_RECORDS, page -> page.records.size() + 1);
+    static final int QUERY_CACHE_RECORDS = 50_000;
 
-    public void addRecord(RentalRecord record) {
-        rentalRecords.add(record);
+    public RentalHistory() {
+        this(null);
     }
 
+    public RentalHistory(RecordSource pager) {
+        this.pager = pager;
+    }
+
+    public boolean isLazy() {
+        return pager != null;
+    }
+
+    public void setArchive(HistoryArchive archive) {
+        this.archive = archive;
+    }
+
+    public HistoryArchive getArchive() {
+        return archive;
+    }
+
+    public synchronized void addRecord(RentalRecord record) {
+        rentalRecords = rentalRecords.plus(record);
+    }
+
+    public TinyLfuCache<?, ?> getQueryCache() {
+        return queryCache;
+    }
+
+    private List<RentalRecord> cached(QueryKey key, Supplier<List<RentalRecord>> loader) {
+        PersistentVector<RentalRecord> recent = rentalRecords;
+        CachedPage page = queryCache.getIfPresent(key);
+        if (page != null && !matchesAny(key, recent, page.seen)) {
+            page.seen = Math.max(page.seen, recent.size());
+            return new ArrayList<>(page.records);
+        }
+        // Loaded from recent or newer, so recent.size() is a safe lower bound.
+        List<RentalRecord> records = loader.get();
+        queryCache.put(key, new CachedPage(records, recent.size()));
+        return new ArrayList<>(records);
+    }
+
+    private static boolean matchesAny(QueryKey key, PersistentVector<RentalRecord> recent, int from) {
+        for (int i = from; i < recent.size(); i++) {
+            RentalRecord record = recent.get(i);
+            boolean matches = key.vehicle
+                    ? record.getVehicle().getLicensePlate().equalsIgnoreCase(key.term)
+                    : record.getCustomer().toString().toLowerCase().contains(key.term);
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // An immutable list. With a pager or archive this reads everything;
+    // prefer the paged queries.
     public List<RentalRecord> getRentalHistory() {
+        PersistentVector<RentalRecord> recent = rentalRecords;
+        if (pager == null && archive == null) {
+            return recent;
+        }
+        List<RentalRecord> result = getStoredRecords();
+        result.addAll(recent);
+        return Collections.unmodifiableList(result);
+    }
+
+    public PersistentVector<RentalRecord> getRecentRecords() {
         return rentalRecords;
     }
 
+    // Archived and journaled records that were on disk at startup.
+    public List<RentalRecord> getStoredRecords() {
+        List<RentalRecord> result = archive == null ? new ArrayList<>() : archive.getAll();
+        if (pager != null) {
+            result.addAll(pager.readAll());
+        }
+        return result;
+    }
+
+    public int getStoredRecordCount() {
+        return (archive == null ? 0 : archive.size()) + (pager == null ? 0 : pager.size());
+    }
+
+    public int size() {
+        return getStoredRecordCount() + rentalRecords.size();
+    }
+
+    // Exact totals: amounts are summed as long cents.
+    public long getTotalAmountCents() {
+        long total = archive == null ? 0 : archive.getTotalAmountCents();
+        total += pager == null ? 0 : pager.getTotalAmountCents();
+        for (RentalRecord record : rentalRecords) {
+            total += record.getTotalAmountCents();
+        }
+        return total;
+    }
+
+    public long getTotalAmountCentsByCustomer(int customerId) {
+        long total = archive == null ? 0 : archive.getTotalAmountCentsByCustomer(customerId);
+        total += pager == null ? 0 : pager.getTotalAmountCentsByCustomer(customerId);
+        for (RentalRecord record : rentalRecords) {
+            if (record.getCustomer().getCustomerId() == customerId) {
+                total += record.getTotalAmountCents();
+            }
+        }
+        return total;
+    }
+
+    // Archived months outside the range are never opened. A reversed range
+    // matches nothing.
+    public List<RentalRecord> getRentalRecordsBetween(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return new ArrayList<>();
+        }
+        List<RentalRecord> result = archive == null ? new ArrayList<>() : archive.getRecordsBetween(from, to);
+        List<RentalRecord> recent = pager == null ? new ArrayList<>() : pager.readAll();
+        recent.addAll(rentalRecords);
+        for (RentalRecord record : recent) {
+            if (!record.getRecordDate().isBefore(from) && !record.getRecordDate().isAfter(to)) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
     public List<RentalRecord> getRentalRecordsByCustomer(String customerName) {
+        return getRentalRecordsByCustomer(customerName, 0, Integer.MAX_VALUE);
+    }
+
+    // Records oldest first, skipping the first 'from' matches.
+    public List<RentalRecord> getRentalRecordsByCustomer(String customerName, int from, int limit) {
+        QueryKey key = new QueryKey(false, customerName.toLowerCase(), from, limit);
+        return cached(key, () -> loadByCustomer(customerName, from, limit));
+    }
+
+    private List<RentalRecord> loadByCustomer(String customerName, int from, int limit) {
         List<RentalRecord> result = new ArrayList<>();
+        if (archive != null) {
+            from = page(archive.getRecordsByCustomer(customerName), from, limit, result);
+        }
+        if (pager != null && result.size() < limit) {
+            result.addAll(pager.readByCustomer(customerName, from, limit - result.size()));
+            from = Math.max(0, from - pager.countByCustomer(customerName));
+        }
         for (RentalRecord record : rentalRecords) {
+            if (result.size() >= limit) {
+                break;
+            }
             if (record.getCustomer().toString().toLowerCase().contains(customerName.toLowerCase())) {
-                result.add(record);
+                if (from > 0) {
+                    from--;
+                } else {
+                    result.add(record);
+                }
             }
         }
         return result;
     }
 
     public List<RentalRecord> getRentalRecordsByVehicle(String licensePlate) {
+        return getRentalRecordsByVehicle(licensePlate, 0, Integer.MAX_VALUE);
+    }
+
+    public List<RentalRecord> getRentalRecordsByVehicle(String licensePlate, int from, int limit) {
+        QueryKey key = new QueryKey(true, licensePlate.toUpperCase(), from, limit);
+        return cached(key, () -> loadByVehicle(licensePlate, from, limit));
+    }
+
+    private List<RentalRecord> loadByVehicle(String licensePlate, int from, int limit) {
         List<RentalRecord> result = new ArrayList<>();
+        if (archive != null) {
+            from = page(archive.getRecordsByVehicle(licensePlate), from, limit, result);
+        }
+        if (pager != null && result.size() < limit) {
+            result.addAll(pager.readByVehicle(licensePlate, from, limit - result.size()));
+            from = Math.max(0, from - pager.countByVehicle(licensePlate));
+        }
         for (RentalRecord record : rentalRecords) {
+            if (result.size() >= limit) {
+                break;
+            }
             if (record.getVehicle().getLicensePlate().equalsIgnoreCase(licensePlate)) {
-                result.add(record);
+                if (from > 0) {
+                    from--;
+                } else {
+                    result.add(record);
+                }
             }
         }
         return result;
     }
-}
\ No newline at end of file
+
+    // Copies one page of matches into result and returns how many of the
+    // requested skip are still left for the next tier.
+    private static int page(List<RentalRecord> matches, int from, int limit, List<RentalRecord> result) {
+        for (int i = from; i < matches.size() && result.size() < limit; i++) {
+            result.add(matches.get(i));
+        }
+        return Math.max(0, from - matches.size());
+    }
+
+    private static final class CachedPage {
+        final List<RentalRecord> records;
+        // Recent records already checked against this page's key.
+        volatile int seen;
+
+        CachedPage(List<RentalRecord> records, int seen) {
+            this.records = records;
+            this.seen = seen;
+        }
+    }
+
+    static final class QueryKey {
+        final boolean vehicle;
+        final String term;
+        final int from;
+        final int limit;
+
+        QueryKey(boolean vehicle, String term, int from, int limit) {
+            this.vehicle = vehicle;
+            this.term = term;
+            this.from = from;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey k = (QueryKey) o;
+            return vehicle == k.vehicle && from == k.from && limit == k.limit && term.equals(k.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((term.hashCode() * 31 + from) * 31 + limit) * 2 + (vehicle ? 1 : 0);
+        }
+    }
+}
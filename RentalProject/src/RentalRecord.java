@@ -4,15 +4,25 @@ public class RentalRecord {
     private Vehicle vehicle;
     private Customer customer;
     private LocalDate recordDate;
-    private double totalAmount;
+    private long totalAmountCents;
     private String recordType; // "RENT" or "RETURN"
+    private LocalDate dueDate; // RENT only; null when not known
 
     public RentalRecord(Vehicle vehicle, Customer customer, LocalDate recordDate, double totalAmount, String recordType) {
+        this(vehicle, customer, recordDate, recordType, Money.ofDouble(totalAmount));
+    }
+
+    public RentalRecord(Vehicle vehicle, Customer customer, LocalDate recordDate, String recordType, long totalAmountCents) {
+        this(vehicle, customer, recordDate, recordType, totalAmountCents, null);
+    }
+
+    public RentalRecord(Vehicle vehicle, Customer customer, LocalDate recordDate, String recordType, long totalAmountCents, LocalDate dueDate) {
         this.vehicle = vehicle;
         this.customer = customer;
         this.recordDate = recordDate;
-        this.totalAmount = totalAmount;
+        this.totalAmountCents = totalAmountCents;
         this.recordType = recordType;
+        this.dueDate = dueDate;
     }
 
     public Customer getCustomer(){
@@ -22,27 +32,48 @@ public class RentalRecord {
     public Vehicle getVehicle(){
     	return vehicle;
     }
+
+    public LocalDate getRecordDate(){
+    	return recordDate;
+    }
+
+    public double getTotalAmount(){
+    	return Money.toDouble(totalAmountCents);
+    }
+
+    public long getTotalAmountCents(){
+    	return totalAmountCents;
+    }
+
+    public String getRecordType(){
+    	return recordType;
+    }
+
+    public LocalDate getDueDate(){
+    	return dueDate;
+    }
     
     @Override
     public String toString() {
-        return recordType + " | Plate: " + vehicle.getLicensePlate() + 
-               " | Customer: " + customer.getCustomerName() + 
-               " | Date: " + recordDate + 
-               " | Amount: $" + totalAmount;
+        StringBuilder sb = new StringBuilder(96);
+        sb.append(recordType).append(" | Plate: ").append(vehicle.getLicensePlate())
+          .append(" | Customer: ").append(customer.getCustomerName())
+          .append(" | Date: ").append(recordDate)
+          .append(" | Amount: $");
+        return Money.appendTo(sb, totalAmountCents).toString();
+    }
+
+    // The stored layout: toString() plus the customer's ID, which names do
+    // not identify, and the due date of a rental.
+    public String toLine() {
+        StringBuilder sb = new StringBuilder(toString()).append(" | Customer ID: ").append(customer.getCustomerId());
+        if (dueDate != null) {
+            sb.append(" | Due: ").append(dueDate);
+        }
+        return sb.toString();
     }
     
     public static RentalRecord parse(String row) {
-    	String[] parts = row.split(" \\| ");
-        String licensePlate = parts[1].split(": ")[1].trim();
-        String customerName = parts[2].split(": ")[1].trim();
-        LocalDate date = LocalDate.parse(parts[3].split(": ")[1].trim());
-        double amount = Double.parseDouble(parts[4].split("\\$")[1].trim());
-        String type = parts[0].trim();
-
-        // Find existing Vehicle and Customer
-        Vehicle vehicle = RentalSystem.getInstance().findVehicleByPlate(licensePlate);
-        Customer customer = RentalSystem.getInstance().findCustomerByName(customerName);
-
-        return new RentalRecord(vehicle, customer, date, amount, type);
+        return RentalSystem.getInstance().parseRecord(row);
     }
 }
\ No newline at end of file
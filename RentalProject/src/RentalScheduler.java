@@ -0,0 +1,188 @@
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Drives time-based rules off a TimerWheel keyed by epoch day:
+// - an overdue alert fires the day after a rental's due date unless it is returned;
+// - a vehicle goes to MAINTENANCE after serviceIntervalDays since its last
+//   service, or once it has been out on rental for serviceUsageDays in total.
+// The fleet has no odometer, so days on rental stand in for mileage; callers
+// with real readings can feed them through addUsage.
+// The last service date and usage of each vehicle are written through
+// RentalSystem whenever they change and restored on load.
+// Lock order is RentalSystem, then scheduler: rentals call in holding the
+// system lock, and entry points that may change a vehicle's status take it
+// before their own.
+public class RentalScheduler {
+    public interface Listener {
+        void overdue(ActiveRental rental, LocalDate today);
+        void maintenanceDue(Vehicle vehicle, String reason, LocalDate today);
+    }
+
+    private static final class Job {
+        final Vehicle vehicle;
+        final ActiveRental rental;
+
+        Job(Vehicle vehicle, ActiveRental rental) {
+            this.vehicle = vehicle;
+            this.rental = rental;
+        }
+    }
+
+    private final RentalSystem system;
+    private final TimerWheel<Job> wheel;
+    private final Map<Vehicle, TimerWheel.Timer<Job>> overdueTimers = new HashMap<>();
+    private final Map<Vehicle, TimerWheel.Timer<Job>> serviceTimers = new HashMap<>();
+    private final Map<Vehicle, LocalDate> lastService = new HashMap<>();
+    private final Map<Vehicle, Long> usage = new HashMap<>();
+    private final Map<Vehicle, String> pendingService = new HashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private int serviceIntervalDays = 180;
+    private long serviceUsageDays = 60;
+
+    public RentalScheduler(RentalSystem system, LocalDate today) {
+        this.system = system;
+        this.wheel = new TimerWheel<>(today.toEpochDay());
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void setServiceInterval(int days) {
+        this.serviceIntervalDays = days;
+    }
+
+    public synchronized void setServiceUsage(long days) {
+        this.serviceUsageDays = days;
+    }
+
+    public synchronized LocalDate getToday() {
+        return LocalDate.ofEpochDay(wheel.getCurrentTick());
+    }
+
+    public synchronized int pendingTimers() {
+        return wheel.size();
+    }
+
+    public synchronized void vehicleAdded(Vehicle vehicle, LocalDate lastService) {
+        scheduleService(vehicle, lastService);
+        saveServiceState(vehicle);
+    }
+
+    // State read back from the store. A rented vehicle already over its usage
+    // allowance still goes to MAINTENANCE when it comes back.
+    public synchronized void vehicleRestored(Vehicle vehicle, LocalDate lastService, long usageDays) {
+        scheduleService(vehicle, lastService);
+        if (usageDays > 0) {
+            usage.put(vehicle, usageDays);
+        }
+        if (usageDays >= serviceUsageDays && vehicle.getStatus() == Vehicle.VehicleStatus.RENTED) {
+            pendingService.put(vehicle, "usage reached " + usageDays + " rental days");
+        }
+    }
+
+    public synchronized LocalDate getLastService(Vehicle vehicle) {
+        return lastService.get(vehicle);
+    }
+
+    public synchronized long getUsage(Vehicle vehicle) {
+        return usage.getOrDefault(vehicle, 0L);
+    }
+
+    public synchronized void rentalOpened(ActiveRental rental) {
+        wheel.cancel(overdueTimers.remove(rental.getVehicle()));
+        long alertDay = rental.getDueDate().toEpochDay() + 1;
+        overdueTimers.put(rental.getVehicle(), wheel.schedule(alertDay, new Job(rental.getVehicle(), rental)));
+    }
+
+    // Used when replaying history: the alert goes away but no usage is counted,
+    // since the persisted usage already includes it.
+    public synchronized void rentalReplayed(ActiveRental rental) {
+        wheel.cancel(overdueTimers.remove(rental.getVehicle()));
+    }
+
+    public synchronized void rentalClosed(ActiveRental rental, LocalDate returnDate) {
+        Vehicle vehicle = rental.getVehicle();
+        wheel.cancel(overdueTimers.remove(vehicle));
+        long days = Math.max(1, returnDate.toEpochDay() - rental.getStartDate().toEpochDay());
+        addUsage(vehicle, days);
+        String reason = pendingService.remove(vehicle);
+        if (reason != null) {
+            sendToMaintenance(vehicle, reason, returnDate);
+        }
+    }
+
+    public void addUsage(Vehicle vehicle, long amount) {
+        synchronized (system) {
+            synchronized (this) {
+                long total = usage.merge(vehicle, amount, Long::sum);
+                saveServiceState(vehicle);
+                if (total >= serviceUsageDays) {
+                    requestService(vehicle, "usage reached " + total + " rental days");
+                }
+            }
+        }
+    }
+
+    public void serviceCompleted(Vehicle vehicle, LocalDate date) {
+        synchronized (system) {
+            synchronized (this) {
+                usage.remove(vehicle);
+                pendingService.remove(vehicle);
+                scheduleService(vehicle, date);
+                saveServiceState(vehicle);
+                if (vehicle.getStatus() == Vehicle.VehicleStatus.MAINTENANCE) {
+                    system.updateVehicleStatus(vehicle, Vehicle.VehicleStatus.AVAILABLE);
+                }
+            }
+        }
+    }
+
+    public void advanceTo(LocalDate today) {
+        synchronized (system) {
+            synchronized (this) {
+                wheel.advanceTo(today.toEpochDay(), timer -> {
+                    Job job = timer.getPayload();
+                    if (job.rental != null) {
+                        overdueTimers.remove(job.vehicle);
+                        for (Listener l : listeners) {
+                            l.overdue(job.rental, today);
+                        }
+                    } else {
+                        serviceTimers.remove(job.vehicle);
+                        requestService(job.vehicle, "service interval of " + serviceIntervalDays + " days elapsed");
+                    }
+                });
+            }
+        }
+    }
+
+    private void scheduleService(Vehicle vehicle, LocalDate from) {
+        lastService.put(vehicle, from);
+        wheel.cancel(serviceTimers.remove(vehicle));
+        serviceTimers.put(vehicle, wheel.schedule(from.toEpochDay() + serviceIntervalDays, new Job(vehicle, null)));
+    }
+
+    private void saveServiceState(Vehicle vehicle) {
+        system.saveServiceState(vehicle, lastService.get(vehicle), usage.getOrDefault(vehicle, 0L));
+    }
+
+    // A rented vehicle is flagged and goes to MAINTENANCE when it comes back.
+    private void requestService(Vehicle vehicle, String reason) {
+        if (vehicle.getStatus() == Vehicle.VehicleStatus.AVAILABLE) {
+            sendToMaintenance(vehicle, reason, getToday());
+        } else if (vehicle.getStatus() == Vehicle.VehicleStatus.RENTED) {
+            pendingService.put(vehicle, reason);
+        }
+    }
+
+    private void sendToMaintenance(Vehicle vehicle, String reason, LocalDate today) {
+        system.updateVehicleStatus(vehicle, Vehicle.VehicleStatus.MAINTENANCE);
+        for (Listener l : listeners) {
+            l.maintenanceDue(vehicle, reason, today);
+        }
+    }
+}
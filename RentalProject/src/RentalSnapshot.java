@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// A consistent, read-only view of the fleet, customers and history as of one
+// write. Taking one is a volatile read; every list in it is a persistent
+// vector, so reports can iterate without locks while rentals continue.
+public final class RentalSnapshot {
+    private final long version;
+    private final PersistentVector<VehicleState> fleet;
+    private final PersistentVector<Customer> customers;
+    private final RentalHistory history;
+    private final PersistentVector<RentalRecord> recentRecords;
+
+    RentalSnapshot(long version, PersistentVector<VehicleState> fleet, PersistentVector<Customer> customers,
+            RentalHistory history) {
+        this.version = version;
+        this.fleet = fleet;
+        this.customers = customers;
+        this.history = history;
+        this.recentRecords = history.getRecentRecords();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<VehicleState> getFleet() {
+        return fleet;
+    }
+
+    public List<VehicleState> getVehiclesWithStatus(Vehicle.VehicleStatus status) {
+        List<VehicleState> result = new ArrayList<>();
+        for (VehicleState v : fleet) {
+            if (v.getStatus() == status) {
+                result.add(v);
+            }
+        }
+        return result;
+    }
+
+    public List<Customer> getCustomers() {
+        return customers;
+    }
+
+    // Records in memory when the snapshot was taken; for file-backed history
+    // these are the ones added since startup.
+    public List<RentalRecord> getRecentRecords() {
+        return recentRecords;
+    }
+
+    // The on-disk tiers are read at call time and followed by the records
+    // captured here. They only grow by appends the snapshot's offsets never
+    // reach, and an archive run pins them for older histories first.
+    public List<RentalRecord> getRentalRecords() {
+        List<RentalRecord> result = history.getStoredRecords();
+        result.addAll(recentRecords);
+        return result;
+    }
+
+    public int getRentalRecordCount() {
+        return history.getStoredRecordCount() + recentRecords.size();
+    }
+}
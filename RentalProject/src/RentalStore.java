@@ -0,0 +1,53 @@
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+// Persistence behind RentalSystem. Stores exchange the same text layouts the
+// data files always used (Vehicle.getInfo(), Customer.toString(),
+// RentalRecord.toLine()), so parsing stays in one place. Vehicle lines may
+// be followed by "STATUS | <plate> | <status>" deltas, which RentalSystem folds.
+// Service state is kept apart as "<plate> | <last service> | <usage days>"
+// lines, the last one per plate winning.
+public interface RentalStore {
+    void saveVehicle(Vehicle vehicle) throws IOException;
+
+    void saveVehicleStatus(Vehicle vehicle) throws IOException;
+
+    void saveCustomer(Customer customer) throws IOException;
+
+    void saveRecord(RentalRecord record) throws IOException;
+
+    List<String> loadVehicleLines() throws IOException;
+
+    List<String> loadCustomerLines() throws IOException;
+
+    List<String> loadRecordLines() throws IOException;
+
+    // Runs writes that belong together, a status change and the record that
+    // caused it, so a store that batches cannot persist one without the other.
+    default void saveTogether(Runnable writes) {
+        writes.run();
+    }
+
+    // Rewrites vehicle state as one entry per vehicle, dropping deltas.
+    default void compactVehicles(List<Vehicle> vehicles) throws IOException {
+    }
+
+    default void saveServiceState(String line) throws IOException {
+    }
+
+    default List<String> loadServiceLines() throws IOException {
+        return Collections.emptyList();
+    }
+
+    // Rewrites service state as one line per vehicle.
+    default void compactServiceState(List<String> lines) throws IOException {
+    }
+
+    default List<RecoveryReport> getRecoveryReports() {
+        return Collections.emptyList();
+    }
+
+    default void close() throws IOException {
+    }
+}
@@ -1,32 +1,110 @@
 import java.util.List;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.io.FileReader;
-import java.io.BufferedReader;
+import java.util.LinkedHashMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RentalSystem {
-    private List<Vehicle> vehicles = new ArrayList<>();
-    private List<Customer> customers = new ArrayList<>();
-    private RentalHistory rentalHistory = new RentalHistory();
+    // Writers hold the RentalSystem lock and publish a new RentalSnapshot at
+    // the end of each change; readers use persistent vectors and never lock.
+    private volatile PersistentVector<Vehicle> vehicles = PersistentVector.empty();
+    private volatile PersistentVector<Customer> customers = PersistentVector.empty();
+    private PersistentVector<VehicleState> fleet = PersistentVector.empty();
+    private final Map<Vehicle, Integer> fleetPositions = new IdentityHashMap<>();
+    private volatile RentalSnapshot snapshot;
+    private final EventLog eventLog = new EventLog();
+    private long snapshotVersion;
+    private Map<String, Vehicle> vehiclesByPlate = new ConcurrentHashMap<>();
+    private Map<Integer, Customer> customersById = new ConcurrentHashMap<>();
+    private final CustomerNameIndex customerNames = new CustomerNameIndex();
+    // After a start from the image, names are indexed on the first name lookup.
+    private volatile boolean namesPending;
+    // The mapped image the fleet and customers were loaded from, if any. Its
+    // plate and id tables stand in for vehiclesByPlate and customersById for
+    // what it holds; positions match the vehicles and customers lists.
+    private StartupImage startupImage;
+    private final TinyLfuCache<String, List<Customer>> customerSearches = new TinyLfuCache<>(10_000, List::size);
+    private volatile RentalHistory rentalHistory = new RentalHistory();
+    private volatile CustomerStatsIndex customerStats = new CustomerStatsIndex();
+    private HistoryArchive historyArchive;
+    private RecordPager recordPager;
+    // Journals replaced by archive runs, kept while older histories read them.
+    private final RetainedFiles retainedJournals = new RetainedFiles();
+    private final PricingEngine pricingEngine = new PricingEngine();
+    private final VehicleBitmapIndex vehicleIndex = new VehicleBitmapIndex();
+    private final ActiveRentals activeRentals = new ActiveRentals();
+    private final UtilizationSeries utilization = new UtilizationSeries(System::currentTimeMillis);
+    private final RentalScheduler scheduler = new RentalScheduler(this, LocalDate.now());
+    private final RentalStore store;
+    private ReplicationLeader replicationLeader;
     public static RentalSystem instance;
+    public static final int DEFAULT_RENTAL_DAYS = 7;
+    private static final String STATUS_PREFIX = FileRentalStore.STATUS_PREFIX;
+    private static final int COMPACT_MIN_DELTAS = 1000;
+    private int statusDeltas;
+    // Service state read at startup, by plate; dropped once vehicles are loaded.
+    private Map<String, String[]> storedService;
+    private boolean loadedFromImage;
+    private boolean loading;
     
     
-    public boolean addVehicle(Vehicle vehicle) {
+    public synchronized boolean addVehicle(Vehicle vehicle) {
         if (findVehicleByPlate(vehicle.getLicensePlate()) != null) {
             System.out.println("Vehicle with license plate " + vehicle.getLicensePlate() + " already exists.");
             return false;
         }
-        vehicles.add(vehicle);
+        indexVehicle(vehicle);
         saveVehicle(vehicle);
+        eventLog.append(seq -> new RentalEvent.VehicleAdded(seq, vehicle));
+        if (replicationLeader != null) {
+            replicationLeader.vehicleAdded(vehicle);
+        }
+        publish();
         return true;
     }
     
     private RentalSystem() {
+    	this((String) null);
+    }
+
+    // A system rooted at dataDir keeps its own vehicles.txt, customers.txt and
+    // rental_records.txt there; a null dataDir means the working directory.
+    RentalSystem(String dataDir) {
+    	this(new FileRentalStore(dataDir));
+    }
+
+    public RentalSystem(RentalStore store) {
+    	this.store = store;
     	loadData();
-    	
+    }
+
+    public RentalStore getStore() {
+    	return store;
+    }
+
+    public void close() {
+    	saveStartupImage();
+    	saveUtilization();
+    	retainedJournals.purge();
+    	try {
+    		store.close();
+    	} catch (IOException e) {
+    		System.err.println("Error closing store: " + e.getMessage());
+    	}
     }
     
     public static RentalSystem getInstance(){
@@ -40,23 +118,263 @@ public class RentalSystem {
     	return instance;
     }
 
-    public boolean addCustomer(Customer customer) {
+    public synchronized boolean addCustomer(Customer customer) {
         if (findCustomerById(customer.getCustomerId()) != null) {
             System.out.println("Customer ID " + customer.getCustomerId() + " already exists.");
             return false;
         }
-        customers.add(customer);
+        indexCustomer(customer);
         saveCustomer(customer);
+        eventLog.append(seq -> new RentalEvent.CustomerAdded(seq, customer, 0));
+        if (replicationLeader != null) {
+            replicationLeader.customerAdded(customer);
+        }
+        publish();
+        return true;
+    }
+
+    private void indexVehicle(Vehicle vehicle) {
+        indexVehicle(vehicle, true);
+    }
+
+    private void indexVehicle(Vehicle vehicle, boolean byPlate) {
+        fleetPositions.put(vehicle, vehicles.size());
+        vehicles = vehicles.plus(vehicle);
+        fleet = fleet.plus(VehicleState.of(vehicle));
+        pricingEngine.vehicleAdded(vehicle);
+        vehicleIndex.add(vehicle);
+        if (loading) {
+            utilization.vehicleLoaded(VehicleCodecs.typeName(vehicle), vehicle.getStatus());
+        } else {
+            utilization.vehicleAdded(VehicleCodecs.typeName(vehicle), vehicle.getStatus());
+        }
+        String[] service = storedService == null || vehicle.getLicensePlate() == null
+                ? null : storedService.get(vehicle.getLicensePlate().toUpperCase());
+        if (service != null) {
+            scheduler.vehicleRestored(vehicle, LocalDate.parse(service[1].trim()), Long.parseLong(service[2].trim()));
+        } else {
+            scheduler.vehicleAdded(vehicle, LocalDate.now());
+        }
+        if (byPlate && vehicle.getLicensePlate() != null) {
+            vehiclesByPlate.put(vehicle.getLicensePlate().toUpperCase(), vehicle);
+        }
+    }
+
+    private void indexCustomer(Customer customer) {
+        customersById.put(customer.getCustomerId(), customer);
+        synchronized (customerNames) {
+            customers = customers.plus(customer);
+            if (!namesPending) {
+                customerNames.add(customer);
+            }
+        }
+        customerSearches.invalidateAll();
+    }
+
+    private CustomerNameIndex customerNames() {
+        if (namesPending) {
+            synchronized (customerNames) {
+                if (namesPending) {
+                    for (Customer c : customers) {
+                        customerNames.add(c);
+                    }
+                    namesPending = false;
+                }
+            }
+        }
+        return customerNames;
+    }
+
+    void setReplicationLeader(ReplicationLeader leader) {
+        this.replicationLeader = leader;
+    }
+
+    // Applies a record shipped from a leader: it is journaled locally and, when
+    // newStatus is non-null, the vehicle is moved to that status.
+    synchronized void applyReplicatedRecord(RentalRecord record, Vehicle.VehicleStatus newStatus) {
+        store.saveTogether(() -> {
+            if (newStatus != null) {
+                changeStatus(record.getVehicle(), newStatus);
+            }
+            saveRecord(record);
+        });
+        rentalHistory.addRecord(record);
+        customerStats.record(record);
+        trackOpenRental(record);
+        appendRecordEvent(record, dueDate(record));
+        if (newStatus == null) {
+            // History backfill does not move the vehicle; say so in the log.
+            Vehicle.VehicleStatus implied = "RENT".equals(record.getRecordType())
+                    ? Vehicle.VehicleStatus.RENTED : Vehicle.VehicleStatus.AVAILABLE;
+            Vehicle vehicle = record.getVehicle();
+            if (vehicle.getStatus() != implied) {
+                eventLog.append(seq -> new RentalEvent.StatusChanged(seq, vehicle.getLicensePlate(), implied, vehicle.getStatus()));
+            }
+        }
+        publish();
+    }
+
+    private void appendRecordEvent(RentalRecord record, LocalDate dueDate) {
+        String plate = record.getVehicle().getLicensePlate();
+        int customerId = record.getCustomer().getCustomerId();
+        if ("RENT".equals(record.getRecordType())) {
+            eventLog.append(seq -> new RentalEvent.VehicleRented(seq, plate, customerId, record.getRecordDate(),
+                    dueDate, record.getTotalAmountCents()));
+        } else {
+            eventLog.append(seq -> new RentalEvent.VehicleReturned(seq, plate, customerId, record.getRecordDate(),
+                    record.getTotalAmountCents()));
+        }
+    }
+
+    // Status changes made through here keep pricing demand and the bitmap
+    // indexes in step with the vehicle.
+    public synchronized void updateVehicleStatus(Vehicle vehicle, Vehicle.VehicleStatus newStatus) {
+        Vehicle.VehicleStatus oldStatus = vehicle.getStatus();
+        if (!changeStatus(vehicle, newStatus)) {
+            return;
+        }
+        eventLog.append(seq -> new RentalEvent.StatusChanged(seq, vehicle.getLicensePlate(), oldStatus, newStatus));
+        if (replicationLeader != null) {
+            replicationLeader.statusChanged(vehicle);
+        }
+        publish();
+    }
+
+    // Applies the change, journals a small STATUS delta and refreshes the
+    // derived indexes. Returns false when the vehicle already had that status.
+    private boolean changeStatus(Vehicle vehicle, Vehicle.VehicleStatus newStatus) {
+        Vehicle.VehicleStatus oldStatus = vehicle.getStatus();
+        if (oldStatus == newStatus) {
+            return false;
+        }
+        vehicle.setStatus(newStatus);
+        saveVehicleStatus(vehicle);
+        utilization.statusChanged(VehicleCodecs.typeName(vehicle), oldStatus, newStatus);
+        if (newStatus == Vehicle.VehicleStatus.RENTED) {
+            pricingEngine.vehicleRented(vehicle);
+        } else if (oldStatus == Vehicle.VehicleStatus.RENTED) {
+            pricingEngine.vehicleReturned(vehicle);
+        }
+        vehicleIndex.statusChanged(vehicle, oldStatus);
+        Integer position = fleetPositions.get(vehicle);
+        if (position != null) {
+            fleet = fleet.with(position, VehicleState.of(vehicle));
+        }
         return true;
     }
 
+    private void publish() {
+        snapshot = new RentalSnapshot(++snapshotVersion, fleet, customers, rentalHistory);
+    }
+
+    // Lock-free: the returned view never changes, whatever writers do next.
+    public RentalSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Records written before due dates were stored get the default period.
+    private static LocalDate dueDate(RentalRecord record) {
+        return record.getDueDate() != null ? record.getDueDate() : record.getRecordDate().plusDays(DEFAULT_RENTAL_DAYS);
+    }
+
+    private void trackOpenRental(RentalRecord record) {
+        if ("RENT".equals(record.getRecordType())) {
+            scheduler.rentalOpened(activeRentals.open(record, dueDate(record)));
+        } else if ("RETURN".equals(record.getRecordType())) {
+            ActiveRental closed = activeRentals.close(record.getVehicle().getLicensePlate());
+            if (closed != null) {
+                scheduler.rentalReplayed(closed);
+            }
+        }
+    }
+
+    public RentalScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // Fires overdue alerts and maintenance rules for every day up to today.
+    public void advanceClock(LocalDate today) {
+        scheduler.advanceTo(today);
+    }
+
+    public ActiveRental getActiveRental(String plate) {
+        return activeRentals.get(plate);
+    }
+
+    public List<ActiveRental> getRentalsByCustomer(int customerId) {
+        return activeRentals.rentedBy(customerId);
+    }
+
+    public List<ActiveRental> getOverdueRentals(LocalDate today) {
+        return activeRentals.overdue(today);
+    }
+
+    public List<Vehicle> findVehicles(VehicleQuery query) {
+        return vehicleIndex.find(query);
+    }
+
+    public int countVehicles(VehicleQuery query) {
+        return vehicleIndex.count(query);
+    }
+
+    public VehicleBitmapIndex getVehicleIndex() {
+        return vehicleIndex;
+    }
+
+    // Per-type status counts over time, at minute, hour and day resolution.
+    public UtilizationSeries getUtilization() {
+        return utilization;
+    }
+
+    public PricingEngine getPricingEngine() {
+        return pricingEngine;
+    }
+
+    public double quote(Vehicle vehicle, LocalDate start, int days) {
+        return pricingEngine.quote(vehicle, start, days);
+    }
+
+    public long quoteCents(Vehicle vehicle, LocalDate start, int days) {
+        return pricingEngine.quoteCents(vehicle, start, days);
+    }
+
+    // Both lists are immutable versions; iterating them never races a writer.
+    public List<Vehicle> getVehicles() {
+        return vehicles;
+    }
+
+    public List<Customer> getCustomers() {
+        return customers;
+    }
+
+    public RentalHistory getRentalHistory() {
+        return rentalHistory;
+    }
+
  
     public boolean rentVehicle(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        return rentVehicleCents(vehicle, customer, date, Money.ofDouble(amount));
+    }
+
+    public boolean rentVehicleCents(Vehicle vehicle, Customer customer, LocalDate date, long amountCents) {
+        return rentVehicleCents(vehicle, customer, date, date.plusDays(DEFAULT_RENTAL_DAYS), amountCents);
+    }
+
+    public synchronized boolean rentVehicleCents(Vehicle vehicle, Customer customer, LocalDate date, LocalDate dueDate, long amountCents) {
         if (vehicle.getStatus() == Vehicle.VehicleStatus.AVAILABLE) {
-            vehicle.setStatus(Vehicle.VehicleStatus.RENTED);
-            RentalRecord rec = new RentalRecord(vehicle, customer, date, amount, "RENT");
+            RentalRecord rec = new RentalRecord(vehicle, customer, date, "RENT", amountCents, dueDate);
+            store.saveTogether(() -> {
+                changeStatus(vehicle, Vehicle.VehicleStatus.RENTED);
+                saveRecord(rec);
+            });
             rentalHistory.addRecord(rec);
-            saveRecord(rec);
+            customerStats.record(rec);
+            scheduler.rentalOpened(activeRentals.open(rec, dueDate));
+            appendRecordEvent(rec, dueDate);
+            if (replicationLeader != null) {
+                replicationLeader.recordAdded(rec);
+            }
+            publish();
             System.out.println("Vehicle rented to " + customer.getCustomerName());
             return true;
         }
@@ -67,13 +385,33 @@ public class RentalSystem {
     }
 
     public boolean returnVehicle(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        return returnVehicleCents(vehicle, customer, date, Money.ofDouble(extraFees));
+    }
+
+    public synchronized boolean returnVehicleCents(Vehicle vehicle, Customer customer, LocalDate date, long extraFeesCents) {
         if (vehicle.getStatus() == Vehicle.VehicleStatus.RENTED) {
-            vehicle.setStatus(Vehicle.VehicleStatus.AVAILABLE);
-            
-            RentalRecord record = new RentalRecord(vehicle, customer, date, extraFees, "RETURN");
+            ActiveRental open = activeRentals.get(vehicle.getLicensePlate());
+            if (open != null && open.getCustomer().getCustomerId() != customer.getCustomerId()) {
+                System.out.println("Vehicle is rented by " + open.getCustomer().getCustomerName() + ", not " + customer.getCustomerName() + ".");
+                return false;
+            }
+            RentalRecord record = new RentalRecord(vehicle, customer, date, "RETURN", extraFeesCents);
+            store.saveTogether(() -> {
+                changeStatus(vehicle, Vehicle.VehicleStatus.AVAILABLE);
+                saveRecord(record);
+            });
             rentalHistory.addRecord(record);
-            saveRecord(record);
-            
+            customerStats.record(record);
+            ActiveRental closed = activeRentals.close(vehicle.getLicensePlate());
+            appendRecordEvent(record, null);
+            if (replicationLeader != null) {
+                replicationLeader.recordAdded(record);
+            }
+            // May send the vehicle to maintenance, which must follow the return.
+            if (closed != null) {
+                scheduler.rentalClosed(closed, date);
+            }
+            publish();
             System.out.println("Vehicle returned by " + customer.getCustomerName());
             return true;
         }
@@ -89,13 +427,7 @@ public class RentalSystem {
         
         for (Vehicle v : vehicles) {
             if (v.getStatus() == Vehicle.VehicleStatus.AVAILABLE) {
-                String type;
-                if (v instanceof SportCar) type = "SportCar     ";
-                else if (v instanceof Car) type = "Car          ";
-                else if (v instanceof Motorcycle) type = "Motorcycle   ";
-                else if (v instanceof Truck) type = "Truck        ";
-                else type = "Unknown     ";
-                
+                String type = String.format("%-13s", VehicleCodecs.typeName(v));
                 System.out.println("|     " + type + "|\t" + v.getLicensePlate() + "\t|\t" + v.getMake() + "\t|\t" + v.getModel() + "\t|\t" + v.getYear() + "\t|");
             }
         }
@@ -121,31 +453,45 @@ public class RentalSystem {
     }
     
     public Vehicle findVehicleByPlate(String plate) {
-        for (Vehicle v : vehicles) {
-            if (v.getLicensePlate().equalsIgnoreCase(plate)) {
-                return v;
-            }
+        if (plate == null) {
+            return null;
+        }
+        Vehicle vehicle = vehiclesByPlate.get(plate.toUpperCase());
+        StartupImage image = startupImage;
+        if (vehicle == null && image != null) {
+            int index = image.findVehicle(plate);
+            vehicle = index < 0 ? null : vehicles.get(index);
         }
-        return null;
+        return vehicle;
     }
     
     public Customer findCustomerById(int id) {
-        for (Customer c : customers)
-            if (c.getCustomerId() == id)
-                return c;
-        return null;
+        Customer customer = customersById.get(id);
+        StartupImage image = startupImage;
+        if (customer == null && image != null) {
+            int index = image.findCustomer(id);
+            customer = index < 0 ? null : customers.get(index);
+        }
+        return customer;
     }
 
     public Customer findCustomerByName(String name) {
-        for (Customer c : customers)
-            if (c.getCustomerName().equalsIgnoreCase(name))
-                return c;
-        return null;
+        return customerNames().findExact(name);
+    }
+
+    // Exact, then prefix, then typo-tolerant matches, best first.
+    // Fuzzy searches are cached by query; adding a customer drops them all.
+    public List<Customer> searchCustomers(String query, int limit) {
+        return new ArrayList<>(customerSearches.get(limit + "|" + query.toLowerCase(), k -> customerNames().search(query, limit)));
+    }
+
+    public TinyLfuCache<String, List<Customer>> getCustomerSearchCache() {
+        return customerSearches;
     }
     
     public void saveCustomer(Customer customer) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("customers.txt", true))) {
-            writer.write(customer.toString() + "\n");
+        try {
+            store.saveCustomer(customer);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -153,19 +499,48 @@ public class RentalSystem {
     
 
     public void saveVehicle(Vehicle vehicle) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("vehicles.txt", true))) {
-            writer.write(vehicle.getInfo() + "\n");
+        try {
+            store.saveVehicle(vehicle);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
     
     
+    // Only the status is written; the store appends a delta or overwrites the
+    // vehicle's entry, never the whole fleet.
+    public void saveVehicleStatus(Vehicle vehicle) {
+        if (vehicle.getLicensePlate() == null) {
+            return;
+        }
+        try {
+            store.saveVehicleStatus(vehicle);
+            statusDeltas++;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Called by the scheduler whenever a vehicle's last service or usage changes.
+    void saveServiceState(Vehicle vehicle, LocalDate lastService, long usageDays) {
+        if (vehicle.getLicensePlate() == null) {
+            return;
+        }
+        try {
+            store.saveServiceState(serviceLine(vehicle.getLicensePlate(), lastService, usageDays));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String serviceLine(String plate, LocalDate lastService, long usageDays) {
+        return plate + " | " + lastService + " | " + usageDays;
+    }
+
     public void saveRecord(RentalRecord record) {
     	
-    	try (BufferedWriter writer = new BufferedWriter(new FileWriter("rental_records.txt", true))) {
-    		writer.write(record.toString() + "\n");
-    		
+    	try {
+    		store.saveRecord(record);
     	}
     	catch (IOException e) {
     		System.out.println("Error");
@@ -173,131 +548,588 @@ public class RentalSystem {
 
     }
     
+    // Parses a line in the getInfo() layout written by saveVehicle.
+    static Vehicle parseVehicle(String line) {
+        return VehicleCodecs.parseInfo(line);
+    }
+
+    // Parses a line in the RentalRecord.toLine() layout written by saveRecord.
+    // Lines from before customer IDs and due dates were stored resolve the
+    // customer by name; the older "type,plate,customerId,date,amount,transaction"
+    // layout is also accepted.
+    RentalRecord parseRecord(String line) {
+        String type;
+        Vehicle vehicle;
+        Customer customer;
+        LocalDate date;
+        long amount;
+        LocalDate dueDate = null;
+        if (line.contains(" | ")) {
+            String[] parts = line.split(" \\| ");
+            if (parts.length < 5) {
+                return null;
+            }
+            type = parts[0].trim();
+            vehicle = findVehicleByPlate(parts[1].split(": ")[1].trim());
+            date = LocalDate.parse(parts[3].split(": ")[1].trim());
+            amount = Money.parse(parts[4], parts[4].indexOf('$') + 1, parts[4].length());
+            Integer customerId = null;
+            for (int i = 5; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.startsWith("Customer ID: ")) {
+                    customerId = Integer.valueOf(part.substring("Customer ID: ".length()).trim());
+                } else if (part.startsWith("Due: ")) {
+                    dueDate = LocalDate.parse(part.substring("Due: ".length()).trim());
+                }
+            }
+            customer = customerId != null ? findCustomerById(customerId) : findCustomerByName(parts[2].split(": ")[1].trim());
+        } else {
+            String[] parts = line.split(",");
+            if (parts.length < 6) {
+                return null;
+            }
+            vehicle = findVehicleByPlate(parts[1].trim());
+            customer = findCustomerById(Integer.parseInt(parts[2].trim()));
+            date = LocalDate.parse(parts[3].trim());
+            amount = Money.parse(parts[4]);
+            type = parts[5].trim();
+        }
+        if (vehicle == null || customer == null) {
+            return null;
+        }
+        return new RentalRecord(vehicle, customer, date, type, amount, dueDate);
+    }
+
+    public List<RecoveryReport> getRecoveryReports() {
+        return store.getRecoveryReports();
+    }
+
     private void loadData() {
-    	loadVehicles();
-    	loadCustomer();
+    	loading = true;
+    	loadUtilization();
+    	int serviceLines = loadServiceState();
+    	if (!loadStartupImage()) {
+    	    loadVehicles();
+    	    loadCustomer();
+    	}
+    	storedService = null;
+    	if (serviceLines > COMPACT_MIN_DELTAS && serviceLines > 2 * vehicles.size()) {
+    	    compactServiceState();
+    	}
     	loadRecords();
+    	seedEventLog();
+    	loading = false;
+    	publish();
     }
-    private void loadVehicles() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("vehicles.txt"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
-                try {
-                    String[] parts = line.split("\\|");
-                    List<String> tokens = new ArrayList<>();
-                    for (String part : parts) {
-                        if (!part.trim().isEmpty()) {
-                            tokens.add(part.trim());
-                        }
-                    }
 
-                    if (tokens.size() < 6) {
-                        System.err.println("Skipping invalid vehicle line: " + line);
-                        continue;
-                    }
+    // Data loaded from the stores enters the log as a baseline: each vehicle
+    // as available, each customer with spending to date, and each open
+    // rental replayed from the record journal. Only statuses the journal
+    // cannot imply (maintenance and the like) come from the vehicle store, so
+    // a stored status that disagrees with the journal shows up in
+    // verifyEventLog(). Everything after that is appended as it happens.
+    private void seedEventLog() {
+        Map<Integer, Long> totals = customerTotals();
+        for (ActiveRental open : activeRentals.all()) {
+            totals.merge(open.getCustomer().getCustomerId(), -open.getAmountCents(), Long::sum);
+        }
+        for (Vehicle vehicle : vehicles) {
+            eventLog.append(seq -> new RentalEvent.VehicleAdded(seq, vehicle, Vehicle.VehicleStatus.AVAILABLE));
+            Vehicle.VehicleStatus stored = vehicle.getStatus();
+            if (stored != Vehicle.VehicleStatus.AVAILABLE && stored != Vehicle.VehicleStatus.RENTED) {
+                eventLog.append(seq -> new RentalEvent.StatusChanged(seq, vehicle.getLicensePlate(),
+                        Vehicle.VehicleStatus.AVAILABLE, stored));
+            }
+        }
+        for (Customer customer : customers) {
+            long opening = totals.getOrDefault(customer.getCustomerId(), 0L);
+            eventLog.append(seq -> new RentalEvent.CustomerAdded(seq, customer, opening));
+        }
+        for (ActiveRental open : activeRentals.all()) {
+            eventLog.append(seq -> new RentalEvent.VehicleRented(seq, open.getVehicle().getLicensePlate(),
+                    open.getCustomer().getCustomerId(), open.getStartDate(), open.getDueDate(), open.getAmountCents()));
+        }
+    }
 
-                    String licensePlate = tokens.get(0);
-                    String make = tokens.get(1);
-                    String model = tokens.get(2);
-                    int year = Integer.parseInt(tokens.get(3));
-                    Vehicle.VehicleStatus status = Vehicle.VehicleStatus.valueOf(tokens.get(4));
-                    String typeDetails = tokens.get(5);
-
-                    Vehicle vehicle = null;
-
-                    if (typeDetails.startsWith("Seats:")) {
-                        int seats = Integer.parseInt(typeDetails.split(":")[1].trim());
-                        if (tokens.size() > 6 && tokens.get(6).startsWith("Horsepower:")) {
-                            // This is a SportCar
-                            int horsepower = Integer.parseInt(tokens.get(6).split(":")[1].trim());
-                            boolean turbo = tokens.get(7).split(":")[1].trim().equalsIgnoreCase("Yes");
-                            vehicle = new SportCar(make, model, year, seats, horsepower, turbo);
-                        } else {
-                            vehicle = new Car(make, model, year, seats);
-                        }
-                    } else if (typeDetails.startsWith("Sidecar:")) {
-                        boolean sidecar = typeDetails.split(":")[1].trim().equalsIgnoreCase("Yes");
-                        vehicle = new Motorcycle(make, model, year, sidecar);
-                    } else if (typeDetails.startsWith("Cargo Capacity:")) {
-                        double capacity = Double.parseDouble(typeDetails.split(":")[1].trim());
-                        vehicle = new Truck(make, model, year, capacity);
-                    }
+    private Map<Integer, Long> customerTotals() {
+        Map<Integer, Long> totals = new HashMap<>();
+        if (rentalHistory.isLazy() || rentalHistory.getArchive() != null) {
+            for (Customer customer : customers) {
+                totals.put(customer.getCustomerId(), rentalHistory.getTotalAmountCentsByCustomer(customer.getCustomerId()));
+            }
+        } else {
+            for (RentalRecord record : rentalHistory.getRentalHistory()) {
+                totals.merge(record.getCustomer().getCustomerId(), record.getTotalAmountCents(), Long::sum);
+            }
+        }
+        return totals;
+    }
 
-                    if (vehicle != null) {
-                        vehicle.setLicensePlate(licensePlate);
-                        vehicle.setStatus(status);
-                        vehicles.add(vehicle);
-                    }
+    // Rental count, spend and last rental for one customer, kept up to date
+    // with every record; empty stats for a customer without history.
+    public CustomerStats getCustomerStats(int customerId) {
+        return customerStats.get(customerId);
+    }
+
+    public List<CustomerStats> getTopCustomers(int n) {
+        return customerStats.topBySpend(n);
+    }
+
+    public List<CustomerStats> getTopCustomersByRentals(int n) {
+        return customerStats.topByRentals(n);
+    }
+
+    public Map<CustomerStats.Tier, Integer> getLoyaltyTierCounts() {
+        return customerStats.countByTier(customers);
+    }
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    // Change feed: the listener sees every vehicle, customer, rental, return
+    // and status event from now on, on a thread of its own. Close the
+    // subscription when done; a listener that stops consuming eventually
+    // holds up writers.
+    public EventRingBuffer.Subscription subscribe(String name, EventRingBuffer.Listener listener) {
+        return eventLog.subscribe(name, listener);
+    }
+
+    // Rebuilds the projection from the event log in parallel and compares it
+    // with the live fleet, open rentals and history totals. Returns the
+    // differences; an empty list means state and log agree.
+    public synchronized List<String> verifyEventLog() {
+        EventProjection rebuilt = eventLog.project(Runtime.getRuntime().availableProcessors());
+        return rebuilt.diff(liveProjection());
+    }
+
+    // Puts every vehicle whose status has drifted from the event log back to
+    // the status the log implies, and stores it. The log starts from the
+    // record journal at load, so this also repairs a stored status the
+    // journal contradicts. Returns how many were changed.
+    public synchronized int restoreStatusFromEvents() {
+        EventProjection rebuilt = eventLog.project(Runtime.getRuntime().availableProcessors());
+        int changed = 0;
+        for (Map.Entry<String, Vehicle.VehicleStatus> e : rebuilt.getStatuses().entrySet()) {
+            Vehicle vehicle = findVehicleByPlate(e.getKey());
+            if (vehicle != null && changeStatus(vehicle, e.getValue())) {
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            publish();
+        }
+        return changed;
+    }
+
+    private EventProjection liveProjection() {
+        EventProjection live = new EventProjection();
+        for (Vehicle vehicle : vehicles) {
+            if (vehicle.getLicensePlate() != null) {
+                live.getStatuses().put(vehicle.getLicensePlate().toUpperCase(), vehicle.getStatus());
+            }
+        }
+        for (ActiveRental open : activeRentals.all()) {
+            String plate = open.getVehicle().getLicensePlate().toUpperCase();
+            live.getOpenRentals().put(plate, new RentalEvent.VehicleRented(0, plate, open.getCustomer().getCustomerId(),
+                    open.getStartDate(), open.getDueDate(), open.getAmountCents()));
+        }
+        live.getCustomerTotals().putAll(customerTotals());
+        return live;
+    }
+
+    private interface LineSource {
+        List<String> read() throws IOException;
+    }
+
+    private List<String> loadLines(String what, LineSource source) {
+        try {
+            return source.read();
+        } catch (IOException e) {
+            System.err.println("Error loading " + what + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
 
-                } catch (Exception e) {
-                    System.err.println("Failed to parse vehicle line: " + line);
-                    e.printStackTrace();
+    // Vehicle lines and STATUS deltas are folded per plate in one pass, so the
+    // last line for a plate wins. When deltas outnumber the fleet the store is
+    // compacted to one entry per vehicle, keeping the next restart cheap.
+    private void loadVehicles() {
+        Map<String, Vehicle> folded = new LinkedHashMap<>();
+        List<Vehicle> unplated = new ArrayList<>();
+        int lines = 0;
+        for (String line : loadLines("vehicles", store::loadVehicleLines)) {
+            lines++;
+            try {
+                if (line.startsWith(STATUS_PREFIX)) {
+                    String[] parts = line.split(" \\| ");
+                    Vehicle vehicle = folded.get(parts[1].trim().toUpperCase());
+                    if (vehicle == null) {
+                        System.err.println("Skipping status for unknown vehicle: " + line);
+                        continue;
+                    }
+                    vehicle.setStatus(Vehicle.VehicleStatus.valueOf(parts[2].trim()));
+                    statusDeltas++;
+                    continue;
+                }
+                Vehicle vehicle = parseVehicle(line);
+                if (vehicle == null) {
+                    System.err.println("Skipping invalid vehicle line: " + line);
+                    continue;
+                }
+                if (vehicle.getLicensePlate() == null) {
+                    unplated.add(vehicle);
+                } else {
+                    folded.put(vehicle.getLicensePlate().toUpperCase(), vehicle);
                 }
+            } catch (RuntimeException e) {
+                System.err.println("Failed to parse vehicle line: " + line + " (" + e.getMessage() + ")");
             }
+        }
+        for (Vehicle vehicle : unplated) {
+            indexVehicle(vehicle);
+        }
+        for (Vehicle vehicle : folded.values()) {
+            indexVehicle(vehicle);
+        }
+        if (statusDeltas > COMPACT_MIN_DELTAS && lines > 2 * vehicles.size()) {
+            compactVehicles();
+        }
+    }
+
+    // Folds service lines per plate, last one winning; returns how many were read.
+    private int loadServiceState() {
+        storedService = new HashMap<>();
+        int lines = 0;
+        for (String line : loadLines("service state", store::loadServiceLines)) {
+            lines++;
+            String[] parts = line.split(" \\| ");
+            try {
+                LocalDate.parse(parts[1].trim());
+                Long.parseLong(parts[2].trim());
+            } catch (RuntimeException e) {
+                System.err.println("Skipping invalid service line: " + line);
+                continue;
+            }
+            storedService.put(parts[0].trim().toUpperCase(), parts);
+        }
+        return lines;
+    }
+
+    public synchronized void compactServiceState() {
+        List<String> lines = new ArrayList<>(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            LocalDate lastService = scheduler.getLastService(vehicle);
+            if (vehicle.getLicensePlate() != null && lastService != null) {
+                lines.add(serviceLine(vehicle.getLicensePlate(), lastService, scheduler.getUsage(vehicle)));
+            }
+        }
+        try {
+            store.compactServiceState(lines);
         } catch (IOException e) {
-            System.out.println("Error");
+            System.err.println("Service state compaction failed: " + e.getMessage());
+        }
+    }
+
+    public synchronized void compactVehicles() {
+        try {
+            store.compactVehicles(vehicles);
+            statusDeltas = 0;
+        } catch (IOException e) {
+            System.err.println("Vehicle compaction failed: " + e.getMessage());
         }
     }
     
+    // Takes vehicles and customers from the startup image when it still
+    // matches the text files. Everything is decoded before anything is
+    // indexed, so a bad image leaves nothing half loaded. Plate and id
+    // lookups then go to the image's tables, and the customer name index is
+    // left until a name is first looked up.
+    private boolean loadStartupImage() {
+        if (!(store instanceof FileRentalStore)) {
+            return false;
+        }
+        FileRentalStore fileStore = (FileRentalStore) store;
+        StartupImage image = StartupImage.open(fileStore.getImageDir());
+        if (image == null || !image.matches(new File(fileStore.getVehiclesFile()), new File(fileStore.getCustomersFile()))) {
+            return false;
+        }
+        List<Vehicle> loadedVehicles = new ArrayList<>(image.getVehicleCount());
+        List<Customer> loadedCustomers = new ArrayList<>(image.getCustomerCount());
+        try {
+            for (int i = 0; i < image.getVehicleCount(); i++) {
+                loadedVehicles.add(image.readVehicle(i));
+            }
+            for (int i = 0; i < image.getCustomerCount(); i++) {
+                loadedCustomers.add(image.readCustomer(i));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Ignoring startup image: " + e.getMessage());
+            return false;
+        }
+        // Entries the tables cannot answer (long plates, duplicates) still go in the maps.
+        for (int i = 0; i < loadedVehicles.size(); i++) {
+            Vehicle vehicle = loadedVehicles.get(i);
+            indexVehicle(vehicle, image.findVehicle(vehicle.getLicensePlate()) != i);
+        }
+        PersistentVector<Customer> loaded = PersistentVector.empty();
+        for (int i = 0; i < loadedCustomers.size(); i++) {
+            Customer customer = loadedCustomers.get(i);
+            loaded = loaded.plus(customer);
+            if (image.findCustomer(customer.getCustomerId()) != i) {
+                customersById.put(customer.getCustomerId(), customer);
+            }
+        }
+        customers = loaded;
+        namesPending = true;
+        startupImage = image;
+        statusDeltas = image.getStatusDeltas();
+        loadedFromImage = true;
+        return true;
+    }
+
+    // Writes a startup image for the next start; close() does this on shutdown.
+    public synchronized boolean saveStartupImage() {
+        if (!(store instanceof FileRentalStore)) {
+            return false;
+        }
+        FileRentalStore fileStore = (FileRentalStore) store;
+        try {
+            StartupImage.write(fileStore.getImageDir(), vehicles, customers, statusDeltas,
+                    new File(fileStore.getVehiclesFile()), new File(fileStore.getCustomersFile()));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error writing startup image: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Utilization rings survive restarts with the file store; see UtilizationSeries.
+    private void loadUtilization() {
+        if (!(store instanceof FileRentalStore) || !((FileRentalStore) store).getUtilizationFile().isFile()) {
+            return;
+        }
+        File file = ((FileRentalStore) store).getUtilizationFile();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!utilization.restore(in)) {
+                System.err.println("Ignoring utilization history written for other vehicle types: " + file);
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring utilization history " + file + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized boolean saveUtilization() {
+        if (!(store instanceof FileRentalStore)) {
+            return false;
+        }
+        File file = ((FileRentalStore) store).getUtilizationFile();
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                utilization.save(out);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing utilization history: " + e.getMessage());
+            return false;
+        } finally {
+            temp.delete();
+        }
+    }
+
+    public boolean isLoadedFromImage() {
+        return loadedFromImage;
+    }
+
     private void loadCustomer() {
-    	try (BufferedReader reader = new BufferedReader(new FileReader("customers.txt"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-
-            	if (line.trim().isEmpty()) {
-            		continue;
-            	}
-            	
-                String[] parts = line.split(" \\| ");
-                
-                if (parts.length < 2) {
-                	continue;
+        for (String line : loadLines("customers", store::loadCustomerLines)) {
+            try {
+                indexCustomer(Customer.parse(line));
+            } catch (RuntimeException e) {
+                System.err.println("Failed to parse customer line: " + line + " (" + e.getMessage() + ")");
+            }
+        }
+    }
+
+    private void loadRecords() {
+        if (store instanceof FileRentalStore) {
+            loadRecordIndex((FileRentalStore) store);
+            return;
+        }
+        if (store instanceof LsmRentalStore) {
+            try {
+                ((LsmRentalStore) store).indexRecords(this::parseRecord);
+            } catch (IOException e) {
+                System.err.println("Error indexing rental records: " + e.getMessage());
+            }
+        }
+        if (store instanceof IndexedRecordStore) {
+            loadRecordSource((IndexedRecordStore) store);
+            return;
+        }
+        for (String line : loadLines("rental records", store::loadRecordLines)) {
+            try {
+                RentalRecord record = parseRecord(line);
+                if (record == null) {
+                    System.err.println("Skipping rental record with unknown vehicle or customer: " + line);
+                    continue;
                 }
+                rentalHistory.addRecord(record);
+                customerStats.record(record);
+                trackOpenRental(record);
+            } catch (RuntimeException e) {
+                System.err.println("Failed to parse rental record: " + line + " (" + e.getMessage() + ")");
+            }
+        }
+    }
+
+    // The JDBC and LSM backends answer history lookups with their indexes;
+    // one pass replays open rentals and totals without keeping the records.
+    private void loadRecordSource(IndexedRecordStore indexedStore) {
+        IndexedRecordSource source = new IndexedRecordSource(indexedStore, this::parseRecord);
+        try {
+            indexedStore.scanRecords((sequence, line) -> {
                 try {
-                	int id = Integer.parseInt(parts[0].split(": ")[1].trim());
-                    String name = parts[1].split(": ")[1].trim();
-                    customers.add(new Customer(id, name));
-                } catch (Exception e) {
-                    System.err.println("Failed to parse customer line: " + line);
-                    e.printStackTrace();
+                    RentalRecord record = parseRecord(line);
+                    if (record == null) {
+                        System.err.println("Skipping rental record with unknown vehicle or customer: " + line);
+                        return;
+                    }
+                    source.add(record);
+                    customerStats.record(record);
+                    trackOpenRental(record);
+                } catch (RuntimeException e) {
+                    System.err.println("Failed to parse rental record: " + line + " (" + e.getMessage() + ")");
                 }
+            });
+        } catch (IOException e) {
+            System.err.println("Error loading rental records: " + e.getMessage());
+        }
+        rentalHistory = new RentalHistory(source);
+    }
+
+    // The file backend keeps history on disk: one streaming pass builds the
+    // offset index and replays open rentals, without keeping the records.
+    // Older months live in the compressed archive under history/.
+    private void loadRecordIndex(FileRentalStore fileStore) {
+        try {
+            historyArchive = new HistoryArchive(fileStore.getArchiveDir(), this::findVehicleByPlate, this::findCustomerById);
+        } catch (IOException e) {
+            System.err.println("Error opening history archive: " + e.getMessage());
+        }
+        RetainedFiles.deleteStale(new File(fileStore.getRecordsFile()).getAbsoluteFile().getParentFile());
+        indexRecords(fileStore, true);
+        try {
+            LocalDate pending = historyArchive == null ? null : historyArchive.getPendingBoundary();
+            if (pending != null) {
+                // An archive run stopped before the journal was trimmed.
+                trimArchivedRecords(fileStore, pending);
             }
         } catch (IOException e) {
-            System.out.println("Error loading customers: " + e.getMessage());
+            System.err.println("Error finishing history archive: " + e.getMessage());
         }
     }
 
-    private void loadRecords() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("rental_records.txt"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length < 6) continue; 
-                
-               
-                String vehicleType = parts[0].trim();
-                String licensePlate = parts[1].trim();
-                Vehicle vehicle = findVehicleByPlate(licensePlate);
-                if (vehicle == null) continue;
-                
-                
-                int customerId = Integer.parseInt(parts[2].trim());
-                Customer customer = findCustomerById(customerId);
-                if (customer == null) continue;
-                
-                
-                LocalDate date = LocalDate.parse(parts[3].trim());
-                
-                
-                double amount = Double.parseDouble(parts[4].trim());
-                String transactionType = parts[5].trim();
-                
-                RentalRecord record = new RentalRecord(vehicle, customer, date, amount, transactionType);
-                rentalHistory.addRecord(record);
+    // Customer stats are rebuilt alongside: archive summaries plus every
+    // journal record, so they stay exact after the journal is trimmed.
+    private void indexRecords(FileRentalStore fileStore, boolean replay) {
+        RecordPager pager = new RecordPager(fileStore.getRecordsFile(), this::parseRecord);
+        CustomerStatsIndex stats = new CustomerStatsIndex();
+        if (historyArchive != null) {
+            historyArchive.addCustomerStats(stats);
+        }
+        try {
+            fileStore.scanRecords((offset, line) -> {
+                try {
+                    RentalRecord record = parseRecord(line);
+                    if (record == null) {
+                        System.err.println("Skipping rental record with unknown vehicle or customer: " + line);
+                        return;
+                    }
+                    pager.add(offset, record);
+                    stats.record(record);
+                    if (replay) {
+                        trackOpenRental(record);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Failed to parse rental record: " + line + " (" + e.getMessage() + ")");
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error loading rental records: " + e.getMessage());
+        }
+        RentalHistory history = new RentalHistory(pager);
+        history.setArchive(historyArchive);
+        recordPager = pager;
+        rentalHistory = history;
+        customerStats = stats;
+    }
+
+    // Moves every whole month before 'before' out of rental_records.txt into
+    // compressed archive segments. RENT records of rentals that are still open
+    // stay in the journal so a restart can replay them. Snapshots taken before
+    // the run keep the archive and journal as they were: the outgoing history
+    // is pinned to a frozen archive and a retained copy of the journal.
+    public synchronized boolean archiveHistory(LocalDate before) {
+        if (!(store instanceof FileRentalStore) || historyArchive == null) {
+            System.out.println("History archiving needs the file store.");
+            return false;
+        }
+        FileRentalStore fileStore = (FileRentalStore) store;
+        LocalDate boundary = before.withDayOfMonth(1);
+        List<RentalRecord> cold = new ArrayList<>();
+        try {
+            JournalFile.scan(fileStore.getRecordsFile(), (offset, line) -> {
+                RentalRecord record = parseArchivable(line);
+                if (record != null && isArchivable(record, boundary)) {
+                    cold.add(record);
+                }
+            });
+            if (cold.isEmpty()) {
+                return true;
             }
+            RentalHistory outgoing = rentalHistory;
+            outgoing.setArchive(historyArchive.pin());
+            File journal = new File(fileStore.getRecordsFile());
+            recordPager.moveTo(retainedJournals.retain(journal, recordPager).getPath());
+            historyArchive.archive(cold, boundary);
+            trimArchivedRecords(fileStore, boundary);
+            publish();
+            return true;
         } catch (IOException e) {
-            System.out.println("No existing rental records found or error reading file.");
-        	}
-    	}
-    }
\ No newline at end of file
+            System.err.println("Error archiving rental history: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void trimArchivedRecords(FileRentalStore fileStore, LocalDate boundary) throws IOException {
+        fileStore.rewriteRecords(line -> {
+            RentalRecord record = parseArchivable(line);
+            return record == null || !isArchivable(record, boundary);
+        });
+        historyArchive.finishPending();
+        indexRecords(fileStore, false);
+    }
+
+    private RentalRecord parseArchivable(String line) {
+        try {
+            return parseRecord(line);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private boolean isArchivable(RentalRecord record, LocalDate boundary) {
+        if (!record.getRecordDate().isBefore(boundary)) {
+            return false;
+        }
+        if (!"RENT".equals(record.getRecordType())) {
+            return true;
+        }
+        ActiveRental open = activeRentals.get(record.getVehicle().getLicensePlate());
+        return open == null || !open.getStartDate().equals(record.getRecordDate())
+                || open.getCustomer().getCustomerId() != record.getCustomer().getCustomerId();
+    }
+}
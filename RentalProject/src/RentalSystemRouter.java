@@ -0,0 +1,169 @@
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Sharded mode: every depot is an independent RentalSystem with its own lists,
+// indexes and files under baseDir/<depot>. The router keeps a plate -> shard
+// table so cross-shard lookups don't have to probe every depot.
+public class RentalSystemRouter {
+    private final Map<String, RentalSystem> shards = new LinkedHashMap<>();
+    private final List<RentalSystem> shardList = new ArrayList<>();
+    private final Map<String, RentalSystem> plateRoutes = new ConcurrentHashMap<>();
+
+    public RentalSystemRouter(String baseDir, String... depots) {
+        if (depots.length == 0) {
+            throw new IllegalArgumentException("At least one depot is required.");
+        }
+        for (String depot : depots) {
+            RentalSystem shard = new RentalSystem(new File(baseDir, depot).getPath());
+            shards.put(depot, shard);
+            shardList.add(shard);
+            for (Vehicle v : shard.getVehicles()) {
+                if (v.getLicensePlate() != null) {
+                    plateRoutes.put(v.getLicensePlate().toUpperCase(), shard);
+                }
+            }
+        }
+    }
+
+    // Hash-partitioned layout with shards named shard-0 .. shard-(count-1).
+    public static RentalSystemRouter hashed(String baseDir, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be > 0");
+        }
+        String[] names = new String[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            names[i] = "shard-" + i;
+        }
+        return new RentalSystemRouter(baseDir, names);
+    }
+
+    public RentalSystem getShard(String depot) {
+        return shards.get(depot);
+    }
+
+    public Collection<RentalSystem> getShards() {
+        return Collections.unmodifiableList(shardList);
+    }
+
+    public RentalSystem shardForPlate(String plate) {
+        RentalSystem shard = plateRoutes.get(plate.toUpperCase());
+        if (shard != null) {
+            return shard;
+        }
+        return shardList.get(Math.floorMod(plate.toUpperCase().hashCode(), shardList.size()));
+    }
+
+    public RentalSystem shardForCustomer(int customerId) {
+        return shardList.get(Math.floorMod(Integer.hashCode(customerId), shardList.size()));
+    }
+
+    public boolean addVehicle(Vehicle vehicle) {
+        if (vehicle.getLicensePlate() == null) {
+            throw new IllegalArgumentException("Vehicle needs a license plate to be routed.");
+        }
+        return addVehicle(shardForPlate(vehicle.getLicensePlate()), vehicle);
+    }
+
+    public boolean addVehicle(String depot, Vehicle vehicle) {
+        RentalSystem shard = shards.get(depot);
+        if (shard == null) {
+            throw new IllegalArgumentException("Unknown depot: " + depot);
+        }
+        return addVehicle(shard, vehicle);
+    }
+
+    private boolean addVehicle(RentalSystem shard, Vehicle vehicle) {
+        if (vehicle.getLicensePlate() == null) {
+            throw new IllegalArgumentException("Vehicle needs a license plate to be routed.");
+        }
+        if (findVehicleByPlate(vehicle.getLicensePlate()) != null) {
+            System.out.println("Vehicle with license plate " + vehicle.getLicensePlate() + " already exists.");
+            return false;
+        }
+        if (!shard.addVehicle(vehicle)) {
+            return false;
+        }
+        plateRoutes.put(vehicle.getLicensePlate().toUpperCase(), shard);
+        return true;
+    }
+
+    public boolean addCustomer(Customer customer) {
+        if (findCustomerById(customer.getCustomerId()) != null) {
+            System.out.println("Customer ID " + customer.getCustomerId() + " already exists.");
+            return false;
+        }
+        return shardForCustomer(customer.getCustomerId()).addCustomer(customer);
+    }
+
+    // Rentals are journaled by the vehicle's shard. The customer is copied into
+    // that shard first so each shard can reload its history on its own.
+    public boolean rentVehicle(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        RentalSystem shard = shardForPlate(vehicle.getLicensePlate());
+        ensureCustomer(shard, customer);
+        return shard.rentVehicle(vehicle, customer, date, amount);
+    }
+
+    public boolean returnVehicle(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        RentalSystem shard = shardForPlate(vehicle.getLicensePlate());
+        ensureCustomer(shard, customer);
+        return shard.returnVehicle(vehicle, customer, date, extraFees);
+    }
+
+    private void ensureCustomer(RentalSystem shard, Customer customer) {
+        if (shard.findCustomerById(customer.getCustomerId()) == null) {
+            shard.addCustomer(customer);
+        }
+    }
+
+    public Vehicle findVehicleByPlate(String plate) {
+        if (plate == null) {
+            return null;
+        }
+        RentalSystem shard = plateRoutes.get(plate.toUpperCase());
+        return shard == null ? null : shard.findVehicleByPlate(plate);
+    }
+
+    public Customer findCustomerById(int id) {
+        Customer c = shardForCustomer(id).findCustomerById(id);
+        if (c != null) {
+            return c;
+        }
+        // Customers copied in by rentals live outside their home shard.
+        for (RentalSystem shard : shardList) {
+            c = shard.findCustomerById(id);
+            if (c != null) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    public Customer findCustomerByName(String name) {
+        for (RentalSystem shard : shardList) {
+            Customer c = shard.findCustomerByName(name);
+            if (c != null) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    public List<RentalRecord> getRentalRecordsByVehicle(String licensePlate) {
+        return shardForPlate(licensePlate).getRentalHistory().getRentalRecordsByVehicle(licensePlate);
+    }
+
+    public List<RentalRecord> getRentalRecordsByCustomer(String customerName) {
+        List<RentalRecord> result = new ArrayList<>();
+        for (RentalSystem shard : shardList) {
+            result.addAll(shard.getRentalHistory().getRentalRecordsByCustomer(customerName));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,34 @@
+// One step of the leader's mutation stream. Payloads reuse the text layouts of
+// the data files so followers can parse them with the existing loaders.
+// Snapshot parts carry sequence 0; the SNAPSHOT entry after them carries the
+// sequence the snapshot was taken at.
+public final class ReplicationEntry {
+    public enum Op { VEHICLE, CUSTOMER, HISTORY, RENT, RETURN, STATUS, SNAPSHOT }
+
+    private final long sequence;
+    private final Op op;
+    private final String payload;
+
+    public ReplicationEntry(long sequence, Op op, String payload) {
+        this.sequence = sequence;
+        this.op = op;
+        this.payload = payload;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " | " + op + " | " + payload;
+    }
+}
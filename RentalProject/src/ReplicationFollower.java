@@ -0,0 +1,181 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+// Hot standby: applies the leader's stream to its own RentalSystem (with its
+// own data directory) so indexes stay warm. Gaps in the sequence trigger a
+// catch-up fetch, which may return a snapshot when the leader no longer
+// keeps the missing entries; promote() hands the system over to serve traffic.
+public class ReplicationFollower {
+    private final RentalSystem system;
+    private final ReplicationTransport transport;
+    private final File positionFile;
+    private final String id;
+    private long lastApplied;
+
+    public ReplicationFollower(String dataDir, ReplicationTransport transport) {
+        this.system = new RentalSystem(dataDir);
+        this.transport = transport;
+        this.positionFile = new File(dataDir, "replication_position.txt");
+        this.id = positionFile.getAbsoluteFile().getParent();
+        this.lastApplied = loadPosition();
+        transport.subscribe(this);
+        catchUp();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public synchronized long getLastApplied() {
+        return lastApplied;
+    }
+
+    public RentalSystem getSystem() {
+        return system;
+    }
+
+    public void receive(ReplicationEntry entry) {
+        synchronized (this) {
+            if (entry.getSequence() <= lastApplied) {
+                return;
+            }
+            if (entry.getSequence() == lastApplied + 1) {
+                apply(entry);
+                return;
+            }
+        }
+        catchUp();
+    }
+
+    // Fetches without holding this follower's lock: a snapshot takes the
+    // leader's system lock, which the leader holds while sending to us.
+    public void catchUp() {
+        boolean progressed = true;
+        while (progressed) {
+            progressed = applyBatch(transport.fetchSince(getLastApplied()));
+        }
+    }
+
+    private synchronized boolean applyBatch(List<ReplicationEntry> batch) {
+        long before = lastApplied;
+        if (!batch.isEmpty() && batch.get(batch.size() - 1).getOp() == ReplicationEntry.Op.SNAPSHOT) {
+            applySnapshot(batch);
+        } else {
+            for (ReplicationEntry entry : batch) {
+                if (entry.getSequence() == lastApplied + 1) {
+                    apply(entry);
+                }
+            }
+        }
+        return lastApplied > before;
+    }
+
+    // Snapshot parts are applied idempotently. This system's history is a
+    // prefix of the leader's, so records it already has are skipped.
+    private void applySnapshot(List<ReplicationEntry> snapshot) {
+        long sequence = snapshot.get(snapshot.size() - 1).getSequence();
+        if (sequence <= lastApplied) {
+            return;
+        }
+        int have = system.getRentalHistory().size();
+        int seen = 0;
+        for (ReplicationEntry part : snapshot) {
+            if (part.getOp() == ReplicationEntry.Op.HISTORY && seen++ < have) {
+                continue;
+            }
+            applyOp(part);
+        }
+        lastApplied = sequence;
+        savePosition();
+    }
+
+    // Stops following and returns the warm system, ready to take writes.
+    public synchronized RentalSystem promote() {
+        transport.unsubscribe(this);
+        return system;
+    }
+
+    private void apply(ReplicationEntry entry) {
+        applyOp(entry);
+        lastApplied = entry.getSequence();
+        savePosition();
+    }
+
+    private void applyOp(ReplicationEntry entry) {
+        switch (entry.getOp()) {
+            case VEHICLE:
+                Vehicle vehicle = RentalSystem.parseVehicle(entry.getPayload());
+                if (vehicle != null && system.findVehicleByPlate(vehicle.getLicensePlate()) == null) {
+                    system.addVehicle(vehicle);
+                }
+                break;
+            case CUSTOMER:
+                Customer customer = Customer.parse(entry.getPayload());
+                if (system.findCustomerById(customer.getCustomerId()) == null) {
+                    system.addCustomer(customer);
+                }
+                break;
+            case HISTORY:
+                applyRecord(entry.getPayload(), null);
+                break;
+            case RENT:
+                applyRecord(entry.getPayload(), Vehicle.VehicleStatus.RENTED);
+                break;
+            case RETURN:
+                applyRecord(entry.getPayload(), Vehicle.VehicleStatus.AVAILABLE);
+                break;
+            case STATUS:
+                String[] parts = entry.getPayload().split(",");
+                Vehicle target = system.findVehicleByPlate(parts[0].trim());
+                if (target != null) {
+                    system.updateVehicleStatus(target, Vehicle.VehicleStatus.valueOf(parts[1].trim()));
+                }
+                break;
+            case SNAPSHOT:
+                break;
+        }
+    }
+
+    private long loadPosition() {
+        if (!positionFile.exists()) {
+            return 0;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(positionFile))) {
+            String line = reader.readLine();
+            return line == null ? 0 : Long.parseLong(line.trim());
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Unreadable replication position, catching up from the start.");
+            return 0;
+        }
+    }
+
+    private void savePosition() {
+        try (FileWriter writer = new FileWriter(positionFile, false)) {
+            writer.write(lastApplied + "\n");
+        } catch (IOException e) {
+            System.err.println("Failed to save replication position: " + e.getMessage());
+            return;
+        }
+        transport.acknowledge(this, lastApplied);
+    }
+
+    private void applyRecord(String payload, Vehicle.VehicleStatus newStatus) {
+        String[] parts = payload.split(",");
+        Vehicle vehicle = system.findVehicleByPlate(parts[0].trim());
+        Customer customer = system.findCustomerById(Integer.parseInt(parts[1].trim()));
+        if (vehicle == null || customer == null) {
+            System.err.println("Skipping replicated record for unknown vehicle or customer: " + payload);
+            return;
+        }
+        LocalDate date = LocalDate.parse(parts[2].trim());
+        long amount = Money.parse(parts[3]);
+        LocalDate dueDate = parts.length > 5 ? LocalDate.parse(parts[5].trim()) : null;
+        RentalRecord record = new RentalRecord(vehicle, customer, date, parts[4].trim(), amount, dueDate);
+        system.applyReplicatedRecord(record, newStatus);
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Numbers every mutation of a RentalSystem and ships it over a transport.
+// Only a tail of the stream is kept: entries every registered follower has
+// acknowledged are dropped, and the tail never exceeds MAX_RETAINED even if
+// a follower stalls. A follower that asks for anything older, including a
+// new one at sequence 0, gets a snapshot of the current state instead.
+// Sequence 1 stands for the state loaded from disk, so it is never retained.
+public class ReplicationLeader {
+    static final int MAX_RETAINED = 100_000;
+    // Most entries returned by one entriesSince call; followers poll again.
+    static final int MAX_BATCH = 1024;
+
+    private final RentalSystem system;
+    private final ReplicationTransport transport;
+    private final ArrayDeque<ReplicationEntry> log = new ArrayDeque<>();
+    private final Map<String, Long> acknowledged = new HashMap<>();
+    private long lastSequence = 1;
+    private long trimmedThrough = 1;
+
+    public ReplicationLeader(RentalSystem system, ReplicationTransport transport) {
+        this.system = system;
+        this.transport = transport;
+        transport.connect(this);
+        system.setReplicationLeader(this);
+    }
+
+    public RentalSystem getSystem() {
+        return system;
+    }
+
+    public void vehicleAdded(Vehicle vehicle) {
+        publish(ReplicationEntry.Op.VEHICLE, vehicle.getInfo());
+    }
+
+    public void customerAdded(Customer customer) {
+        publish(ReplicationEntry.Op.CUSTOMER, customer.toString());
+    }
+
+    public void statusChanged(Vehicle vehicle) {
+        publish(ReplicationEntry.Op.STATUS, encodeStatus(vehicle));
+    }
+
+    public void recordAdded(RentalRecord record) {
+        ReplicationEntry.Op op = "RETURN".equals(record.getRecordType())
+                ? ReplicationEntry.Op.RETURN : ReplicationEntry.Op.RENT;
+        publish(op, encodeRecord(record));
+    }
+
+    private void publish(ReplicationEntry.Op op, String payload) {
+        ReplicationEntry entry;
+        synchronized (this) {
+            entry = new ReplicationEntry(++lastSequence, op, payload);
+            log.addLast(entry);
+            trim();
+        }
+        transport.send(entry);
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public synchronized int getRetainedCount() {
+        return log.size();
+    }
+
+    // A follower has durably applied everything up to sequence.
+    public synchronized void acknowledge(String followerId, long sequence) {
+        Long previous = acknowledged.get(followerId);
+        if (previous == null || sequence > previous) {
+            acknowledged.put(followerId, sequence);
+            trim();
+        }
+    }
+
+    // The follower no longer needs the tail kept for it.
+    public synchronized void release(String followerId) {
+        acknowledged.remove(followerId);
+        trim();
+    }
+
+    private void trim() {
+        long keepAfter = Math.max(lastSequence - MAX_RETAINED, minimumAcknowledged());
+        while (!log.isEmpty() && log.peekFirst().getSequence() <= keepAfter) {
+            trimmedThrough = log.removeFirst().getSequence();
+        }
+        if (log.isEmpty()) {
+            trimmedThrough = lastSequence;
+        }
+    }
+
+    private long minimumAcknowledged() {
+        long min = lastSequence;
+        for (long sequence : acknowledged.values()) {
+            min = Math.min(min, sequence);
+        }
+        return min;
+    }
+
+    // Up to MAX_BATCH entries after sequence, or a snapshot when those
+    // entries are no longer retained.
+    public List<ReplicationEntry> entriesSince(long sequence) {
+        synchronized (this) {
+            if (sequence >= trimmedThrough) {
+                List<ReplicationEntry> tail = new ArrayList<>();
+                // Sequences are dense, so entry n sits n - trimmedThrough - 1 from the head.
+                long skip = sequence - trimmedThrough;
+                Iterator<ReplicationEntry> it = log.iterator();
+                for (long i = 0; i < skip && it.hasNext(); i++) {
+                    it.next();
+                }
+                while (it.hasNext() && tail.size() < MAX_BATCH) {
+                    tail.add(it.next());
+                }
+                return tail;
+            }
+        }
+        return snapshot();
+    }
+
+    // The whole state as unsequenced entries, closed by a SNAPSHOT marker
+    // carrying the sequence it corresponds to. Taken under the system lock
+    // so no mutation lands between the state and the sequence.
+    List<ReplicationEntry> snapshot() {
+        synchronized (system) {
+            List<ReplicationEntry> entries = new ArrayList<>();
+            for (Vehicle v : system.getVehicles()) {
+                entries.add(new ReplicationEntry(0, ReplicationEntry.Op.VEHICLE, v.getInfo()));
+            }
+            for (Customer c : system.getCustomers()) {
+                entries.add(new ReplicationEntry(0, ReplicationEntry.Op.CUSTOMER, c.toString()));
+            }
+            for (RentalRecord r : system.getRentalHistory().getRentalHistory()) {
+                entries.add(new ReplicationEntry(0, ReplicationEntry.Op.HISTORY, encodeRecord(r)));
+            }
+            for (Vehicle v : system.getVehicles()) {
+                entries.add(new ReplicationEntry(0, ReplicationEntry.Op.STATUS, encodeStatus(v)));
+            }
+            entries.add(new ReplicationEntry(getLastSequence(), ReplicationEntry.Op.SNAPSHOT, ""));
+            return entries;
+        }
+    }
+
+    public void detach() {
+        system.setReplicationLeader(null);
+    }
+
+    static String encodeStatus(Vehicle vehicle) {
+        return vehicle.getLicensePlate() + "," + vehicle.getStatus();
+    }
+
+    static String encodeRecord(RentalRecord record) {
+        StringBuilder sb = new StringBuilder(48);
+        sb.append(record.getVehicle().getLicensePlate()).append(',').append(record.getCustomer().getCustomerId())
+          .append(',').append(record.getRecordDate()).append(',');
+        Money.appendTo(sb, record.getTotalAmountCents()).append(',').append(record.getRecordType());
+        if (record.getDueDate() != null) {
+            sb.append(',').append(record.getDueDate());
+        }
+        return sb.toString();
+    }
+}
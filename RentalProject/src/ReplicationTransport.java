@@ -0,0 +1,10 @@
+import java.util.List;
+
+public interface ReplicationTransport {
+    void connect(ReplicationLeader leader);
+    void subscribe(ReplicationFollower follower);
+    void unsubscribe(ReplicationFollower follower);
+    void send(ReplicationEntry entry);
+    List<ReplicationEntry> fetchSince(long sequence);
+    void acknowledge(ReplicationFollower follower, long sequence);
+}
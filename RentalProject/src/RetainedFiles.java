@@ -0,0 +1,65 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Copies of files about to be replaced, kept for readers that still hold an
+// older view of them (a snapshot's history). Each copy is a hard link where
+// the file system allows it and is deleted once its owner has been garbage
+// collected. Copies are named "<file>.r<n>"; any found at startup are stale.
+public final class RetainedFiles {
+    private final List<Entry> entries = new ArrayList<>();
+    private int retainedCount;
+
+    // Keeps the current contents of file under a new name for as long as
+    // owner is reachable, and returns that name.
+    public synchronized File retain(File file, Object owner) throws IOException {
+        purge();
+        File copy = new File(file.getPath() + ".r" + (++retainedCount));
+        Files.deleteIfExists(copy.toPath());
+        try {
+            Files.createLink(copy.toPath(), file.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        entries.add(new Entry(owner, copy));
+        return copy;
+    }
+
+    public synchronized void purge() {
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (e.owner.get() == null && (e.file.delete() || !e.file.exists())) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public static void deleteStale(File dir) {
+        File[] stale = dir.listFiles((d, name) -> name.matches(".*\\.r\\d+"));
+        if (stale != null) {
+            for (File f : stale) {
+                f.delete();
+            }
+        }
+    }
+
+    private static final class Entry {
+        final WeakReference<Object> owner;
+        final File file;
+
+        Entry(Object owner, File file) {
+            this.owner = new WeakReference<>(owner);
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Cold-start times of RentalSystem in fresh JVMs: loading from the text
+// files, from the startup image, and from the image with an AppCDS archive.
+//   java StartupBenchmark [vehicles] [runs] [cds-archive]
+//   java StartupBenchmark --train      (workload for building the archive)
+// Each child JVM loads the data directory once and reports how long the
+// RentalSystem constructor took; the parent also times the whole process.
+// The CDS row is skipped unless an archive made by appcds.sh is given.
+public class StartupBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--probe")) {
+            probe(args[1], args.length > 2);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--train")) {
+            String dir = Files.createTempDirectory("startup-train").toString();
+            populate(dir, 2000);
+            probe(dir, true);
+            probe(dir, false);
+            return;
+        }
+        int vehicles = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String archive = args.length > 2 ? args[2] : null;
+
+        String dir = Files.createTempDirectory("startup-bench").toString();
+        System.out.println("Populating " + vehicles + " vehicles and " + vehicles * 4 + " customers in " + dir);
+        populate(dir, vehicles);
+
+        List<String> plain = Collections.emptyList();
+        report("text", time(dir, plain, runs, () -> StartupImage.deleteAll(new File(dir))));
+        runChild(dir, plain, true);
+        report("image", time(dir, plain, runs, null));
+        if (archive != null && new File(archive).isFile()) {
+            report("image+cds", time(dir, Arrays.asList("-XX:SharedArchiveFile=" + archive), runs, null));
+        }
+    }
+
+    // Loads the directory and prints the constructor time; with save, also
+    // closes the system so the next start finds a startup image.
+    private static void probe(String dir, boolean save) {
+        long start = System.nanoTime();
+        RentalSystem system = new RentalSystem(dir);
+        long loaded = System.nanoTime() - start;
+        System.out.println("load-us " + loaded / 1000 + " image " + system.isLoadedFromImage());
+        if (save) {
+            system.close();
+        }
+    }
+
+    // A fleet with a history of status changes, four customers per vehicle
+    // and a few rentals, written through RentalSystem like real traffic.
+    private static void populate(String dir, int vehicles) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        try {
+            RentalSystem system = new RentalSystem(dir);
+            for (int i = 0; i < vehicles; i++) {
+                Vehicle v = i % 3 == 0 ? new Truck("Ford", "Transit", 2018 + i % 6, 1500)
+                        : new Car("Toyota", "Corolla", 2015 + i % 10, 5);
+                v.setLicensePlate(plate(i));
+                system.addVehicle(v);
+            }
+            for (int i = 0; i < vehicles * 4; i++) {
+                system.addCustomer(new Customer(i + 1, "Customer " + i));
+            }
+            List<Vehicle> fleet = system.getVehicles();
+            LocalDate day = LocalDate.of(2024, 1, 1);
+            for (int i = 0; i < fleet.size(); i += 2) {
+                Vehicle v = fleet.get(i);
+                system.updateVehicleStatus(v, Vehicle.VehicleStatus.MAINTENANCE);
+                system.updateVehicleStatus(v, Vehicle.VehicleStatus.AVAILABLE);
+                if (i % 10 == 0) {
+                    system.rentVehicleCents(v, system.getCustomers().get(i), day.plusDays(i % 30), 4500);
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static long[][] time(String dir, List<String> jvmOptions, int runs, Runnable beforeEach) throws IOException, InterruptedException {
+        long[][] samples = new long[runs][];
+        for (int i = 0; i < runs; i++) {
+            if (beforeEach != null) {
+                beforeEach.run();
+            }
+            long start = System.nanoTime();
+            long loadMicros = runChild(dir, jvmOptions, false);
+            samples[i] = new long[] {(System.nanoTime() - start) / 1000, loadMicros};
+        }
+        return samples;
+    }
+
+    private static long runChild(String dir, List<String> jvmOptions, boolean save) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("StartupBenchmark");
+        command.add("--probe");
+        command.add(dir);
+        if (save) {
+            command.add("save");
+        }
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long loadMicros = -1;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("load-us ")) {
+                    loadMicros = Long.parseLong(line.split(" ")[1]);
+                } else {
+                    System.err.println("  child: " + line);
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException("Child JVM exited with " + process.exitValue());
+        }
+        return loadMicros;
+    }
+
+    private static void report(String name, long[][] samples) {
+        long[] process = new long[samples.length];
+        long[] load = new long[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            process[i] = samples[i][0];
+            load[i] = samples[i][1];
+        }
+        Arrays.sort(process);
+        Arrays.sort(load);
+        System.out.printf("%-10s process median %6d ms (min %6d), load median %6d ms (min %6d)%n", name,
+                process[process.length / 2] / 1000, process[0] / 1000, load[load.length / 2] / 1000, load[0] / 1000);
+    }
+
+    private static String plate(int i) {
+        int letters = i / 1000;
+        return "" + (char) ('A' + letters / 676 % 26) + (char) ('A' + letters / 26 % 26) + (char) ('A' + letters % 26)
+                + String.format("%03d", i % 1000);
+    }
+}
@@ -0,0 +1,403 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Binary snapshot of the fleet and customers, written on shutdown and
+// memory-mapped on the next start so vehicles.txt and customers.txt do not
+// have to be parsed and status deltas folded again. Lookups work straight
+// off the mapping: a plate hash table, an availability bitset and a
+// customer table sorted by id. The image records the length, modification
+// time and a checksum of the tail of both text files and is ignored once
+// either changes, so the text journals stay the source of truth. A mapping
+// holds its file open until collected, so every image is written under a
+// new name (startup-<n>.img) instead of being renamed over the last one;
+// older images are deleted once nothing has them mapped.
+//
+// Layout, big-endian, offsets from the start of the file:
+//   header      magic, version, two file fingerprints, status deltas,
+//               counts and section offsets
+//   vehicles    VehicleCodecs records, fleet order
+//   vehicle dir int offset of each record, plus one past the last
+//   plate table slots of (long packed plate, int vehicle index); 0 is empty
+//   available   long bitset over vehicle indexes
+//   customers   (int id, int name offset) in load order
+//   by id       int customer positions sorted by id
+//   names       writeUTF strings
+public final class StartupImage {
+    private static final long MAGIC = 0x5253494D41474531L; // "RSIMAGE1"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 8 + 4 + 2 * 20 + 4 * 3 + 4 * 7;
+    private static final int SLOT_SIZE = 12;
+    private static final int TAIL_BYTES = 4096;
+    private static final String PREFIX = "startup-";
+    private static final String SUFFIX = ".img";
+
+    private final ByteBuffer buffer;
+    private final Fingerprint vehiclesPrint;
+    private final Fingerprint customersPrint;
+    private final int statusDeltas;
+    private final int vehicleCount;
+    private final int customerCount;
+    private final int slots;
+    private final int vehicleDir;
+    private final int plateTable;
+    private final int available;
+    private final int customerTable;
+    private final int byId;
+
+    private StartupImage(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION) {
+            throw new IOException("Not a startup image");
+        }
+        vehiclesPrint = Fingerprint.read(buffer, 12);
+        customersPrint = Fingerprint.read(buffer, 32);
+        statusDeltas = buffer.getInt(52);
+        vehicleCount = buffer.getInt(56);
+        customerCount = buffer.getInt(60);
+        slots = buffer.getInt(64);
+        vehicleDir = buffer.getInt(68);
+        plateTable = buffer.getInt(72);
+        available = buffer.getInt(76);
+        customerTable = buffer.getInt(80);
+        byId = buffer.getInt(84);
+        if (byId + 4L * customerCount > buffer.capacity() || buffer.getInt(88) != buffer.capacity()) {
+            throw new IOException("Truncated startup image");
+        }
+    }
+
+    // Maps the newest image in dir read-only. Returns null when there is
+    // none or it is unreadable; callers then load from text.
+    public static StartupImage open(File dir) {
+        File file = latest(dir);
+        if (file == null) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            return new StartupImage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring startup image " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // The image with the highest generation in dir, or null.
+    static File latest(File dir) {
+        File newest = null;
+        long newestGeneration = -1;
+        for (File f : images(dir)) {
+            long generation = generation(f);
+            if (generation > newestGeneration) {
+                newest = f;
+                newestGeneration = generation;
+            }
+        }
+        return newest;
+    }
+
+    // Removes every image in dir; the next start loads from text.
+    public static void deleteAll(File dir) {
+        for (File f : images(dir)) {
+            f.delete();
+        }
+    }
+
+    private static File[] images(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX) && generation(name) >= 0);
+        return files == null ? new File[0] : files;
+    }
+
+    private static long generation(File file) {
+        return generation(file.getName());
+    }
+
+    private static long generation(String name) {
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    // True when both text files are exactly as they were when the image was written.
+    public boolean matches(File vehiclesFile, File customersFile) {
+        try {
+            return vehiclesPrint.equals(Fingerprint.of(vehiclesFile)) && customersPrint.equals(Fingerprint.of(customersFile));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int getStatusDeltas() {
+        return statusDeltas;
+    }
+
+    public int getVehicleCount() {
+        return vehicleCount;
+    }
+
+    public int getCustomerCount() {
+        return customerCount;
+    }
+
+    public Vehicle readVehicle(int index) {
+        int start = buffer.getInt(vehicleDir + 4 * index);
+        int end = buffer.getInt(vehicleDir + 4 * (index + 1));
+        byte[] record = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(record);
+        return VehicleCodecs.decode(record);
+    }
+
+    // Index of the vehicle with this plate, or -1. Plates longer than seven
+    // characters are not in the table.
+    public int findVehicle(String plate) {
+        long key = pack(plate);
+        if (key == 0 || slots == 0) {
+            return -1;
+        }
+        for (int slot = slotOf(key, slots), probes = 0; probes < slots; slot = (slot + 1) & (slots - 1), probes++) {
+            long stored = buffer.getLong(plateTable + slot * SLOT_SIZE);
+            if (stored == 0) {
+                return -1;
+            }
+            if (stored == key) {
+                return buffer.getInt(plateTable + slot * SLOT_SIZE + 8);
+            }
+        }
+        return -1;
+    }
+
+    // Availability as of the image; statuses change after it is written.
+    public boolean isAvailable(int index) {
+        return (buffer.getLong(available + 8 * (index >>> 6)) & (1L << index)) != 0;
+    }
+
+    public int getAvailableCount() {
+        int count = 0;
+        for (int i = 0; i < (vehicleCount + 63) >>> 6; i++) {
+            count += Long.bitCount(buffer.getLong(available + 8 * i));
+        }
+        return count;
+    }
+
+    public Customer readCustomer(int index) {
+        int entry = customerTable + 8 * index;
+        return new Customer(buffer.getInt(entry), readName(buffer.getInt(entry + 4)));
+    }
+
+    // Load-order index of the customer with this id, or -1; a binary search
+    // over the mapping.
+    public int findCustomer(int id) {
+        int lo = 0;
+        int hi = customerCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int position = buffer.getInt(byId + 4 * mid);
+            int midId = buffer.getInt(customerTable + 8 * position);
+            if (midId < id) {
+                lo = mid + 1;
+            } else if (midId > id) {
+                hi = mid - 1;
+            } else {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private String readName(int offset) {
+        byte[] framed = new byte[2 + (buffer.getShort(offset) & 0xFFFF)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(framed);
+        try {
+            return new DataInputStream(new ByteArrayInputStream(framed)).readUTF();
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt name in startup image", e);
+        }
+    }
+
+    // Writes the next generation of the image into dir and returns it. Older
+    // generations are deleted where the platform allows; one still mapped on
+    // Windows stays until a later write.
+    public static File write(File dir, List<Vehicle> vehicles, List<Customer> customers, int statusDeltas,
+                             File vehiclesFile, File customersFile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + vehicles.size() * 48 + customers.size() * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[HEADER_SIZE]);
+
+        int[] offsets = new int[vehicles.size() + 1];
+        for (int i = 0; i < vehicles.size(); i++) {
+            offsets[i] = out.size();
+            VehicleCodecs.write(vehicles.get(i), out);
+        }
+        offsets[vehicles.size()] = out.size();
+        int vehicleDir = out.size();
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+
+        int slots = Integer.highestOneBit(Math.max(1, vehicles.size()) * 2 - 1) << 1;
+        long[] keys = new long[slots];
+        int[] values = new int[slots];
+        long[] availableBits = new long[(vehicles.size() + 63) >>> 6];
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle v = vehicles.get(i);
+            if (v.getStatus() == Vehicle.VehicleStatus.AVAILABLE) {
+                availableBits[i >>> 6] |= 1L << i;
+            }
+            long key = pack(v.getLicensePlate());
+            if (key == 0) {
+                continue;
+            }
+            int slot = slotOf(key, slots);
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            keys[slot] = key;
+            values[slot] = i;
+        }
+        int plateTable = out.size();
+        for (int s = 0; s < slots; s++) {
+            out.writeLong(keys[s]);
+            out.writeInt(values[s]);
+        }
+        int available = out.size();
+        for (long word : availableBits) {
+            out.writeLong(word);
+        }
+
+        // Names go last, so their offsets are known once the tables are sized.
+        int customerTable = out.size();
+        int byId = customerTable + 8 * customers.size();
+        int names = byId + 4 * customers.size();
+        ByteArrayOutputStream nameBytes = new ByteArrayOutputStream();
+        DataOutputStream nameOut = new DataOutputStream(nameBytes);
+        for (Customer c : customers) {
+            out.writeInt(c.getCustomerId());
+            out.writeInt(names + nameOut.size());
+            nameOut.writeUTF(c.getCustomerName() == null ? "" : c.getCustomerName());
+        }
+        Integer[] order = new Integer[customers.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(customers.get(a).getCustomerId(), customers.get(b).getCustomerId()));
+        for (int position : order) {
+            out.writeInt(position);
+        }
+        nameOut.flush();
+        nameBytes.writeTo(out);
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.wrap(bytes.toByteArray());
+        header.putLong(0, MAGIC).putInt(8, VERSION);
+        Fingerprint.of(vehiclesFile).write(header, 12);
+        Fingerprint.of(customersFile).write(header, 32);
+        header.putInt(52, statusDeltas).putInt(56, vehicles.size()).putInt(60, customers.size())
+              .putInt(64, slots).putInt(68, vehicleDir).putInt(72, plateTable).putInt(76, available)
+              .putInt(80, customerTable).putInt(84, byId).putInt(88, header.capacity());
+
+        File previous = latest(dir);
+        File file = new File(dir, PREFIX + (previous == null ? 1 : generation(previous) + 1) + SUFFIX);
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            Files.write(temp.toPath(), header.array());
+            // A fresh name: nothing can have it mapped.
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+        for (File old : images(dir)) {
+            if (!old.equals(file)) {
+                old.delete();
+            }
+        }
+        new File(dir, "startup.img").delete(); // written before images had generations
+        return file;
+    }
+
+    // Plates are six ASCII characters, so one fits in a long; 0 means none.
+    private static long pack(String plate) {
+        if (plate == null || plate.isEmpty() || plate.length() > 7) {
+            return 0;
+        }
+        long key = 0;
+        for (char c : plate.toUpperCase().toCharArray()) {
+            if (c == 0 || c > 0x7F) {
+                return 0;
+            }
+            key = key << 8 | c;
+        }
+        return key;
+    }
+
+    private static int slotOf(long key, int slots) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (slots - 1);
+    }
+
+    // Identifies one version of a text file cheaply: length, modification
+    // time and a CRC of its last few kilobytes, where appends land.
+    private static final class Fingerprint {
+        private final long length;
+        private final long modified;
+        private final int tailCrc;
+
+        private Fingerprint(long length, long modified, int tailCrc) {
+            this.length = length;
+            this.modified = modified;
+            this.tailCrc = tailCrc;
+        }
+
+        static Fingerprint of(File file) throws IOException {
+            if (!file.exists()) {
+                return new Fingerprint(-1, 0, 0);
+            }
+            CRC32 crc = new CRC32();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                long length = raf.length();
+                byte[] tail = new byte[(int) Math.min(TAIL_BYTES, length)];
+                raf.seek(length - tail.length);
+                raf.readFully(tail);
+                crc.update(tail);
+                return new Fingerprint(length, file.lastModified(), (int) crc.getValue());
+            }
+        }
+
+        static Fingerprint read(ByteBuffer buffer, int at) {
+            return new Fingerprint(buffer.getLong(at), buffer.getLong(at + 8), buffer.getInt(at + 16));
+        }
+
+        void write(ByteBuffer buffer, int at) {
+            buffer.putLong(at, length).putLong(at + 8, modified).putInt(at + 16, tailCrc);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint other = (Fingerprint) o;
+            return length == other.length && modified == other.modified && tailCrc == other.tailCrc;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(length) * 31 + tailCrc;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Rough comparison of the RentalStore backends on the same synthetic workload:
+// write N vehicles, customers and rental records, then load everything back.
+//   java StoreBenchmark [records] [jdbc-url]
+// The JDBC run is skipped unless a URL (and its driver on the classpath) is given.
+public class StoreBenchmark {
+    public static void main(String[] args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        String jdbcUrl = args.length > 1 ? args[1] : null;
+
+        run("file", new FileRentalStore(tempDir("file")), records);
+        run("lsm", new LsmRentalStore(tempDir("lsm")), records);
+        if (jdbcUrl != null) {
+            run("jdbc", new JdbcRentalStore(jdbcUrl), records);
+        }
+    }
+
+    private static void run(String name, RentalStore store, int records) throws IOException {
+        int fleet = Math.max(1, Math.min(records / 10, 26 * 26 * 1000));
+        List<Vehicle> vehicles = new ArrayList<>();
+        List<Customer> customers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < fleet; i++) {
+            Vehicle v = new Car("Toyota", "Corolla", 2015 + i % 10, 5);
+            v.setLicensePlate(plate(i));
+            vehicles.add(v);
+            store.saveVehicle(v);
+            Customer c = new Customer(i + 1, "Customer " + i);
+            customers.add(c);
+            store.saveCustomer(c);
+        }
+        LocalDate day = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < records; i++) {
+            Vehicle v = vehicles.get(i % fleet);
+            Customer c = customers.get((i * 7) % fleet);
+            String type = i % 2 == 0 ? "RENT" : "RETURN";
+            store.saveRecord(new RentalRecord(v, c, day.plusDays(i / fleet), type, 4500L + i % 100));
+        }
+        long written = System.nanoTime();
+        int loaded = store.loadVehicleLines().size() + store.loadCustomerLines().size() + store.loadRecordLines().size();
+        long read = System.nanoTime();
+        store.close();
+        System.out.printf("%-5s write %d records: %6d ms (%.0f/s), load %d lines: %6d ms%n", name, records,
+                (written - start) / 1_000_000, records / ((written - start) / 1e9), loaded, (read - written) / 1_000_000);
+    }
+
+    private static String plate(int i) {
+        int letters = i / 1000;
+        return "" + (char) ('A' + letters / 26 % 26) + (char) ('A' + letters % 26) + 'X' + String.format("%03d", i % 1000);
+    }
+
+    private static String tempDir(String name) throws IOException {
+        return Files.createTempDirectory("store-bench-" + name).toString();
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.function.Consumer;
+
+// Hierarchical timing wheel over integer ticks (the scheduler uses epoch
+// days). Five levels of 64 slots; a timer sits on the level of the highest
+// 6-bit group in which its deadline differs from the current tick and is
+// cascaded down as time reaches that group. schedule and cancel are O(1).
+public class TimerWheel<T> {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 5;
+
+    public static final class Timer<T> {
+        private final long deadline;
+        private final T payload;
+        private Timer<T> prev;
+        private Timer<T> next;
+        private boolean linked;
+
+        private Timer(long deadline, T payload) {
+            this.deadline = deadline;
+            this.payload = payload;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        public boolean isPending() {
+            return linked;
+        }
+    }
+
+    private final Timer<T>[][] slots;
+    private final Timer<T> expired;
+    private long currentTick;
+    private int pending;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long startTick) {
+        this.currentTick = startTick;
+        this.slots = new Timer[LEVELS][SLOTS];
+        for (int l = 0; l < LEVELS; l++) {
+            for (int s = 0; s < SLOTS; s++) {
+                slots[l][s] = sentinel();
+            }
+        }
+        this.expired = sentinel();
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    public int size() {
+        return pending;
+    }
+
+    public Timer<T> schedule(long deadline, T payload) {
+        if (deadline - currentTick >= 1L << (BITS * LEVELS)) {
+            throw new IllegalArgumentException("Deadline too far ahead: " + deadline);
+        }
+        Timer<T> timer = new Timer<>(deadline, payload);
+        place(timer);
+        pending++;
+        return timer;
+    }
+
+    public boolean cancel(Timer<T> timer) {
+        if (timer == null || !timer.linked) {
+            return false;
+        }
+        unlink(timer);
+        pending--;
+        return true;
+    }
+
+    // Moves time forward one tick at a time, handing every timer whose deadline
+    // has been reached to action.
+    public void advanceTo(long tick, Consumer<Timer<T>> action) {
+        fire(expired, action);
+        while (currentTick < tick) {
+            currentTick++;
+            for (int l = LEVELS - 1; l >= 1; l--) {
+                if ((currentTick & ((1L << (BITS * l)) - 1)) == 0) {
+                    cascade(slots[l][(int) ((currentTick >>> (BITS * l)) & (SLOTS - 1))]);
+                }
+            }
+            // Cascaded timers due exactly now land on the expired list.
+            fire(expired, action);
+            fire(slots[0][(int) (currentTick & (SLOTS - 1))], action);
+        }
+    }
+
+    private void cascade(Timer<T> head) {
+        Timer<T> t = head.next;
+        while (t != head) {
+            Timer<T> next = t.next;
+            unlink(t);
+            place(t);
+            t = next;
+        }
+    }
+
+    private void fire(Timer<T> head, Consumer<Timer<T>> action) {
+        while (head.next != head) {
+            Timer<T> t = head.next;
+            unlink(t);
+            pending--;
+            action.accept(t);
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        if (timer.deadline <= currentTick) {
+            link(expired, timer);
+            return;
+        }
+        for (int l = LEVELS - 1; l >= 0; l--) {
+            if ((timer.deadline >>> (BITS * l)) != (currentTick >>> (BITS * l))) {
+                link(slots[l][(int) ((timer.deadline >>> (BITS * l)) & (SLOTS - 1))], timer);
+                return;
+            }
+        }
+    }
+
+    private static <T> void link(Timer<T> head, Timer<T> timer) {
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+        timer.linked = true;
+    }
+
+    private static <T> void unlink(Timer<T> timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+        timer.linked = false;
+    }
+
+    private Timer<T> sentinel() {
+        Timer<T> head = new Timer<>(Long.MIN_VALUE, null);
+        head.prev = head;
+        head.next = head;
+        return head;
+    }
+}
@@ -0,0 +1,289 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+// Weight-bounded cache with W-TinyLFU admission. New entries land in a small
+// LRU window (1% of the weight); whatever falls out of the window only gets
+// into the main segmented LRU (probation + protected) if a count-min sketch
+// says it is used more often than the main region's eviction victim. That
+// keeps one-off lookups from flushing the entries counter staff hit all day.
+public class TinyLfuCache<K, V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final long maxWeight;
+    private final long windowMax;
+    private final long protectedMax;
+    private final ToIntFunction<V> weigher;
+    private final Map<K, Node<V>> data = new HashMap<>();
+    private final List<LinkedHashMap<K, Node<V>>> regions = new ArrayList<>();
+    private final long[] regionWeight = new long[3];
+    private final FrequencySketch sketch;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public TinyLfuCache(long maxWeight, ToIntFunction<V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Cache weight must be > 0");
+        }
+        this.maxWeight = maxWeight;
+        this.windowMax = Math.max(1, maxWeight / 100);
+        this.protectedMax = (maxWeight - windowMax) * 8 / 10;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch((int) Math.min(maxWeight, 1 << 20));
+        for (int i = 0; i < 3; i++) {
+            regions.add(new LinkedHashMap<>());
+        }
+    }
+
+    public synchronized V getIfPresent(K key) {
+        sketch.increment(key.hashCode());
+        Node<V> node = data.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        touch(key, node);
+        return node.value;
+    }
+
+    // The loader runs under the cache lock, so concurrent misses on one key
+    // load it once.
+    public synchronized V get(K key, Function<K, V> loader) {
+        V value = getIfPresent(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        int weight = Math.max(1, weigher.applyAsInt(value));
+        Node<V> old = data.remove(key);
+        if (old != null) {
+            unlink(key, old);
+        }
+        if (weight > maxWeight) {
+            return;
+        }
+        Node<V> node = new Node<>(value, weight, WINDOW);
+        data.put(key, node);
+        link(key, node);
+        evict();
+    }
+
+    public synchronized void invalidate(K key) {
+        Node<V> node = data.remove(key);
+        if (node != null) {
+            unlink(key, node);
+        }
+    }
+
+    public synchronized void invalidateIf(Predicate<K> matches) {
+        Iterator<Map.Entry<K, Node<V>>> it = data.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, Node<V>> e = it.next();
+            if (matches.test(e.getKey())) {
+                unlink(e.getKey(), e.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        data.clear();
+        for (int i = 0; i < 3; i++) {
+            regions.get(i).clear();
+            regionWeight[i] = 0;
+        }
+    }
+
+    public synchronized int size() {
+        return data.size();
+    }
+
+    public synchronized long weight() {
+        return regionWeight[WINDOW] + regionWeight[PROBATION] + regionWeight[PROTECTED];
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries, weight %d/%d, hit rate %.1f%% (%d hits, %d misses, %d evictions)",
+                data.size(), weight(), maxWeight, hitRate() * 100, hits, misses, evictions);
+    }
+
+    private void touch(K key, Node<V> node) {
+        if (node.region == PROBATION) {
+            unlink(key, node);
+            node.region = PROTECTED;
+            link(key, node);
+            // Protected overflow goes back to probation, not out of the cache.
+            while (regionWeight[PROTECTED] > protectedMax) {
+                K demoted = regions.get(PROTECTED).keySet().iterator().next();
+                Node<V> d = data.get(demoted);
+                unlink(demoted, d);
+                d.region = PROBATION;
+                link(demoted, d);
+            }
+        } else {
+            unlink(key, node);
+            link(key, node);
+        }
+    }
+
+    private void evict() {
+        while (regionWeight[WINDOW] > windowMax) {
+            K candidate = regions.get(WINDOW).keySet().iterator().next();
+            Node<V> node = data.get(candidate);
+            unlink(candidate, node);
+            node.region = PROBATION;
+            link(candidate, node);
+            admit(candidate);
+        }
+        while (weight() > maxWeight) {
+            remove(oldest(null));
+        }
+    }
+
+    // The candidate pushed out of the window only stays if the sketch has
+    // seen it more often than the main region's oldest entry.
+    private void admit(K candidate) {
+        while (weight() > maxWeight) {
+            K victim = oldest(candidate);
+            if (victim == null || sketch.frequency(candidate.hashCode()) <= sketch.frequency(victim.hashCode())) {
+                remove(candidate);
+                return;
+            }
+            remove(victim);
+        }
+    }
+
+    private K oldest(K except) {
+        for (int region : new int[] { PROBATION, PROTECTED, WINDOW }) {
+            for (K key : regions.get(region).keySet()) {
+                if (!key.equals(except)) {
+                    return key;
+                }
+                break;
+            }
+        }
+        return null;
+    }
+
+    private void remove(K key) {
+        Node<V> node = data.remove(key);
+        unlink(key, node);
+        evictions++;
+    }
+
+    private void link(K key, Node<V> node) {
+        regions.get(node.region).put(key, node);
+        regionWeight[node.region] += node.weight;
+    }
+
+    private void unlink(K key, Node<V> node) {
+        regions.get(node.region).remove(key);
+        regionWeight[node.region] -= node.weight;
+    }
+
+    private static final class Node<V> {
+        final V value;
+        final int weight;
+        int region;
+
+        Node(V value, int weight, int region) {
+            this.value = value;
+            this.weight = weight;
+            this.region = region;
+        }
+    }
+
+    // Count-min sketch of 4-bit counters, four per row lookup, halved every
+    // 10 * width increments so old popularity fades.
+    private static final class FrequencySketch {
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            table = new long[width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(index(hash, i), counterOffset(hash, i));
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(int hash) {
+            int min = 15;
+            for (int i = 0; i < 4; i++) {
+                min = Math.min(min, (int) ((table[index(hash, i)] >>> counterOffset(hash, i)) & 0xF));
+            }
+            return min;
+        }
+
+        private boolean incrementAt(int index, int offset) {
+            long mask = 0xFL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash + row) * 0x9E3779B9 ^ (hash >>> 16) * (row + 31);
+            h ^= h >>> 15;
+            return h & mask;
+        }
+
+        private int counterOffset(int hash, int row) {
+            return ((hash >>> (row * 4)) & 0xF) << 2;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// How many vehicles of each type sit in each status over time. Counts are
+// gauges driven by status transitions; between transitions they are
+// integrated over time into fixed rings of minute, hour and day buckets, so
+// each bucket holds a time-weighted average plus the min and max seen. Ring
+// sizes bound memory regardless of uptime: a day of minutes, a month of
+// hours and two years of days. Queries read buckets only, never history.
+// Buckets follow the clock passed in (wall-clock time in RentalSystem) at
+// which statuses change, not the dates on rental records, so back-dated or
+// replayed rentals do not move them. The rings can be saved and restored
+// across restarts; counts are not saved but come from the loaded fleet, and
+// time while nothing was running is simply not covered by any bucket.
+public class UtilizationSeries {
+    private static final int MAGIC = 0x55544C31; // "UTL1"
+
+    public enum Resolution {
+        MINUTE(60_000L, 24 * 60), HOUR(3_600_000L, 30 * 24), DAY(86_400_000L, 2 * 366);
+
+        private final long millis;
+        private final int capacity;
+
+        Resolution(long millis, int capacity) {
+            this.millis = millis;
+            this.capacity = capacity;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public long getRetentionMillis() {
+            return millis * capacity;
+        }
+    }
+
+    public static final class Point {
+        private final long start;
+        private final double average;
+        private final int min;
+        private final int max;
+
+        Point(long start, double average, int min, int max) {
+            this.start = start;
+            this.average = average;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public double getAverage() {
+            return average;
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d avg %.2f [%d..%d]", start, average, min, max);
+        }
+    }
+
+    public static final String ALL = "All";
+    public static final String OTHER = "Other";
+    private static final Vehicle.VehicleStatus[] STATUSES = Vehicle.VehicleStatus.values();
+
+    private final LongSupplier clock;
+    private final Map<String, Integer> typeIndex = new LinkedHashMap<>();
+    private final int seriesCount;
+    private final int[] counts;
+    private final Ring[] rings;
+    private long lastUpdate;
+
+    public UtilizationSeries(LongSupplier clock) {
+        this.clock = clock;
+        typeIndex.put(ALL, 0);
+        for (VehicleCodec<?> codec : VehicleCodecs.all()) {
+            typeIndex.putIfAbsent(codec.getTypeName(), typeIndex.size());
+        }
+        typeIndex.put(OTHER, typeIndex.size());
+        seriesCount = typeIndex.size() * STATUSES.length;
+        counts = new int[seriesCount];
+        rings = new Ring[Resolution.values().length];
+        for (Resolution r : Resolution.values()) {
+            rings[r.ordinal()] = new Ring(r);
+        }
+        lastUpdate = clock.getAsLong();
+    }
+
+    public synchronized void vehicleAdded(String type, Vehicle.VehicleStatus status) {
+        advance();
+        adjust(type, status, 1);
+    }
+
+    // Sets the starting count for a vehicle present at load, without
+    // recording a change.
+    public synchronized void vehicleLoaded(String type, Vehicle.VehicleStatus status) {
+        if (status != null) {
+            counts[series(ALL, status)]++;
+            counts[series(type, status)]++;
+        }
+    }
+
+    public synchronized void statusChanged(String type, Vehicle.VehicleStatus oldStatus, Vehicle.VehicleStatus newStatus) {
+        advance();
+        adjust(type, oldStatus, -1);
+        adjust(type, newStatus, 1);
+    }
+
+    private void adjust(String type, Vehicle.VehicleStatus status, int delta) {
+        if (status != null) {
+            bump(series(ALL, status), delta);
+            bump(series(type, status), delta);
+        }
+    }
+
+    private void bump(int s, int delta) {
+        counts[s] += delta;
+        for (Ring ring : rings) {
+            ring.observe(s, counts[s]);
+        }
+    }
+
+    private int series(String type, Vehicle.VehicleStatus status) {
+        Integer t = typeIndex.get(type);
+        return (t == null ? typeIndex.get(OTHER) : t) * STATUSES.length + status.ordinal();
+    }
+
+    // Integrates the current counts from the last update up to now.
+    private void advance() {
+        long now = clock.getAsLong();
+        if (now > lastUpdate) {
+            for (Ring ring : rings) {
+                ring.accumulate(lastUpdate, now);
+            }
+            lastUpdate = now;
+        }
+    }
+
+    public synchronized int getCurrentCount(String type, Vehicle.VehicleStatus status) {
+        return counts[series(type, status)];
+    }
+
+    public List<String> getTypes() {
+        return new ArrayList<>(typeIndex.keySet());
+    }
+
+    // Buckets overlapping [from, to) at the given resolution, oldest first.
+    // The bucket in progress covers the time up to now.
+    public synchronized List<Point> range(String type, Vehicle.VehicleStatus status, Resolution resolution, long from, long to) {
+        advance();
+        return rings[resolution.ordinal()].points(series(type, status), from, to);
+    }
+
+    // Picks the finest resolution that still retains 'from'.
+    public List<Point> range(String type, Vehicle.VehicleStatus status, long from, long to) {
+        long age = clock.getAsLong() - from;
+        for (Resolution r : Resolution.values()) {
+            if (age <= r.getRetentionMillis()) {
+                return range(type, status, r, from, to);
+            }
+        }
+        return range(type, status, Resolution.DAY, from, to);
+    }
+
+    // Writes the rings up to now. Counts are left out; they are rebuilt from
+    // the fleet on load.
+    public synchronized void save(DataOutputStream out) throws IOException {
+        advance();
+        out.writeInt(MAGIC);
+        out.writeInt(typeIndex.size());
+        for (String type : typeIndex.keySet()) {
+            out.writeUTF(type);
+        }
+        out.writeInt(STATUSES.length);
+        for (Ring ring : rings) {
+            ring.save(out);
+        }
+    }
+
+    // Replaces the rings with saved ones. Returns false, leaving them as they
+    // were, when the data was written for other vehicle types or statuses.
+    public synchronized boolean restore(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            return false;
+        }
+        List<String> types = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            types.add(in.readUTF());
+        }
+        if (!types.equals(getTypes()) || in.readInt() != STATUSES.length) {
+            return false;
+        }
+        Ring[] restored = new Ring[rings.length];
+        for (Resolution r : Resolution.values()) {
+            restored[r.ordinal()] = new Ring(r);
+            restored[r.ordinal()].restore(in);
+        }
+        System.arraycopy(restored, 0, rings, 0, rings.length);
+        return true;
+    }
+
+    // One resolution: per slot, which bucket it holds, how much of it has
+    // been observed, and per series the count-milliseconds, min and max.
+    private final class Ring {
+        private final long millis;
+        private final int capacity;
+        private final long[] bucketOf;
+        private final long[] covered;
+        private final long[] integral;
+        private final int[] min;
+        private final int[] max;
+        private long open = Long.MIN_VALUE;
+
+        Ring(Resolution resolution) {
+            millis = resolution.millis;
+            capacity = resolution.capacity;
+            bucketOf = new long[capacity];
+            Arrays.fill(bucketOf, Long.MIN_VALUE);
+            covered = new long[capacity];
+            integral = new long[capacity * seriesCount];
+            min = new int[capacity * seriesCount];
+            max = new int[capacity * seriesCount];
+        }
+
+        void accumulate(long from, long to) {
+            // Buckets older than the ring would be overwritten anyway.
+            long first = Math.max(Math.floorDiv(from, millis), Math.floorDiv(to - 1, millis) - capacity + 1);
+            long last = Math.floorDiv(to - 1, millis);
+            for (long bucket = first; bucket <= last; bucket++) {
+                int slot = openBucket(bucket);
+                long start = Math.max(from, bucket * millis);
+                long end = Math.min(to, (bucket + 1) * millis);
+                long dt = end - start;
+                covered[slot] += dt;
+                int base = slot * seriesCount;
+                for (int s = 0; s < seriesCount; s++) {
+                    integral[base + s] += counts[s] * dt;
+                }
+            }
+        }
+
+        private int openBucket(long bucket) {
+            int slot = (int) Math.floorMod(bucket, (long) capacity);
+            if (bucketOf[slot] != bucket) {
+                bucketOf[slot] = bucket;
+                covered[slot] = 0;
+                int base = slot * seriesCount;
+                for (int s = 0; s < seriesCount; s++) {
+                    integral[base + s] = 0;
+                    min[base + s] = counts[s];
+                    max[base + s] = counts[s];
+                }
+            }
+            open = Math.max(open, bucket);
+            return slot;
+        }
+
+        void observe(int s, int count) {
+            int slot = openBucket(Math.floorDiv(lastUpdate, millis));
+            int i = slot * seriesCount + s;
+            min[i] = Math.min(min[i], count);
+            max[i] = Math.max(max[i], count);
+        }
+
+        // Only slots holding a bucket are written.
+        void save(DataOutputStream out) throws IOException {
+            int used = 0;
+            for (long bucket : bucketOf) {
+                if (bucket != Long.MIN_VALUE) {
+                    used++;
+                }
+            }
+            out.writeLong(open);
+            out.writeInt(used);
+            for (int slot = 0; slot < capacity; slot++) {
+                if (bucketOf[slot] == Long.MIN_VALUE) {
+                    continue;
+                }
+                out.writeLong(bucketOf[slot]);
+                out.writeLong(covered[slot]);
+                int base = slot * seriesCount;
+                for (int s = 0; s < seriesCount; s++) {
+                    out.writeLong(integral[base + s]);
+                    out.writeInt(min[base + s]);
+                    out.writeInt(max[base + s]);
+                }
+            }
+        }
+
+        void restore(DataInputStream in) throws IOException {
+            open = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) {
+                long bucket = in.readLong();
+                int slot = (int) Math.floorMod(bucket, (long) capacity);
+                bucketOf[slot] = bucket;
+                covered[slot] = in.readLong();
+                int base = slot * seriesCount;
+                for (int s = 0; s < seriesCount; s++) {
+                    integral[base + s] = in.readLong();
+                    min[base + s] = in.readInt();
+                    max[base + s] = in.readInt();
+                }
+            }
+        }
+
+        List<Point> points(int s, long from, long to) {
+            List<Point> points = new ArrayList<>();
+            long first = Math.max(Math.floorDiv(from, millis), open - capacity + 1);
+            long last = Math.min(Math.floorDiv(to - 1, millis), open);
+            for (long bucket = first; bucket <= last; bucket++) {
+                int slot = (int) Math.floorMod(bucket, (long) capacity);
+                if (bucketOf[slot] != bucket) {
+                    continue;
+                }
+                int i = slot * seriesCount + s;
+                double average = covered[slot] == 0 ? counts[s] : integral[i] / (double) covered[slot];
+                points.add(new Point(bucket * millis, average, min[i], max[i]));
+            }
+            return points;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Bitmap indexes over vehicle attributes. Each vehicle gets a dense ordinal;
+// every attribute value maps to the bitmap of ordinals holding it, and range
+// attributes keep their bitmaps in a sorted map so ranges become unions.
+public class VehicleBitmapIndex {
+    private final List<Vehicle> byOrdinal = new ArrayList<>();
+    private final Map<Vehicle, Integer> ordinals = new IdentityHashMap<>();
+    private final CompressedBitmap all = new CompressedBitmap();
+    private final Map<String, CompressedBitmap> types = new HashMap<>();
+    private final Map<String, CompressedBitmap> makes = new HashMap<>();
+    private final Map<String, CompressedBitmap> models = new HashMap<>();
+    private final Map<Vehicle.VehicleStatus, CompressedBitmap> statuses = new EnumMap<>(Vehicle.VehicleStatus.class);
+    private final TreeMap<Integer, CompressedBitmap> years = new TreeMap<>();
+    private final TreeMap<Integer, CompressedBitmap> seats = new TreeMap<>();
+    private final TreeMap<Double, CompressedBitmap> cargoCapacities = new TreeMap<>();
+    private final TreeMap<Integer, CompressedBitmap> horsepowers = new TreeMap<>();
+    private final CompressedBitmap sidecars = new CompressedBitmap();
+    private final CompressedBitmap turbos = new CompressedBitmap();
+
+    public synchronized void add(Vehicle vehicle) {
+        if (ordinals.containsKey(vehicle)) {
+            return;
+        }
+        int id = byOrdinal.size();
+        byOrdinal.add(vehicle);
+        ordinals.put(vehicle, id);
+        all.add(id);
+        bucket(types, vehicle.getClass().getSimpleName().toLowerCase()).add(id);
+        if (vehicle.getMake() != null) {
+            bucket(makes, vehicle.getMake().toLowerCase()).add(id);
+        }
+        if (vehicle.getModel() != null) {
+            bucket(models, vehicle.getModel().toLowerCase()).add(id);
+        }
+        bucket(statuses, vehicle.getStatus()).add(id);
+        bucket(years, vehicle.getYear()).add(id);
+        if (vehicle instanceof Car) {
+            bucket(seats, ((Car) vehicle).getNumSeats()).add(id);
+        }
+        if (vehicle instanceof SportCar) {
+            SportCar sportCar = (SportCar) vehicle;
+            bucket(horsepowers, sportCar.getHorsepower()).add(id);
+            if (sportCar.hasTurbo()) {
+                turbos.add(id);
+            }
+        }
+        if (vehicle instanceof Truck) {
+            bucket(cargoCapacities, ((Truck) vehicle).getCargoCapacity()).add(id);
+        }
+        if (vehicle instanceof Motorcycle && ((Motorcycle) vehicle).hasSidecar()) {
+            sidecars.add(id);
+        }
+    }
+
+    public synchronized void statusChanged(Vehicle vehicle, Vehicle.VehicleStatus oldStatus) {
+        Integer id = ordinals.get(vehicle);
+        if (id == null || oldStatus == vehicle.getStatus()) {
+            return;
+        }
+        if (oldStatus != null && statuses.containsKey(oldStatus)) {
+            statuses.get(oldStatus).remove(id);
+        }
+        bucket(statuses, vehicle.getStatus()).add(id);
+    }
+
+    public synchronized int size() {
+        return byOrdinal.size();
+    }
+
+    public synchronized List<Vehicle> find(VehicleQuery query) {
+        CompressedBitmap hits = query.evaluate(this);
+        List<Vehicle> result = new ArrayList<>(hits.cardinality());
+        hits.forEach(id -> result.add(byOrdinal.get(id)));
+        return result;
+    }
+
+    public synchronized int count(VehicleQuery query) {
+        return query.evaluate(this).cardinality();
+    }
+
+    // The matching ordinals as a bitmap of the caller's own.
+    public synchronized CompressedBitmap match(VehicleQuery query) {
+        return query.evaluate(this).copy();
+    }
+
+    // -1 for a vehicle that is not indexed.
+    public synchronized int ordinal(Vehicle vehicle) {
+        Integer id = ordinals.get(vehicle);
+        return id == null ? -1 : id;
+    }
+
+    CompressedBitmap all() {
+        return all;
+    }
+
+    CompressedBitmap type(String type) {
+        return orEmpty(types.get(type.toLowerCase()));
+    }
+
+    CompressedBitmap make(String make) {
+        return orEmpty(makes.get(make.toLowerCase()));
+    }
+
+    CompressedBitmap model(String model) {
+        return orEmpty(models.get(model.toLowerCase()));
+    }
+
+    CompressedBitmap status(Vehicle.VehicleStatus status) {
+        return orEmpty(statuses.get(status));
+    }
+
+    CompressedBitmap sidecars() {
+        return sidecars;
+    }
+
+    CompressedBitmap turbos() {
+        return turbos;
+    }
+
+    CompressedBitmap years(int from, boolean fromInclusive, int to, boolean toInclusive) {
+        return range(years, from, fromInclusive, to, toInclusive);
+    }
+
+    CompressedBitmap seats(int from, boolean fromInclusive, int to, boolean toInclusive) {
+        return range(seats, from, fromInclusive, to, toInclusive);
+    }
+
+    CompressedBitmap horsepower(int from, boolean fromInclusive, int to, boolean toInclusive) {
+        return range(horsepowers, from, fromInclusive, to, toInclusive);
+    }
+
+    CompressedBitmap cargoCapacity(double from, boolean fromInclusive, double to, boolean toInclusive) {
+        return range(cargoCapacities, from, fromInclusive, to, toInclusive);
+    }
+
+    private static <K extends Comparable<K>> CompressedBitmap range(TreeMap<K, CompressedBitmap> map,
+            K from, boolean fromInclusive, K to, boolean toInclusive) {
+        if (from.compareTo(to) > 0) {
+            return new CompressedBitmap();
+        }
+        return union(map.subMap(from, fromInclusive, to, toInclusive).values());
+    }
+
+    static CompressedBitmap union(Collection<CompressedBitmap> bitmaps) {
+        CompressedBitmap result = new CompressedBitmap();
+        for (CompressedBitmap bitmap : bitmaps) {
+            result = CompressedBitmap.or(result, bitmap);
+        }
+        return result;
+    }
+
+    private static CompressedBitmap orEmpty(CompressedBitmap bitmap) {
+        return bitmap == null ? new CompressedBitmap() : bitmap;
+    }
+
+    private static <K> CompressedBitmap bucket(Map<K, CompressedBitmap> map, K key) {
+        CompressedBitmap bitmap = map.get(key);
+        if (bitmap == null) {
+            bitmap = new CompressedBitmap();
+            map.put(key, bitmap);
+        }
+        return bitmap;
+    }
+}
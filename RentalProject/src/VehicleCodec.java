@@ -0,0 +1,26 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+// Serialization for one concrete Vehicle class, registered in VehicleCodecs.
+// The text side reads the "Label: value" details that getInfo() appends after
+// the common fields; the binary side writes fixed-size subclass fields after
+// the common header.
+public interface VehicleCodec<T extends Vehicle> {
+    byte getTypeId();
+
+    Class<T> getType();
+
+    String getTypeName();
+
+    // Detail labels in getInfo() order, e.g. "Seats", "Horsepower", "Turbo".
+    List<String> getDetailLabels();
+
+    T fromDetails(String make, String model, int year, Map<String, String> details);
+
+    void writeFields(T vehicle, DataOutput out) throws IOException;
+
+    T readFields(String make, String model, int year, DataInput in) throws IOException;
+}
@@ -0,0 +1,262 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Registry of vehicle codecs, keyed by type byte, by class and by the
+// detail-label signature of the text layout. New vehicle types plug in with
+// register() instead of another branch in the parser.
+//
+// Binary layout: type id (1), status ordinal (1), year (2), plate (6 ASCII
+// bytes, zeros when unset), make and model (modified UTF-8), then the
+// codec's fixed-size fields.
+public final class VehicleCodecs {
+    private static final int PLATE_LENGTH = 6;
+
+    private static final VehicleCodec<?>[] byId = new VehicleCodec<?>[256];
+    private static final Map<Class<?>, VehicleCodec<?>> byClass = new ConcurrentHashMap<>();
+    private static final Map<String, VehicleCodec<?>> bySignature = new ConcurrentHashMap<>();
+
+    static {
+        register(new CarCodec());
+        register(new SportCarCodec());
+        register(new TruckCodec());
+        register(new MotorcycleCodec());
+    }
+
+    private VehicleCodecs() {
+    }
+
+    public static synchronized void register(VehicleCodec<?> codec) {
+        int id = codec.getTypeId() & 0xFF;
+        if (byId[id] != null && byId[id].getType() != codec.getType()) {
+            throw new IllegalArgumentException("Type id " + id + " is already used by " + byId[id].getTypeName());
+        }
+        byId[id] = codec;
+        byClass.put(codec.getType(), codec);
+        bySignature.put(signature(codec.getDetailLabels()), codec);
+    }
+
+    public static Collection<VehicleCodec<?>> all() {
+        List<VehicleCodec<?>> codecs = new ArrayList<>();
+        for (VehicleCodec<?> codec : byId) {
+            if (codec != null) {
+                codecs.add(codec);
+            }
+        }
+        return Collections.unmodifiableList(codecs);
+    }
+
+    public static VehicleCodec<?> forId(byte typeId) {
+        return byId[typeId & 0xFF];
+    }
+
+    // Exact class first; subclasses nobody registered use their nearest registered ancestor.
+    @SuppressWarnings("unchecked")
+    public static <T extends Vehicle> VehicleCodec<T> forVehicle(T vehicle) {
+        for (Class<?> c = vehicle.getClass(); c != Vehicle.class && c != null; c = c.getSuperclass()) {
+            VehicleCodec<?> codec = byClass.get(c);
+            if (codec != null) {
+                if (c != vehicle.getClass()) {
+                    byClass.putIfAbsent(vehicle.getClass(), codec);
+                }
+                return (VehicleCodec<T>) codec;
+            }
+        }
+        return null;
+    }
+
+    public static String typeName(Vehicle vehicle) {
+        VehicleCodec<?> codec = forVehicle(vehicle);
+        return codec == null ? "Unknown" : codec.getTypeName();
+    }
+
+    // Parses the Vehicle.getInfo() layout:
+    // "| PLATE | Make | Model | Year | STATUS | Label: value | ...".
+    // Returns null when the line is short or no codec has its detail labels.
+    public static Vehicle parseInfo(String line) {
+        String[] parts = line.split("\\|");
+        List<String> tokens = new ArrayList<>();
+        for (String part : parts) {
+            if (!part.trim().isEmpty()) {
+                tokens.add(part.trim());
+            }
+        }
+        if (tokens.size() < 6) {
+            return null;
+        }
+        Map<String, String> details = new LinkedHashMap<>();
+        for (String token : tokens.subList(5, tokens.size())) {
+            int colon = token.indexOf(':');
+            if (colon < 0) {
+                return null;
+            }
+            details.put(token.substring(0, colon).trim(), token.substring(colon + 1).trim());
+        }
+        VehicleCodec<?> codec = bySignature.get(signature(details.keySet()));
+        if (codec == null) {
+            return null;
+        }
+        Vehicle vehicle = codec.fromDetails(tokens.get(1), tokens.get(2), Integer.parseInt(tokens.get(3)), details);
+        vehicle.setLicensePlate(tokens.get(0));
+        vehicle.setStatus(Vehicle.VehicleStatus.valueOf(tokens.get(4)));
+        return vehicle;
+    }
+
+    public static byte[] encode(Vehicle vehicle) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(vehicle, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Vehicle decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            return read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static <T extends Vehicle> void write(T vehicle, DataOutput out) throws IOException {
+        VehicleCodec<T> codec = forVehicle(vehicle);
+        if (codec == null) {
+            throw new IllegalArgumentException("No codec registered for " + vehicle.getClass().getName());
+        }
+        out.writeByte(codec.getTypeId());
+        out.writeByte(vehicle.getStatus().ordinal());
+        out.writeShort(vehicle.getYear());
+        byte[] plate = new byte[PLATE_LENGTH];
+        if (vehicle.getLicensePlate() != null) {
+            byte[] ascii = vehicle.getLicensePlate().getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(ascii, 0, plate, 0, Math.min(ascii.length, PLATE_LENGTH));
+        }
+        out.write(plate);
+        out.writeUTF(vehicle.getMake() == null ? "" : vehicle.getMake());
+        out.writeUTF(vehicle.getModel() == null ? "" : vehicle.getModel());
+        codec.writeFields(vehicle, out);
+    }
+
+    public static Vehicle read(DataInput in) throws IOException {
+        byte typeId = in.readByte();
+        VehicleCodec<?> codec = forId(typeId);
+        if (codec == null) {
+            throw new IOException("Unknown vehicle type id " + (typeId & 0xFF));
+        }
+        Vehicle.VehicleStatus status = Vehicle.VehicleStatus.values()[in.readUnsignedByte()];
+        int year = in.readShort();
+        byte[] plate = new byte[PLATE_LENGTH];
+        in.readFully(plate);
+        String make = in.readUTF();
+        String model = in.readUTF();
+        Vehicle vehicle = codec.readFields(make.isEmpty() ? null : make, model.isEmpty() ? null : model, year, in);
+        if (plate[0] != 0) {
+            vehicle.setLicensePlate(new String(plate, StandardCharsets.US_ASCII));
+        }
+        vehicle.setStatus(status);
+        return vehicle;
+    }
+
+    private static String signature(Collection<String> labels) {
+        return String.join("|", labels).toLowerCase();
+    }
+
+    private static boolean yes(String value) {
+        return value.equalsIgnoreCase("Yes");
+    }
+
+    private static final class CarCodec implements VehicleCodec<Car> {
+        public byte getTypeId() { return 1; }
+        public Class<Car> getType() { return Car.class; }
+        public String getTypeName() { return "Car"; }
+        public List<String> getDetailLabels() { return Arrays.asList("Seats"); }
+
+        public Car fromDetails(String make, String model, int year, Map<String, String> details) {
+            return new Car(make, model, year, Integer.parseInt(details.get("Seats")));
+        }
+
+        public void writeFields(Car car, DataOutput out) throws IOException {
+            out.writeInt(car.getNumSeats());
+        }
+
+        public Car readFields(String make, String model, int year, DataInput in) throws IOException {
+            return new Car(make, model, year, in.readInt());
+        }
+    }
+
+    private static final class SportCarCodec implements VehicleCodec<SportCar> {
+        public byte getTypeId() { return 2; }
+        public Class<SportCar> getType() { return SportCar.class; }
+        public String getTypeName() { return "SportCar"; }
+        public List<String> getDetailLabels() { return Arrays.asList("Seats", "Horsepower", "Turbo"); }
+
+        public SportCar fromDetails(String make, String model, int year, Map<String, String> details) {
+            return new SportCar(make, model, year, Integer.parseInt(details.get("Seats")),
+                    Integer.parseInt(details.get("Horsepower")), yes(details.get("Turbo")));
+        }
+
+        public void writeFields(SportCar car, DataOutput out) throws IOException {
+            out.writeInt(car.getNumSeats());
+            out.writeInt(car.getHorsepower());
+            out.writeBoolean(car.hasTurbo());
+        }
+
+        public SportCar readFields(String make, String model, int year, DataInput in) throws IOException {
+            return new SportCar(make, model, year, in.readInt(), in.readInt(), in.readBoolean());
+        }
+    }
+
+    private static final class TruckCodec implements VehicleCodec<Truck> {
+        public byte getTypeId() { return 3; }
+        public Class<Truck> getType() { return Truck.class; }
+        public String getTypeName() { return "Truck"; }
+        public List<String> getDetailLabels() { return Arrays.asList("Cargo Capacity"); }
+
+        public Truck fromDetails(String make, String model, int year, Map<String, String> details) {
+            return new Truck(make, model, year, Double.parseDouble(details.get("Cargo Capacity")));
+        }
+
+        public void writeFields(Truck truck, DataOutput out) throws IOException {
+            out.writeDouble(truck.getCargoCapacity());
+        }
+
+        public Truck readFields(String make, String model, int year, DataInput in) throws IOException {
+            return new Truck(make, model, year, in.readDouble());
+        }
+    }
+
+    private static final class MotorcycleCodec implements VehicleCodec<Motorcycle> {
+        public byte getTypeId() { return 4; }
+        public Class<Motorcycle> getType() { return Motorcycle.class; }
+        public String getTypeName() { return "Motorcycle"; }
+        public List<String> getDetailLabels() { return Arrays.asList("Sidecar"); }
+
+        public Motorcycle fromDetails(String make, String model, int year, Map<String, String> details) {
+            return new Motorcycle(make, model, year, yes(details.get("Sidecar")));
+        }
+
+        public void writeFields(Motorcycle motorcycle, DataOutput out) throws IOException {
+            out.writeBoolean(motorcycle.hasSidecar());
+        }
+
+        public Motorcycle readFields(String make, String model, int year, DataInput in) throws IOException {
+            return new Motorcycle(make, model, year, in.readBoolean());
+        }
+    }
+}
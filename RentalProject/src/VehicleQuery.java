@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+// Multi-predicate filter over a VehicleBitmapIndex. Predicates added with the
+// builder methods are ANDed; or() combines whole queries. Example:
+//   VehicleQuery.where().type("Truck").status(AVAILABLE).cargoAbove(5).builtAfter(2018)
+public class VehicleQuery {
+    private final List<Function<VehicleBitmapIndex, CompressedBitmap>> clauses = new ArrayList<>();
+
+    public static VehicleQuery where() {
+        return new VehicleQuery();
+    }
+
+    // Exact class name, e.g. "Car" does not include SportCar.
+    public VehicleQuery type(String... typeNames) {
+        return add(index -> {
+            List<CompressedBitmap> bitmaps = new ArrayList<>();
+            for (String type : typeNames) {
+                bitmaps.add(index.type(type));
+            }
+            return VehicleBitmapIndex.union(bitmaps);
+        });
+    }
+
+    public VehicleQuery make(String make) {
+        return add(index -> index.make(make));
+    }
+
+    public VehicleQuery model(String model) {
+        return add(index -> index.model(model));
+    }
+
+    public VehicleQuery status(Vehicle.VehicleStatus status) {
+        return add(index -> index.status(status));
+    }
+
+    public VehicleQuery builtAfter(int year) {
+        return add(index -> index.years(year, false, Integer.MAX_VALUE, true));
+    }
+
+    public VehicleQuery builtBetween(int fromYear, int toYear) {
+        return add(index -> index.years(fromYear, true, toYear, true));
+    }
+
+    public VehicleQuery seatsAtLeast(int seats) {
+        return add(index -> index.seats(seats, true, Integer.MAX_VALUE, true));
+    }
+
+    public VehicleQuery withSidecar() {
+        return add(VehicleBitmapIndex::sidecars);
+    }
+
+    public VehicleQuery cargoAbove(double capacity) {
+        return add(index -> index.cargoCapacity(capacity, false, Double.MAX_VALUE, true));
+    }
+
+    public VehicleQuery horsepowerAbove(int horsepower) {
+        return add(index -> index.horsepower(horsepower, false, Integer.MAX_VALUE, true));
+    }
+
+    public VehicleQuery withTurbo() {
+        return add(VehicleBitmapIndex::turbos);
+    }
+
+    // Adds all of other's predicates as one clause.
+    public VehicleQuery and(VehicleQuery other) {
+        return add(other::evaluate);
+    }
+
+    public VehicleQuery or(VehicleQuery other) {
+        VehicleQuery left = copy();
+        VehicleQuery combined = new VehicleQuery();
+        return combined.add(index -> CompressedBitmap.or(left.evaluate(index), other.evaluate(index)));
+    }
+
+    CompressedBitmap evaluate(VehicleBitmapIndex index) {
+        CompressedBitmap result = null;
+        for (Function<VehicleBitmapIndex, CompressedBitmap> clause : clauses) {
+            CompressedBitmap bitmap = clause.apply(index);
+            result = result == null ? bitmap : CompressedBitmap.and(result, bitmap);
+            if (result.isEmpty()) {
+                return result;
+            }
+        }
+        return result == null ? index.all().copy() : result;
+    }
+
+    private VehicleQuery copy() {
+        VehicleQuery copy = new VehicleQuery();
+        copy.clauses.addAll(clauses);
+        return copy;
+    }
+
+    private VehicleQuery add(Function<VehicleBitmapIndex, CompressedBitmap> clause) {
+        clauses.add(clause);
+        return this;
+    }
+}
@@ -1,8 +1,83 @@
 import java.util.Scanner;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.util.List;
 
 public class VehicleRentalApp {
+    // Clerks may type an ID, part of a name or a misspelling. Only an ID or a
+    // name that matches exactly one customer is taken as is; anything else,
+    // even a single close match, is listed so the clerk confirms the choice.
+    private static Customer pickCustomer(Scanner scanner, RentalSystem rentalSystem) {
+        System.out.print("Enter customer ID or name (or the start of it): ");
+        String input = scanner.nextLine();
+        if (input.trim().matches("\\d+")) {
+            Customer byId = rentalSystem.findCustomerById(Integer.parseInt(input.trim()));
+            if (byId != null) {
+                return byId;
+            }
+        }
+        List<Customer> matches = rentalSystem.searchCustomers(input, 5);
+        String name = CustomerNameIndex.normalize(input);
+        Customer exact = null;
+        int exactCount = 0;
+        for (Customer c : matches) {
+            if (CustomerNameIndex.normalize(c.getCustomerName()).equals(name)) {
+                exact = c;
+                exactCount++;
+            }
+        }
+        if (exactCount == 1) {
+            return exact;
+        }
+        if (matches.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < matches.size(); i++) {
+            System.out.println("  " + (i + 1) + ": " + matches.get(i));
+        }
+        System.out.print("Choose customer (0 for none): ");
+        int pick = scanner.nextInt();
+        scanner.nextLine();
+        return pick >= 1 && pick <= matches.size() ? matches.get(pick - 1) : null;
+    }
+
+    // --batch [file] runs commands from the file, or from stdin when no file
+    // or "-" is given, without menus. Output is buffered and flushed at the
+    // end with a summary; the exit status is 1 if any command failed.
+    private static int runBatch(String source) {
+        PrintStream console = System.out;
+        PrintStream buffered = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        System.setOut(buffered);
+        RentalSystem rentalSystem = RentalSystem.getInstance();
+        try (BufferedReader in = source == null || source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(source), StandardCharsets.UTF_8)) {
+            BatchRunner.Summary summary = new BatchRunner(rentalSystem, LocalDate.now()).run(in, buffered);
+            buffered.print(summary);
+            return summary.getFailed() == 0 ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Error reading batch input: " + e.getMessage());
+            return 2;
+        } finally {
+            rentalSystem.close();
+            buffered.flush();
+            System.setOut(console);
+        }
+    }
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(runBatch(args.length > 1 ? args[1] : null));
+        }
         Scanner scanner = new Scanner(System.in);
         RentalSystem rentalSystem = RentalSystem.getInstance();
 
@@ -75,19 +150,17 @@ public class VehicleRentalApp {
                     System.out.print("Enter license plate: ");
                     String rentPlate = scanner.nextLine().toUpperCase();
 
-                	System.out.println("Registered Customers:");
-                	rentalSystem.displayAllCustomers();
+                    Customer customerToRent = pickCustomer(scanner, rentalSystem);
 
-                    System.out.print("Enter customer name: ");
-                    String cnameRent = scanner.nextLine();
+                    Vehicle vehicleToRent = rentalSystem.findVehicleByPlate(rentPlate);
 
+                    if (vehicleToRent != null) {
+                        System.out.println("Quoted daily rate: $" + rentalSystem.quote(vehicleToRent, LocalDate.now(), 1));
+                    }
                     System.out.print("Enter rental amount: ");
                     double rentAmount = scanner.nextDouble();
                     scanner.nextLine();
 
-                    Vehicle vehicleToRent = rentalSystem.findVehicleByPlate(rentPlate);
-                    Customer customerToRent = rentalSystem.findCustomerByName(cnameRent);
-
                     if (vehicleToRent == null || customerToRent == null) {
                         System.out.println("Vehicle or customer not found.");
                         break;
@@ -103,18 +176,13 @@ public class VehicleRentalApp {
                 	System.out.print("Enter license plate: ");
                     String returnPlate = scanner.nextLine().toUpperCase();
                     
-                	System.out.println("Registered Customers:");
-                	rentalSystem.displayAllCustomers();
-
-                    System.out.print("Enter customer name: ");
-                    String cnameReturn = scanner.nextLine();
+                    Customer customerToReturn = pickCustomer(scanner, rentalSystem);
 
                     System.out.print("Enter return fees: ");
                     double returnFees = scanner.nextDouble();
                     scanner.nextLine();
 
                     Vehicle vehicleToReturn = rentalSystem.findVehicleByPlate(returnPlate);
-                    Customer customerToReturn = rentalSystem.findCustomerByName(cnameReturn);
 
                     if (vehicleToReturn == null || customerToReturn == null) {
                         System.out.println("Vehicle or customer not found.");
@@ -135,6 +203,7 @@ public class VehicleRentalApp {
                     
                 case 7:
                 	scanner.close();
+                	rentalSystem.close();
                     System.exit(0);
             }
         }
@@ -2,10 +2,26 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import java.io.*;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 class VehicleRentalTest {
 	@Test
@@ -38,6 +54,9 @@ class VehicleRentalTest {
     private Vehicle testMotorcycle;
     private Customer testCustomer;
     
+    @TempDir
+    File tempDir;
+    
     @BeforeEach
     void setUp() {
      
@@ -211,4 +230,1285 @@ class VehicleRentalTest {
         assertTrue(output.contains("XYZ789"), "Should display available motorcycle");
         assertFalse(output.contains("ABC123"), "Should not display rented car");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Sharded Depots Route Lookups")
+    void testShardedRouting() throws IOException {
+        RentalSystemRouter router = new RentalSystemRouter(tempDir.getPath(), "north", "south");
+        
+        assertTrue(router.addVehicle("north", testCar));
+        assertTrue(router.addVehicle("south", testMotorcycle));
+        assertFalse(router.addVehicle("south", testCar), "Plate should be unique across depots");
+        assertTrue(router.addCustomer(testCustomer));
+        
+        assertTrue(router.rentVehicle(testMotorcycle, testCustomer, LocalDate.now(), 20.0));
+        assertNull(router.getShard("north").findVehicleByPlate("XYZ789"), "Shards should not share vehicles");
+        assertSame(testMotorcycle, router.findVehicleByPlate("xyz789"));
+        assertEquals(1, router.getRentalRecordsByVehicle("XYZ789").size());
+        
+        RentalSystemRouter reopened = new RentalSystemRouter(tempDir.getPath(), "north", "south");
+        assertNotNull(reopened.findVehicleByPlate("ABC123"), "Depot files should reload per shard");
+        assertNotNull(reopened.getShard("south").findCustomerById(1001), "Renting customer should be copied into the vehicle's depot");
+    }
+
+    @Test
+    @DisplayName("Follower Catches Up After Missed Entries")
+    void testReplicationCatchUp() throws IOException {
+        RentalSystem primary = new RentalSystem(new File(tempDir, "leader").getPath());
+        primary.addVehicle(testCar);
+        
+        LoopbackTransport transport = new LoopbackTransport();
+        ReplicationLeader leader = new ReplicationLeader(primary, transport);
+        ReplicationFollower follower = new ReplicationFollower(new File(tempDir, "standby").getPath(), transport);
+        assertNotNull(follower.getSystem().findVehicleByPlate("ABC123"), "Existing state should be shipped on connect");
+        
+        primary.addCustomer(testCustomer);
+        transport.setConnected(false);
+        primary.rentVehicle(testCar, testCustomer, LocalDate.now(), 50.0);
+        transport.setConnected(true);
+        primary.addVehicle(testMotorcycle);
+        
+        assertEquals(leader.getLastSequence(), follower.getLastApplied(), "Gap should trigger catch-up");
+        assertEquals(0, leader.getRetainedCount(), "Entries every follower acknowledged should be dropped");
+        RentalSystem promoted = follower.promote();
+        assertEquals(Vehicle.VehicleStatus.RENTED, promoted.findVehicleByPlate("ABC123").getStatus());
+        assertNotNull(promoted.findVehicleByPlate("XYZ789"));
+        assertEquals(1, promoted.getRentalHistory().getRentalRecordsByVehicle("ABC123").size());
+        
+        // A follower joining after truncation starts from a snapshot.
+        ReplicationFollower late = new ReplicationFollower(new File(tempDir, "late").getPath(), transport);
+        assertEquals(leader.getLastSequence(), late.getLastApplied());
+        assertEquals(Vehicle.VehicleStatus.RENTED, late.getSystem().findVehicleByPlate("ABC123").getStatus());
+        assertEquals(1, late.getSystem().getRentalHistory().size());
+        primary.returnVehicle(testCar, testCustomer, LocalDate.now(), 0.0);
+        assertEquals(2, late.getSystem().getRentalHistory().size());
+    }
+
+    @Test
+    @DisplayName("Recovery Drops Torn Tail And Reports Corruption")
+    void testJournalRecovery() throws IOException {
+        File journal = new File(tempDir, "journal.txt");
+        JournalFile.append(journal.getPath(), "first");
+        JournalFile.append(journal.getPath(), "second");
+        JournalFile.append(journal.getPath(), "third");
+        long intactLength = journal.length();
+        
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.seek(1);
+            raf.write('X');
+            raf.seek(intactLength);
+            raf.write(JournalFile.seal("fourth").substring(0, 8).getBytes());
+        }
+        
+        RecoveryReport report = JournalFile.recover(journal.getPath(), true);
+        assertEquals(2, report.getLines().size(), "Corrupt first line and torn tail should be dropped");
+        assertEquals("second", report.getLines().get(0));
+        assertEquals(2, report.getCorruptRanges().size());
+        assertEquals(8, report.getTruncatedBytes());
+        assertEquals(intactLength, journal.length(), "Torn tail should be truncated");
+        
+        File legacy = new File(tempDir, "legacy.txt");
+        Files.write(legacy.toPath(), "ID: 1 | Name: A\nID: 2 | Name: B".getBytes());
+        assertEquals(2, JournalFile.recover(legacy.getPath(), true).getLines().size());
+        assertEquals("ID: 1 | Name: A\nID: 2 | Name: B\n", new String(Files.readAllBytes(legacy.toPath())),
+                "Unterminated line without a checksum should be kept and terminated");
+        
+        // A write torn inside the body has lost its suffix too; after checksummed
+        // lines it must not pass as a legacy line.
+        File torn = new File(tempDir, "torn.txt");
+        JournalFile.append(torn.getPath(), "first");
+        long sealedLength = torn.length();
+        String rent = JournalFile.seal("RENT | Plate: ABC123 | Customer: 1 | Date: 2024-06-01 | Amount: $125.50");
+        Files.write(torn.toPath(), rent.substring(0, rent.indexOf("$12") + 3).getBytes(), StandardOpenOption.APPEND);
+        RecoveryReport tornReport = JournalFile.recover(torn.getPath(), true);
+        assertEquals(1, tornReport.getLines().size());
+        assertEquals(0, tornReport.getUnverifiedLines());
+        assertEquals(1, tornReport.getCorruptRanges().size());
+        assertEquals(sealedLength, torn.length(), "Torn body should be truncated");
+    }
+
+    @Test
+    @DisplayName("Pricing Follows Type Rules And Demand")
+    void testPricingEngine() {
+        PricingEngine pricing = new PricingEngine();
+        SportCar turbo = new SportCar("Porsche", "911", 2022, 2, 400, true);
+        turbo.setLicensePlate("SPT001");
+        pricing.vehicleAdded(testCar);
+        pricing.vehicleAdded(turbo);
+        LocalDate april = LocalDate.of(2024, 4, 10);
+        
+        assertEquals(45.0, pricing.dailyRate(testCar, april), 0.001);
+        assertEquals(155.0, pricing.dailyRate(turbo, april), 0.001);
+        assertEquals(135.0, pricing.quote(testCar, april, 3), 0.001);
+        
+        testCar.setStatus(Vehicle.VehicleStatus.RENTED);
+        pricing.vehicleRented(testCar);
+        assertTrue(pricing.dailyRate(testCar, april) > 45.0, "Fully rented type should price higher");
+        assertFalse(pricing.quoteAvailable(Arrays.asList(testCar, turbo), april, 1).containsKey("ABC123"));
+    }
+
+    @Test
+    @DisplayName("Money Round Trips As Exact Cents")
+    void testMoneyCents() {
+        assertEquals(5000, Money.parse("$50.0"));
+        assertEquals(1999, Money.parse("19.99"));
+        assertEquals(-1005, Money.parse("-10.045"), "Third decimal should round half up");
+        assertEquals(1000000000, Money.parse("1.0E7"), "Legacy exponent amounts should still parse");
+        assertEquals("0.07", Money.format(7));
+        assertEquals("-12.30", Money.format(-1230));
+        
+        RentalRecord record = new RentalRecord(testCar, testCustomer, LocalDate.of(2024, 1, 2), 0.1 + 0.2, "RENT");
+        assertEquals(30, record.getTotalAmountCents());
+        assertTrue(record.toString().endsWith("Amount: $0.30"));
+        
+        RentalHistory history = new RentalHistory();
+        for (int i = 0; i < 1000; i++) {
+            history.addRecord(new RentalRecord(testCar, testCustomer, LocalDate.now(), "RENT", 10));
+        }
+        assertEquals(10000, history.getTotalAmountCentsByCustomer(1001));
+    }
+
+    @Test
+    @DisplayName("Customer Search By Prefix And Typo")
+    void testCustomerNameSearch() {
+        rentalSystem.addCustomer(testCustomer);
+        rentalSystem.addCustomer(new Customer(1002, "Jane Smith"));
+        rentalSystem.addCustomer(new Customer(1003, "Johnny Walker"));
+        
+        assertSame(testCustomer, rentalSystem.findCustomerByName("  john   DOE "));
+        assertEquals(2, rentalSystem.searchCustomers("joh", 5).size(), "Prefix should match both Johns");
+        assertEquals(1002, rentalSystem.searchCustomers("smi", 5).get(0).getCustomerId(), "Prefix should match last names");
+        assertEquals(1002, rentalSystem.searchCustomers("Jane Smtih", 5).get(0).getCustomerId(), "Typo should still match");
+        assertTrue(rentalSystem.searchCustomers("Zelda", 5).isEmpty());
+        
+        // Two edits is the limit, at any name length.
+        CustomerNameIndex index = new CustomerNameIndex();
+        index.add(new Customer(1, "Jo Do"));
+        index.add(new Customer(2, "Bartholomew Kuznetsova"));
+        assertEquals(1, index.fuzzy("Joe Doe", 5).size());
+        assertEquals(2, index.fuzzy("bartholomew kuzentsova", 5).get(0).getCustomerId());
+        assertTrue(index.fuzzy("Bartholomew Kuz", 5).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Bitmap Queries Combine Attribute Filters")
+    void testVehicleQueries() {
+        String[] plates = {"TRK001", "TRK002", "TRK003", "SPT001", "SPT002"};
+        Vehicle[] fleet = {
+            new Truck("Volvo", "Fh", 2020, 8.0),
+            new Truck("Volvo", "Fl", 2015, 12.0),
+            new Truck("Man", "Tgx", 2021, 3.5),
+            new SportCar("Porsche", "911", 2022, 2, 450, true),
+            new SportCar("Mazda", "Mx5", 2019, 2, 180, false)
+        };
+        for (int i = 0; i < fleet.length; i++) {
+            fleet[i].setLicensePlate(plates[i]);
+            rentalSystem.addVehicle(fleet[i]);
+        }
+        rentalSystem.addCustomer(testCustomer);
+        
+        VehicleQuery bigNewTrucks = VehicleQuery.where().type("Truck").status(Vehicle.VehicleStatus.AVAILABLE).cargoAbove(5).builtAfter(2018);
+        assertEquals(1, rentalSystem.findVehicles(bigNewTrucks).size());
+        assertEquals("TRK001", rentalSystem.findVehicles(bigNewTrucks).get(0).getLicensePlate());
+        
+        rentalSystem.rentVehicle(fleet[0], testCustomer, LocalDate.now(), 100.0);
+        assertTrue(rentalSystem.findVehicles(bigNewTrucks).isEmpty(), "Rented truck should drop out of AVAILABLE");
+        
+        VehicleQuery fastTurbo = VehicleQuery.where().type("SportCar").withTurbo().horsepowerAbove(400);
+        assertEquals(1, rentalSystem.findVehicles(fastTurbo).size());
+        assertEquals(2, rentalSystem.findVehicles(fastTurbo.or(VehicleQuery.where().make("man"))).size());
+    }
+
+    @Test
+    @DisplayName("Compressed Bitmap Switches Containers")
+    void testCompressedBitmap() {
+        CompressedBitmap evens = new CompressedBitmap();
+        CompressedBitmap small = new CompressedBitmap();
+        for (int i = 0; i < 200000; i += 2) {
+            evens.add(i);
+        }
+        for (int i = 0; i < 10; i++) {
+            small.add(i);
+        }
+        small.add(150000);
+        small.add(150001);
+        
+        assertEquals(100000, evens.cardinality());
+        assertEquals(6, CompressedBitmap.and(evens, small).cardinality());
+        assertEquals(100006, CompressedBitmap.or(evens, small).cardinality());
+        for (int i = 0; i < 65536; i += 2) {
+            evens.remove(i);
+        }
+        assertEquals(100000 - 32768, evens.cardinality());
+        assertFalse(evens.contains(2));
+        assertTrue(evens.contains(65536));
+    }
+
+    @Test
+    @DisplayName("Active Rentals Match Returns And List Overdue")
+    void testActiveRentals() {
+        rentalSystem.addVehicle(testCar);
+        rentalSystem.addVehicle(testMotorcycle);
+        rentalSystem.addCustomer(testCustomer);
+        Customer other = new Customer(1002, "Jane Smith");
+        rentalSystem.addCustomer(other);
+        LocalDate start = LocalDate.of(2024, 3, 1);
+        
+        rentalSystem.rentVehicleCents(testCar, testCustomer, start, start.plusDays(2), 9000);
+        rentalSystem.rentVehicle(testMotorcycle, testCustomer, start, 30.0);
+        assertEquals(2, rentalSystem.getRentalsByCustomer(1001).size());
+        assertEquals(9000, rentalSystem.getActiveRental("abc123").getAmountCents());
+        assertEquals(1, rentalSystem.getOverdueRentals(start.plusDays(5)).size(), "Only the car is past due");
+        
+        assertFalse(rentalSystem.returnVehicle(testCar, other, start.plusDays(1), 0.0), "Wrong customer should be rejected");
+        assertEquals(Vehicle.VehicleStatus.RENTED, testCar.getStatus());
+        assertTrue(rentalSystem.returnVehicle(testCar, testCustomer, start.plusDays(1), 0.0));
+        assertNull(rentalSystem.getActiveRental("ABC123"));
+        assertEquals(1, rentalSystem.getRentalsByCustomer(1001).size());
+    }
+
+    @Test
+    @DisplayName("Scheduler Fires Overdue Alerts And Maintenance")
+    void testScheduler() {
+        rentalSystem.addVehicle(testCar);
+        rentalSystem.addVehicle(testMotorcycle);
+        rentalSystem.addCustomer(testCustomer);
+        List<String> overdue = new ArrayList<>();
+        RentalScheduler scheduler = rentalSystem.getScheduler();
+        scheduler.addListener(new RentalScheduler.Listener() {
+            public void overdue(ActiveRental rental, LocalDate today) {
+                overdue.add(rental.getVehicle().getLicensePlate());
+            }
+            public void maintenanceDue(Vehicle vehicle, String reason, LocalDate today) {
+            }
+        });
+        scheduler.setServiceUsage(10);
+        LocalDate today = scheduler.getToday();
+        
+        rentalSystem.rentVehicleCents(testCar, testCustomer, today, today.plusDays(3), 100);
+        rentalSystem.rentVehicleCents(testMotorcycle, testCustomer, today, today.plusDays(30), 100);
+        rentalSystem.advanceClock(today.plusDays(3));
+        assertTrue(overdue.isEmpty(), "Nothing is late on the due date");
+        rentalSystem.advanceClock(today.plusDays(4));
+        assertEquals(Arrays.asList("ABC123"), overdue);
+        
+        rentalSystem.returnVehicle(testMotorcycle, testCustomer, today.plusDays(12), 0.0);
+        assertEquals(Vehicle.VehicleStatus.MAINTENANCE, testMotorcycle.getStatus(), "Usage rule should send it to maintenance");
+        scheduler.serviceCompleted(testMotorcycle, today.plusDays(13));
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, testMotorcycle.getStatus());
+        
+        rentalSystem.advanceClock(today.plusDays(13 + 180));
+        assertEquals(Vehicle.VehicleStatus.MAINTENANCE, testMotorcycle.getStatus(), "Interval rule should fire after 180 days");
+        assertEquals(1, overdue.size(), "Returned car alert should not repeat");
+    }
+
+    @Test
+    @DisplayName("Timer Wheel Cascades Far Deadlines")
+    void testTimerWheel() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(100);
+        List<Long> fired = new ArrayList<>();
+        int[] deadlines = {101, 164, 4096, 5000, 300000, 262244};
+        for (int d : deadlines) {
+            wheel.schedule(d, d);
+        }
+        TimerWheel.Timer<Integer> cancelled = wheel.schedule(200, 200);
+        assertTrue(wheel.cancel(cancelled));
+        
+        wheel.advanceTo(5000, t -> {
+            assertEquals(t.getDeadline(), (long) t.getPayload());
+            fired.add(t.getDeadline());
+        });
+        assertEquals(Arrays.asList(101L, 164L, 4096L, 5000L), fired);
+        wheel.advanceTo(400000, t -> fired.add(t.getDeadline()));
+        assertEquals(Arrays.asList(101L, 164L, 4096L, 5000L, 262244L, 300000L), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("Status Deltas Survive Restart And Compact")
+    void testVehicleStatusDeltas() throws IOException {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        system.addVehicle(testCar);
+        system.addVehicle(testMotorcycle);
+        system.addCustomer(testCustomer);
+        system.rentVehicle(testCar, testCustomer, LocalDate.now(), 50.0);
+        system.updateVehicleStatus(testMotorcycle, Vehicle.VehicleStatus.MAINTENANCE);
+        
+        RentalSystem reloaded = new RentalSystem(tempDir.getPath());
+        assertEquals(Vehicle.VehicleStatus.RENTED, reloaded.findVehicleByPlate("ABC123").getStatus());
+        assertEquals(Vehicle.VehicleStatus.MAINTENANCE, reloaded.findVehicleByPlate("XYZ789").getStatus());
+        assertEquals(2, reloaded.getVehicles().size());
+        
+        reloaded.compactVehicles();
+        List<String> lines = Files.readAllLines(new File(tempDir, "vehicles.txt").toPath());
+        assertEquals(2, lines.size(), "Compaction should leave one line per vehicle");
+        assertEquals(Vehicle.VehicleStatus.MAINTENANCE, new RentalSystem(tempDir.getPath()).findVehicleByPlate("XYZ789").getStatus());
+    }
+
+    @Test
+    @DisplayName("LSM Store Backs RentalSystem Across Restarts")
+    void testLsmStore() throws IOException {
+        RentalSystem system = new RentalSystem(new LsmRentalStore(tempDir.getPath(), 4));
+        system.addVehicle(testCar);
+        system.addVehicle(testMotorcycle);
+        system.addCustomer(testCustomer);
+        LocalDate day = LocalDate.of(2024, 5, 1);
+        for (int i = 0; i < 10; i++) {
+            system.rentVehicle(testCar, testCustomer, day.plusDays(2 * i), 40.0);
+            system.returnVehicle(testCar, testCustomer, day.plusDays(2 * i + 1), 0.0);
+        }
+        system.rentVehicle(testMotorcycle, testCustomer, day, 25.0);
+        system.close();
+        
+        LsmRentalStore store = new LsmRentalStore(tempDir.getPath(), 4);
+        RentalSystem reopened = new RentalSystem(store);
+        assertEquals(Vehicle.VehicleStatus.RENTED, reopened.findVehicleByPlate("XYZ789").getStatus());
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, reopened.findVehicleByPlate("ABC123").getStatus());
+        assertEquals(21, reopened.getRentalHistory().getRentalHistory().size());
+        assertNotNull(store.getCustomerLine(1001));
+        assertTrue(store.getVehicleLine("xyz789").contains("RENTED"));
+        assertEquals(3, store.getRecordLines(day, day.plusDays(1)).size(), "Range scan should cover two days");
+        RentalHistory history = reopened.getRentalHistory();
+        assertTrue(history.isLazy(), "Stored records should be read through the store's index");
+        List<RentalRecord> page = history.getRentalRecordsByVehicle("abc123", 4, 3);
+        assertEquals(3, page.size());
+        assertEquals("RENT", page.get(0).getRecordType());
+        assertEquals(day.plusDays(4), page.get(0).getRecordDate());
+        assertEquals(21, history.getRentalRecordsByCustomer(testCustomer.getCustomerName()).size());
+        reopened.returnVehicle(reopened.findVehicleByPlate("XYZ789"), reopened.findCustomerById(1001), day.plusDays(3), 5.0);
+        assertEquals(2, history.getRentalRecordsByVehicle("XYZ789").size());
+        reopened.close();
+        
+        // A store written before the index existed is indexed on open.
+        LsmTree tree = new LsmTree(tempDir, 4);
+        for (String key : tree.scan("x/", "x0").keySet()) {
+            tree.delete(key);
+        }
+        tree.delete("m/record-index");
+        tree.close();
+        RentalSystem migrated = new RentalSystem(new LsmRentalStore(tempDir.getPath(), 4));
+        assertEquals(20, migrated.getRentalHistory().getRentalRecordsByVehicle("ABC123").size());
+        assertEquals(2, migrated.getRentalHistory().getRentalRecordsByVehicle("XYZ789").size());
+        migrated.close();
+        
+        // A crash after the merged table was written, with only the oldest
+        // table still on disk, must not bring back a key deleted later.
+        File treeDir = new File(tempDir, "tree");
+        tree = new LsmTree(treeDir, 100);
+        tree.put("a", "1");
+        tree.put("b", "2");
+        tree.flush();
+        tree.delete("a");
+        tree.flush();
+        File[] old = treeDir.listFiles((d, n) -> n.endsWith(".sst"));
+        Arrays.sort(old);
+        byte[] oldest = Files.readAllBytes(old[0].toPath());
+        tree.compact();
+        tree.close();
+        String combined = treeDir.listFiles((d, n) -> n.endsWith(".sst"))[0].getName();
+        Files.write(old[0].toPath(), oldest);
+        List<String> log = new ArrayList<>();
+        log.add(combined);
+        for (File f : old) {
+            log.add(f.getName());
+        }
+        Files.write(new File(treeDir, "compact.log").toPath(), log);
+        tree = new LsmTree(treeDir, 100);
+        assertNull(tree.get("a"), "Deleted key came back after an interrupted compaction");
+        assertEquals("2", tree.get("b"));
+        assertEquals(1, treeDir.listFiles((d, n) -> n.endsWith(".sst")).length);
+        assertFalse(new File(treeDir, "compact.log").exists());
+        tree.close();
+    }
+
+    @Test
+    @DisplayName("File History Is Paged From Disk After Restart")
+    void testLazyHistory() throws IOException {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        system.addVehicle(testCar);
+        system.addVehicle(testMotorcycle);
+        system.addCustomer(testCustomer);
+        LocalDate day = LocalDate.of(2024, 5, 1);
+        for (int i = 0; i < 5; i++) {
+            system.rentVehicle(testCar, testCustomer, day.plusDays(2 * i), 40.0);
+            system.returnVehicle(testCar, testCustomer, day.plusDays(2 * i + 1), 0.0);
+        }
+        system.rentVehicle(testMotorcycle, testCustomer, day, 25.0);
+        
+        RentalSystem reopened = new RentalSystem(tempDir.getPath());
+        RentalHistory history = reopened.getRentalHistory();
+        assertTrue(history.isLazy());
+        assertEquals(11, history.size());
+        assertEquals(22500, history.getTotalAmountCents());
+        assertNotNull(reopened.getActiveRental("XYZ789"), "Open rental should be replayed from the index");
+        List<RentalRecord> page = history.getRentalRecordsByVehicle("abc123", 4, 3);
+        assertEquals(3, page.size());
+        assertEquals("RENT", page.get(0).getRecordType());
+        assertEquals(day.plusDays(4), page.get(0).getRecordDate());
+        
+        Vehicle motorcycle = reopened.findVehicleByPlate("XYZ789");
+        reopened.returnVehicle(motorcycle, reopened.findCustomerById(testCustomer.getCustomerId()), day.plusDays(3), 5.0);
+        assertEquals(12, history.getRentalRecordsByCustomer(testCustomer.getCustomerName()).size());
+        assertEquals(2, history.getRentalRecordsByVehicle("XYZ789").size());
+    }
+
+    @Test
+    @DisplayName("Old Months Move To Compressed Archive Segments")
+    void testHistoryArchive() throws IOException {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        system.addVehicle(testCar);
+        system.addVehicle(testMotorcycle);
+        system.addCustomer(testCustomer);
+        LocalDate day = LocalDate.of(2024, 1, 5);
+        for (int month = 0; month < 3; month++) {
+            for (int i = 0; i < 4; i++) {
+                LocalDate start = day.plusMonths(month).plusDays(3 * i);
+                system.rentVehicle(testCar, testCustomer, start, 40.0);
+                system.returnVehicle(testCar, testCustomer, start.plusDays(1), 0.0);
+            }
+        }
+        system.rentVehicle(testMotorcycle, testCustomer, LocalDate.of(2024, 1, 2), 25.0);
+        long total = system.getRentalHistory().getTotalAmountCents();
+        RentalSnapshot beforeArchive = system.getSnapshot();
+        
+        assertTrue(system.archiveHistory(LocalDate.of(2024, 3, 15)));
+        assertEquals(25, beforeArchive.getRentalRecordCount(), "An archive run should not change older snapshots");
+        assertEquals(25, beforeArchive.getRentalRecords().size());
+        assertEquals(2, new File(tempDir, "history").listFiles((d, n) -> n.endsWith(".seg")).length);
+        List<String> journal = Files.readAllLines(new File(tempDir, "rental_records.txt").toPath());
+        assertEquals(9, journal.size(), "March records and the open January rental stay in the journal");
+        
+        RentalSystem reopened = new RentalSystem(tempDir.getPath());
+        RentalHistory history = reopened.getRentalHistory();
+        assertEquals(25, history.size());
+        assertEquals(total, history.getTotalAmountCents());
+        assertNotNull(reopened.getActiveRental("XYZ789"));
+        assertEquals(4, history.getRentalRecordsBetween(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 10)).size());
+        assertTrue(history.getRentalRecordsBetween(LocalDate.of(2024, 2, 10), LocalDate.of(2024, 1, 1)).isEmpty(), "A reversed range matches nothing");
+        assertEquals(1, history.getArchive().getSegmentsRead(), "Only the February segment should be inflated");
+        assertEquals(24, history.getRentalRecordsByVehicle("ABC123").size());
+        assertEquals(LocalDate.of(2024, 2, 5), history.getRentalRecordsByVehicle("ABC123", 8, 1).get(0).getRecordDate());
+        
+        // A run that rewrites the journal and merges into an archived month
+        // leaves a snapshot reading the journal offsets and segments it saw.
+        Vehicle car = reopened.findVehicleByPlate("ABC123");
+        Customer customer = reopened.findCustomerById(testCustomer.getCustomerId());
+        reopened.rentVehicle(car, customer, LocalDate.of(2024, 2, 20), 40.0);
+        reopened.returnVehicle(car, customer, LocalDate.of(2024, 2, 21), 0.0);
+        RentalSnapshot pinned = reopened.getSnapshot();
+        List<String> seen = new ArrayList<>();
+        for (RentalRecord r : pinned.getRentalRecords()) {
+            seen.add(r.toLine());
+        }
+        assertTrue(reopened.archiveHistory(LocalDate.of(2024, 4, 1)));
+        assertEquals(27, pinned.getRentalRecordCount());
+        List<String> after = new ArrayList<>();
+        for (RentalRecord r : pinned.getRentalRecords()) {
+            after.add(r.toLine());
+        }
+        assertEquals(seen, after);
+        assertTrue(history.getArchive().getRetainedCount() > 0, "The replaced February segment should be retained");
+        assertEquals(27, reopened.getSnapshot().getRentalRecordCount());
+        
+        // Merging into a month whose records no longer all resolve aborts
+        // instead of writing a smaller segment.
+        File historyDir = new File(tempDir, "history");
+        HistoryArchive partial = new HistoryArchive(historyDir,
+                plate -> plate.equalsIgnoreCase("ABC123") ? null : reopened.findVehicleByPlate(plate), reopened::findCustomerById);
+        int archived = partial.size();
+        List<RentalRecord> late = new ArrayList<>();
+        late.add(new RentalRecord(car, customer, LocalDate.of(2024, 1, 28), "RETURN", 0));
+        assertThrows(IOException.class, () -> partial.archive(late, LocalDate.of(2024, 2, 1)));
+        assertEquals(archived, new HistoryArchive(historyDir, reopened::findVehicleByPlate, reopened::findCustomerById).size());
+    }
+
+    @Test
+    @DisplayName("Vehicle Codecs Round-Trip Every Type")
+    void testVehicleCodecs() {
+        SportCar sport = new SportCar("Porsche", "911", 2022, 2, 450, true);
+        sport.setLicensePlate("SPT001");
+        Truck truck = new Truck("Volvo", "FH16", 2018, 12.5);
+        truck.setLicensePlate("TRK001");
+        truck.setStatus(Vehicle.VehicleStatus.MAINTENANCE);
+        for (Vehicle v : new Vehicle[] { testCar, testMotorcycle, sport, truck }) {
+            byte[] bytes = VehicleCodecs.encode(v);
+            Vehicle decoded = VehicleCodecs.decode(bytes);
+            assertEquals(v.getClass(), decoded.getClass());
+            assertEquals(v.getInfo(), decoded.getInfo());
+            assertEquals(v.getInfo(), RentalSystem.parseVehicle(v.getInfo()).getInfo());
+        }
+        assertEquals("SportCar", VehicleCodecs.typeName(sport));
+        assertNull(RentalSystem.parseVehicle("| ABC123 | Toyota | Corolla | 2020 | AVAILABLE | Wings: 2"));
+    }
+
+    @Test
+    @DisplayName("History Queries Are Cached And Invalidated On Rentals")
+    void testQueryCache() {
+        rentalSystem.addVehicle(testCar);
+        rentalSystem.addCustomer(testCustomer);
+        RentalHistory history = rentalSystem.getRentalHistory();
+        int before = history.getRentalRecordsByVehicle("ABC123").size();
+        history.getRentalRecordsByVehicle("ABC123");
+        assertTrue(history.getQueryCache().getHits() >= 1);
+        
+        rentalSystem.rentVehicle(testCar, testCustomer, LocalDate.now(), 40.0);
+        assertEquals(before + 1, history.getRentalRecordsByVehicle("ABC123").size(), "Rent should invalidate the cached page");
+        rentalSystem.returnVehicle(testCar, testCustomer, LocalDate.now(), 0.0);
+        assertEquals(before + 2, history.getRentalRecordsByVehicle("ABC123").size());
+        rentalSystem.addVehicle(testMotorcycle);
+        long hits = history.getQueryCache().getHits();
+        rentalSystem.rentVehicle(testMotorcycle, testCustomer, LocalDate.now(), 20.0);
+        assertEquals(before + 2, history.getRentalRecordsByVehicle("ABC123").size());
+        assertEquals(hits + 1, history.getQueryCache().getHits(), "Another plate's rental should not evict the page");
+        
+        // Hot keys survive a scan of one-off lookups.
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100, v -> 1);
+        for (int round = 0; round < 20; round++) {
+            for (int k = 0; k < 10; k++) {
+                cache.get(k, String::valueOf);
+            }
+        }
+        for (int k = 1000; k < 3000; k++) {
+            cache.get(k, String::valueOf);
+        }
+        for (int k = 0; k < 10; k++) {
+            assertNotNull(cache.getIfPresent(k), "Hot key " + k + " was evicted by the scan");
+        }
+        assertTrue(cache.weight() <= 100);
+    }
+
+    @Test
+    @DisplayName("Snapshots Stay Consistent While Writers Continue")
+    void testSnapshots() throws IOException {
+        PersistentVector<Integer> v = PersistentVector.empty();
+        for (int i = 0; i < 40_000; i++) {
+            v = v.plus(i);
+        }
+        PersistentVector<Integer> changed = v.with(12_345, -1).with(39_999, -2);
+        assertEquals(12_345, (long) v.get(12_345));
+        assertEquals(-1, (long) changed.get(12_345));
+        assertEquals(-2, (long) changed.get(39_999));
+        assertEquals(40_000, changed.size());
+        
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        system.addVehicle(testCar);
+        system.addCustomer(testCustomer);
+        RentalSnapshot before = system.getSnapshot();
+        system.rentVehicle(testCar, testCustomer, LocalDate.now(), 40.0);
+        system.addVehicle(testMotorcycle);
+        RentalSnapshot after = system.getSnapshot();
+        
+        assertEquals(1, before.getFleet().size());
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, before.getFleet().get(0).getStatus());
+        assertEquals(0, before.getRentalRecordCount());
+        assertEquals(2, after.getFleet().size());
+        assertEquals(Vehicle.VehicleStatus.RENTED, after.getFleet().get(0).getStatus());
+        assertEquals(1, after.getRentalRecords().size());
+        assertTrue(after.getVersion() > before.getVersion());
+        assertThrows(UnsupportedOperationException.class, () -> system.getVehicles().add(testCar));
+    }
+
+    @Test
+    @DisplayName("Event Log Projections Rebuild In Parallel And Catch Drift")
+    void testEventSourcing() throws IOException {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        system.addVehicle(testCar);
+        system.addVehicle(testMotorcycle);
+        system.addCustomer(testCustomer);
+        LocalDate day = LocalDate.of(2024, 6, 1);
+        system.rentVehicle(testCar, testCustomer, day, 40.0);
+        system.returnVehicle(testCar, testCustomer, day.plusDays(2), 5.0);
+        system.rentVehicle(testMotorcycle, testCustomer, day, 25.0);
+        system.updateVehicleStatus(testCar, Vehicle.VehicleStatus.MAINTENANCE);
+        assertTrue(system.verifyEventLog().isEmpty(), system.verifyEventLog().toString());
+        
+        List<RentalEvent> events = system.getEventLog().getEvents();
+        assertEquals(RentalEvent.Type.STATUS_CHANGED, events.get(events.size() - 1).getType());
+        EventProjection serial = EventProjection.fold(events);
+        assertTrue(serial.diff(EventProjection.rebuild(events, 8)).isEmpty());
+        assertEquals(7000, serial.getTotalCents(testCustomer.getCustomerId()));
+        
+        // A restart seeds the log from stored state and still agrees with it.
+        RentalSystem reopened = new RentalSystem(tempDir.getPath());
+        assertTrue(reopened.verifyEventLog().isEmpty(), reopened.verifyEventLog().toString());
+        
+        reopened.findVehicleByPlate("ABC123").setStatus(Vehicle.VehicleStatus.AVAILABLE);
+        assertEquals(1, reopened.verifyEventLog().size());
+        assertEquals(1, reopened.restoreStatusFromEvents());
+        assertEquals(Vehicle.VehicleStatus.MAINTENANCE, reopened.findVehicleByPlate("ABC123").getStatus());
+        
+        // The baseline comes from the record journal, not the stored status:
+        // a car stored as RENTED without an open rental is caught on restart.
+        reopened.updateVehicleStatus(reopened.findVehicleByPlate("ABC123"), Vehicle.VehicleStatus.RENTED);
+        RentalSystem restarted = new RentalSystem(tempDir.getPath());
+        assertEquals(1, restarted.verifyEventLog().size(), restarted.verifyEventLog().toString());
+        assertEquals(1, restarted.restoreStatusFromEvents());
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, restarted.findVehicleByPlate("ABC123").getStatus());
+        assertEquals(Vehicle.VehicleStatus.RENTED, restarted.findVehicleByPlate("XYZ789").getStatus());
+        
+        // A bounded log folds old events away without changing the projection.
+        EventLog bounded = new EventLog(4);
+        List<RentalEvent> all = new ArrayList<>();
+        all.add(bounded.append(seq -> new RentalEvent.VehicleAdded(seq, testCar)));
+        all.add(bounded.append(seq -> new RentalEvent.VehicleAdded(seq, testMotorcycle)));
+        Vehicle.VehicleStatus[] cycle = Vehicle.VehicleStatus.values();
+        for (int i = 0; i < 20; i++) {
+            Vehicle.VehicleStatus from = cycle[i % cycle.length];
+            Vehicle.VehicleStatus to = cycle[(i + 1) % cycle.length];
+            String plate = i % 3 == 0 ? "XYZ789" : "ABC123";
+            all.add(bounded.append(seq -> new RentalEvent.StatusChanged(seq, plate, from, to)));
+        }
+        assertTrue(bounded.getEvents().size() <= 4);
+        assertEquals(22, bounded.getLastSequence());
+        assertEquals(22, bounded.since(21).get(0).getSequence());
+        assertTrue(EventProjection.fold(all).diff(bounded.project(3)).isEmpty());
+    }
+    
+    @Test
+    @DisplayName("Subscribers Consume The Change Feed At Their Own Pace")
+    void testEventSubscriptions() throws Exception {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        List<RentalEvent.Type> seen = new CopyOnWriteArrayList<>();
+        CountDownLatch gate = new CountDownLatch(1);
+        EventRingBuffer.Subscription fast = system.subscribe("fast", (event, seq, endOfBatch) -> seen.add(event.getType()));
+        EventRingBuffer.Subscription slow = system.subscribe("slow", (event, seq, endOfBatch) -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        system.addVehicle(testCar);
+        system.addCustomer(testCustomer);
+        system.rentVehicle(testCar, testCustomer, LocalDate.of(2024, 6, 1), 40.0);
+        system.returnVehicle(testCar, testCustomer, LocalDate.of(2024, 6, 3), 0.0);
+        system.updateVehicleStatus(testCar, Vehicle.VehicleStatus.MAINTENANCE);
+        
+        // Each subscriber moves at its own pace.
+        assertTrue(fast.awaitCaughtUp(5000));
+        assertEquals(Arrays.asList(RentalEvent.Type.VEHICLE_ADDED, RentalEvent.Type.CUSTOMER_ADDED,
+                RentalEvent.Type.VEHICLE_RENTED, RentalEvent.Type.VEHICLE_RETURNED, RentalEvent.Type.STATUS_CHANGED), seen);
+        assertEquals(5, fast.getProcessed());
+        assertTrue(slow.getLag() > 0);
+        gate.countDown();
+        assertTrue(slow.awaitCaughtUp(5000));
+        assertEquals(0, slow.getLag());
+        fast.close();
+        slow.close();
+        assertFalse(system.getEventLog().getFeed().hasSubscribers());
+        
+        // A full ring makes the producer wait for the slowest subscriber.
+        EventRingBuffer ring = new EventRingBuffer(4);
+        AtomicLong handled = new AtomicLong();
+        EventRingBuffer.Subscription lagging = ring.subscribe("lagging", (event, seq, endOfBatch) -> {
+            handled.incrementAndGet();
+            LockSupport.parkNanos(1_000_000);
+        });
+        for (int i = 1; i <= 20; i++) {
+            ring.publish(new RentalEvent.StatusChanged(i, "ABC123", Vehicle.VehicleStatus.AVAILABLE, Vehicle.VehicleStatus.RENTED));
+            assertTrue(lagging.getLag() <= ring.getCapacity());
+        }
+        assertTrue(lagging.awaitCaughtUp(5000));
+        assertEquals(20, handled.get());
+        lagging.close();
+    }
+    
+    @Test
+    @DisplayName("Load Generator Reports Latency And Leaves State Consistent")
+    void testLoadGenerator() throws IOException {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        LoadGenerator generator = new LoadGenerator(system, 4, 40, 30);
+        generator.populate(50, 200);
+        assertEquals(50, system.getVehicles().size());
+        LoadGenerator.Report report = generator.run(300);
+        
+        assertTrue(report.getTotalOperations() > 0);
+        assertTrue(report.getThroughput() > 0);
+        for (LoadGenerator.Op op : LoadGenerator.Op.values()) {
+            LoadGenerator.Histogram latency = report.getLatency(op);
+            assertTrue(latency.percentile(0.5) <= latency.percentile(0.99));
+            assertTrue(latency.percentile(0.99) <= latency.getMax());
+        }
+        assertTrue(report.getHeapPeak() > 0);
+        assertTrue(report.toString().contains("ops/s"));
+        // Concurrent traffic leaves the system consistent with its event log.
+        assertTrue(system.verifyEventLog().isEmpty(), system.verifyEventLog().toString());
+        
+        LoadGenerator.Histogram h = new LoadGenerator.Histogram();
+        assertEquals(0, h.percentile(0.99));
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator(system, 1, 80, 30));
+    }
+    
+    @Test
+    @DisplayName("Batch Mode Runs Commands And Reports Failures By Line")
+    void testBatchCommands() throws IOException {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        String script = String.join("\n",
+                "# nightly load",
+                "add-vehicle,car,ABC123,Toyota,Corolla,2020,5",
+                "add-vehicle,truck,TRK001,Ford,F-150,2021,1500",
+                "add-customer,1001,John Doe",
+                "rent,ABC123,1001,40.00,2024-06-01",
+                "rent,ABC123,1001,40.00",
+                "return,abc123,1001,5.50,2024-06-03",
+                "status,TRK001,maintenance",
+                "",
+                "rent,ZZZ999,1001,10",
+                "add-vehicle,car,bad,Toyota,Corolla,2020,5",
+                "frobnicate",
+                "available");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        BatchRunner.Summary summary = new BatchRunner(system, LocalDate.of(2024, 7, 1))
+                .run(new BufferedReader(new StringReader(script)), out);
+        
+        assertEquals(7, summary.getSucceeded());
+        assertEquals(4, summary.getFailed());
+        assertTrue(summary.getErrors().get(0).startsWith("line 6: ABC123 is RENTED"), summary.getErrors().toString());
+        assertTrue(summary.getErrors().get(1).contains("no vehicle ZZZ999"));
+        assertTrue(summary.getErrors().get(3).contains("unknown command"));
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, system.findVehicleByPlate("ABC123").getStatus());
+        assertEquals(Vehicle.VehicleStatus.MAINTENANCE, system.findVehicleByPlate("TRK001").getStatus());
+        assertEquals(4550, system.getRentalHistory().getTotalAmountCentsByCustomer(1001));
+        assertTrue(bytes.toString().contains("ABC123"));
+        assertTrue(summary.toString().contains("11 commands, 4 failed"));
+    }
+    
+    @Test
+    @DisplayName("Startup Image Is Mapped On Restart And Ignored Once Stale")
+    void testStartupImage() throws IOException {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        system.addVehicle(testCar);
+        system.addVehicle(testMotorcycle);
+        system.addCustomer(testCustomer);
+        system.addCustomer(new Customer(7, "Zo\u00eb Ng"));
+        system.rentVehicle(testCar, testCustomer, LocalDate.of(2024, 6, 1), 40.0);
+        system.updateVehicleStatus(testMotorcycle, Vehicle.VehicleStatus.MAINTENANCE);
+        system.updateVehicleStatus(testMotorcycle, Vehicle.VehicleStatus.AVAILABLE);
+        system.close();
+        
+        // The mapped tables answer lookups without building any objects.
+        StartupImage image = StartupImage.open(tempDir);
+        assertNotNull(image);
+        assertEquals(2, image.getVehicleCount());
+        int car = image.findVehicle("abc123");
+        assertEquals("ABC123", image.readVehicle(car).getLicensePlate());
+        assertEquals(Vehicle.VehicleStatus.RENTED, image.readVehicle(car).getStatus());
+        assertFalse(image.isAvailable(car));
+        assertTrue(image.isAvailable(image.findVehicle("XYZ789")));
+        assertEquals(-1, image.findVehicle("QQQ000"));
+        assertEquals(1, image.getAvailableCount());
+        assertEquals("Zo\u00eb Ng", image.readCustomer(image.findCustomer(7)).getCustomerName());
+        assertEquals(-1, image.findCustomer(8));
+        
+        // The mapped image stays put; the next one gets a new name.
+        File first = StartupImage.latest(tempDir);
+        assertTrue(system.saveStartupImage());
+        assertNotEquals(first, StartupImage.latest(tempDir));
+        assertFalse(first.exists(), "Older images should be deleted where the platform allows");
+        
+        RentalSystem reopened = new RentalSystem(tempDir.getPath());
+        assertTrue(reopened.isLoadedFromImage());
+        assertEquals(Vehicle.VehicleStatus.RENTED, reopened.findVehicleByPlate("ABC123").getStatus());
+        assertEquals("Motorcycle", VehicleCodecs.typeName(reopened.findVehicleByPlate("XYZ789")));
+        assertEquals("Zo\u00eb Ng", reopened.findCustomerById(7).getCustomerName());
+        assertSame(reopened.getCustomers().get(1), reopened.findCustomerById(7));
+        assertNull(reopened.findCustomerById(8));
+        assertNull(reopened.findVehicleByPlate("QQQ000"));
+        assertEquals(7, reopened.findCustomerByName("zo\u00eb ng").getCustomerId());
+        assertNotNull(reopened.getActiveRental("ABC123"));
+        assertTrue(reopened.verifyEventLog().isEmpty(), reopened.verifyEventLog().toString());
+        
+        // Any later write to the text files makes the image stale.
+        reopened.returnVehicle(reopened.findVehicleByPlate("ABC123"), reopened.findCustomerById(1001), LocalDate.of(2024, 6, 3), 0.0);
+        RentalSystem afterCrash = new RentalSystem(tempDir.getPath());
+        assertFalse(afterCrash.isLoadedFromImage());
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, afterCrash.findVehicleByPlate("ABC123").getStatus());
+        
+        Files.write(new File(tempDir, "startup-99.img").toPath(), new byte[] {1, 2, 3});
+        assertFalse(new RentalSystem(tempDir.getPath()).isLoadedFromImage());
+    }
+    
+    @Test
+    @DisplayName("Customer Stats Update Per Record And Survive Archive And Restart")
+    void testCustomerStats() throws IOException {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        system.addVehicle(testCar);
+        system.addVehicle(testMotorcycle);
+        system.addCustomer(testCustomer);
+        Customer regular = new Customer(2002, "Jane Roe");
+        system.addCustomer(regular);
+        LocalDate day = LocalDate.of(2024, 1, 3);
+        for (int i = 0; i < 6; i++) {
+            system.rentVehicle(testCar, regular, day.plusMonths(i), 50.0);
+            system.returnVehicle(testCar, regular, day.plusMonths(i).plusDays(2), 10.0);
+        }
+        system.rentVehicle(testMotorcycle, testCustomer, day.plusMonths(2), 900.0);
+        
+        CustomerStats jane = system.getCustomerStats(2002);
+        assertEquals(6, jane.getRentals());
+        assertEquals(6, jane.getReturns());
+        assertEquals(36000, jane.getTotalCents());
+        assertEquals(day, jane.getFirstRental());
+        assertEquals(day.plusMonths(5), jane.getLastRental());
+        assertEquals(CustomerStats.Tier.SILVER, jane.getTier());
+        assertEquals(0, system.getCustomerStats(9999).getRentals());
+        assertEquals(1001, system.getTopCustomers(1).get(0).getCustomerId());
+        assertEquals(2002, system.getTopCustomersByRentals(2).get(0).getCustomerId());
+        assertEquals(2, system.getTopCustomers(10).size());
+        system.addCustomer(new Customer(3003, "New Comer"));
+        assertEquals(Integer.valueOf(1), system.getLoyaltyTierCounts().get(CustomerStats.Tier.BRONZE),
+                "A customer without history is BRONZE");
+        
+        // Archived months are summarized in segment headers, so stats survive
+        // trimming the journal and restarting without reading segment bodies.
+        assertTrue(system.archiveHistory(LocalDate.of(2024, 5, 1)));
+        assertEquals(36000, system.getCustomerStats(2002).getTotalCents());
+        RentalSystem reopened = new RentalSystem(tempDir.getPath());
+        CustomerStats reloaded = reopened.getCustomerStats(2002);
+        assertEquals(6, reloaded.getRentals());
+        assertEquals(36000, reloaded.getTotalCents());
+        assertEquals(day, reloaded.getFirstRental());
+        assertEquals(90000, reopened.getCustomerStats(1001).getTotalCents());
+        assertEquals(0, reopened.getRentalHistory().getArchive().getSegmentsRead());
+        assertEquals(Integer.valueOf(2), reopened.getLoyaltyTierCounts().get(CustomerStats.Tier.SILVER));
+        
+        // A segment from before the summaries is decoded once and upgraded.
+        File january = new File(tempDir, "history/2024-01.seg");
+        downgradeSegment(january);
+        RentalSystem legacy = new RentalSystem(tempDir.getPath());
+        assertEquals(36000, legacy.getCustomerStats(2002).getTotalCents());
+        assertEquals(day, legacy.getCustomerStats(2002).getFirstRental());
+        assertEquals(1, legacy.getRentalHistory().getArchive().getSegmentsRead());
+        assertEquals(2, Files.readAllBytes(january.toPath())[4]);
+        RentalSystem upgraded = new RentalSystem(tempDir.getPath());
+        assertEquals(6, upgraded.getCustomerStats(2002).getRentals());
+        assertEquals(0, upgraded.getRentalHistory().getArchive().getSegmentsRead());
+    }
+    
+    // Rewrites a segment header in the version 1 layout, without per-customer stats.
+    private static void downgradeSegment(File segment) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(segment));
+             DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(in.readInt());
+            in.readByte();
+            out.writeByte(1);
+            out.writeInt(in.readInt());
+            out.writeByte(in.readByte());
+            out.writeInt(in.readInt());
+            for (int i = 0; i < 3; i++) {
+                out.writeLong(in.readLong());
+            }
+            int plates = in.readInt();
+            out.writeInt(plates);
+            for (int i = 0; i < plates; i++) {
+                out.writeUTF(in.readUTF());
+            }
+            int customers = in.readInt();
+            out.writeInt(customers);
+            for (int i = 0; i < customers; i++) {
+                out.writeInt(in.readInt());
+                out.writeLong(in.readLong());
+                in.readInt();
+                in.readInt();
+                in.readLong();
+                in.readLong();
+            }
+            byte[] rest = new byte[4096];
+            int n;
+            while ((n = in.read(rest)) > 0) {
+                out.write(rest, 0, n);
+            }
+        }
+        Files.write(segment.toPath(), bytes.toByteArray());
+    }
+    
+    @Test
+    @DisplayName("Utilization Series Rolls Status Counts Into Minute Hour And Day Buckets")
+    void testUtilizationSeries() throws IOException {
+        AtomicLong now = new AtomicLong(1_700_000_000_000L - 1_700_000_000_000L % 86_400_000L);
+        long start = now.get();
+        UtilizationSeries series = new UtilizationSeries(now::get);
+        for (int i = 0; i < 4; i++) {
+            series.vehicleAdded("Car", Vehicle.VehicleStatus.AVAILABLE);
+        }
+        series.vehicleAdded("Truck", Vehicle.VehicleStatus.AVAILABLE);
+        
+        // Half of minute 0 with one car rented, then two rented for 90 minutes.
+        now.addAndGet(30_000);
+        series.statusChanged("Car", Vehicle.VehicleStatus.AVAILABLE, Vehicle.VehicleStatus.RENTED);
+        now.addAndGet(30_000);
+        series.statusChanged("Car", Vehicle.VehicleStatus.AVAILABLE, Vehicle.VehicleStatus.RENTED);
+        now.addAndGet(90 * 60_000L);
+        series.statusChanged("Car", Vehicle.VehicleStatus.RENTED, Vehicle.VehicleStatus.MAINTENANCE);
+        
+        List<UtilizationSeries.Point> minutes = series.range("Car", Vehicle.VehicleStatus.RENTED,
+                UtilizationSeries.Resolution.MINUTE, start, start + 3 * 60_000L);
+        assertEquals(3, minutes.size());
+        assertEquals(0.5, minutes.get(0).getAverage(), 1e-9);
+        assertEquals(0, minutes.get(0).getMin());
+        assertEquals(1, minutes.get(0).getMax());
+        assertEquals(2.0, minutes.get(1).getAverage(), 1e-9);
+        
+        List<UtilizationSeries.Point> hours = series.range("Car", Vehicle.VehicleStatus.RENTED,
+                UtilizationSeries.Resolution.HOUR, start, start + 2 * 3_600_000L);
+        assertEquals(2, hours.size());
+        assertEquals((0.5 + 59 * 2) / 60, hours.get(0).getAverage(), 1e-9);
+        assertEquals(1, hours.get(1).getMin());
+        assertEquals(2, hours.get(1).getMax());
+        UtilizationSeries.Point today = series.range(UtilizationSeries.ALL, Vehicle.VehicleStatus.AVAILABLE,
+                UtilizationSeries.Resolution.DAY, start, start + 1).get(0);
+        assertEquals(5, today.getMax());
+        assertEquals(3, series.getCurrentCount(UtilizationSeries.ALL, Vehicle.VehicleStatus.AVAILABLE));
+        assertEquals(1, series.getCurrentCount("Car", Vehicle.VehicleStatus.MAINTENANCE));
+        assertEquals(1, series.getCurrentCount("Truck", Vehicle.VehicleStatus.AVAILABLE));
+        
+        // A quiet week still fills hour and day buckets; minutes only keep the last day.
+        now.addAndGet(7 * 86_400_000L);
+        assertEquals(7 * 24 + 2, series.range("Car", Vehicle.VehicleStatus.MAINTENANCE, start, now.get() + 1).size());
+        List<UtilizationSeries.Point> days = series.range("Car", Vehicle.VehicleStatus.MAINTENANCE,
+                UtilizationSeries.Resolution.DAY, start, now.get() + 1);
+        assertEquals(8, days.size());
+        assertEquals(1.0, days.get(3).getAverage(), 1e-9);
+        assertTrue(series.range("Car", Vehicle.VehicleStatus.MAINTENANCE, UtilizationSeries.Resolution.MINUTE,
+                start, start + 60_000L).isEmpty());
+        
+        // Saved rings come back after a restart; the fleet comes back as counts, not as changes.
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        series.save(new DataOutputStream(saved));
+        now.addAndGet(86_400_000L);
+        UtilizationSeries restored = new UtilizationSeries(now::get);
+        assertTrue(restored.restore(new DataInputStream(new ByteArrayInputStream(saved.toByteArray()))));
+        restored.vehicleLoaded("Car", Vehicle.VehicleStatus.AVAILABLE);
+        restored.vehicleLoaded("Car", Vehicle.VehicleStatus.AVAILABLE);
+        restored.vehicleLoaded("Car", Vehicle.VehicleStatus.RENTED);
+        restored.vehicleLoaded("Car", Vehicle.VehicleStatus.MAINTENANCE);
+        restored.vehicleLoaded("Truck", Vehicle.VehicleStatus.AVAILABLE);
+        assertEquals(hours.get(0).getAverage(), restored.range("Car", Vehicle.VehicleStatus.RENTED,
+                UtilizationSeries.Resolution.HOUR, start, start + 3_600_000L).get(0).getAverage(), 1e-9);
+        now.addAndGet(60_000);
+        restored.statusChanged("Car", Vehicle.VehicleStatus.AVAILABLE, Vehicle.VehicleStatus.RENTED);
+        UtilizationSeries.Point afterRestart = restored.range(UtilizationSeries.ALL, Vehicle.VehicleStatus.AVAILABLE,
+                UtilizationSeries.Resolution.DAY, now.get(), now.get() + 1).get(0);
+        assertEquals(2, afterRestart.getMin(), "Loading the fleet should not dip to zero");
+        assertEquals(3, afterRestart.getMax());
+        
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        system.addVehicle(testCar);
+        system.addVehicle(testMotorcycle);
+        system.addCustomer(testCustomer);
+        system.rentVehicle(testCar, testCustomer, LocalDate.of(2024, 6, 1), 40.0);
+        assertEquals(1, system.getUtilization().getCurrentCount("Car", Vehicle.VehicleStatus.RENTED));
+        assertEquals(1, system.getUtilization().getCurrentCount(UtilizationSeries.ALL, Vehicle.VehicleStatus.AVAILABLE));
+        system.close();
+        
+        RentalSystem reopened = new RentalSystem(tempDir.getPath());
+        assertTrue(new File(tempDir, "utilization.bin").isFile());
+        long nowMillis = System.currentTimeMillis();
+        assertEquals(2, reopened.getUtilization().range(UtilizationSeries.ALL, Vehicle.VehicleStatus.AVAILABLE,
+                UtilizationSeries.Resolution.DAY, nowMillis, nowMillis + 1).get(0).getMax(), "Today's bucket predates the restart");
+        assertEquals(1, reopened.getUtilization().getCurrentCount("Car", Vehicle.VehicleStatus.RENTED));
+    }
+    
+    @Test
+    @DisplayName("Allocator Serves Waiters In Order With Timeouts And Admission Control")
+    void testRentalAllocator() throws Exception {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        SportCar ferrari = new SportCar("Ferrari", "F8", 2022, 2, 710, true);
+        ferrari.setLicensePlate("FER001");
+        system.addVehicle(ferrari);
+        system.addVehicle(testCar);
+        Customer[] customers = new Customer[4];
+        for (int i = 0; i < customers.length; i++) {
+            customers[i] = new Customer(100 + i, "Terminal " + i);
+            system.addCustomer(customers[i]);
+        }
+        LocalDate day = LocalDate.of(2024, 7, 1);
+        RentalAllocator allocator = new RentalAllocator(system, 2);
+        
+        RentalAllocator.Result first = allocator.allocate("SportCar", VehicleQuery.where().make("Ferrari"), customers[0], day, 90000, 0);
+        assertEquals(RentalAllocator.Outcome.ALLOCATED, first.getOutcome());
+        assertSame(ferrari, first.getVehicle());
+        
+        // Two terminals queue for the only sport car; a third is turned away.
+        AtomicReference<RentalAllocator.Result> a = new AtomicReference<>();
+        AtomicReference<RentalAllocator.Result> b = new AtomicReference<>();
+        Thread ta = new Thread(() -> a.set(allocator.allocate("SportCar", null, customers[1], day, 90000, 10000)));
+        ta.start();
+        while (allocator.getWaiting("SportCar") < 1) {
+            Thread.sleep(1);
+        }
+        Thread tb = new Thread(() -> b.set(allocator.allocate("SportCar", null, customers[2], day, 90000, 1500)));
+        tb.start();
+        while (allocator.getWaiting("SportCar") < 2) {
+            Thread.sleep(1);
+        }
+        RentalAllocator.Result full = allocator.allocate("SportCar", null, customers[3], day, 90000, 10000);
+        assertEquals(RentalAllocator.Outcome.REJECTED, full.getOutcome());
+        assertTrue(full.getMessage().startsWith("Too many requests"));
+        RentalAllocator.Result none = allocator.allocate("Truck", null, customers[3], day, 90000, 10000);
+        assertEquals(RentalAllocator.Outcome.REJECTED, none.getOutcome());
+        assertEquals("No Truck in the fleet matches the request.", none.getMessage());
+        
+        // The return goes to the oldest waiter; the other runs out of time.
+        assertTrue(system.returnVehicleCents(ferrari, customers[0], day.plusDays(2), 0));
+        ta.join(10000);
+        tb.join(10000);
+        assertEquals(RentalAllocator.Outcome.ALLOCATED, a.get().getOutcome());
+        assertSame(ferrari, a.get().getVehicle());
+        assertNull(a.get().getMessage());
+        assertEquals(customers[1].getCustomerId(), system.getActiveRental("FER001").getCustomer().getCustomerId());
+        assertEquals(RentalAllocator.Outcome.TIMED_OUT, b.get().getOutcome());
+        assertEquals(0, allocator.getWaiting("SportCar"));
+        assertEquals(2, allocator.getAllocated());
+        assertEquals(1, allocator.getTimedOut());
+        assertEquals(2, allocator.getRejected());
+        
+        // A caller arriving between a return and its change event must not
+        // take the car from the waiter ahead of it.
+        Customer holder = customers[1];
+        for (int i = 0; i < 20; i++) {
+            Customer next = holder == customers[0] ? customers[2] : customers[0];
+            AtomicReference<RentalAllocator.Result> queued = new AtomicReference<>();
+            Thread waiter = new Thread(() -> queued.set(allocator.allocate("SportCar", null, next, day, 90000, 10000)));
+            waiter.start();
+            while (allocator.getWaiting("SportCar") < 1) {
+                Thread.sleep(1);
+            }
+            assertTrue(system.returnVehicleCents(ferrari, holder, day.plusDays(2), 0));
+            RentalAllocator.Result late = allocator.allocate("SportCar", null, customers[3], day, 90000, 0);
+            waiter.join(10000);
+            assertEquals(RentalAllocator.Outcome.TIMED_OUT, late.getOutcome(), "Trial " + i);
+            assertEquals(RentalAllocator.Outcome.ALLOCATED, queued.get().getOutcome(), "Trial " + i);
+            holder = next;
+        }
+        allocator.close();
+    }
+    
+    @Test
+    @DisplayName("Open Rentals Reload With Their Customer ID And Due Date")
+    void testRecordsKeepCustomerIdAndDueDate() {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        Customer namesake = new Customer(1002, "John Doe");
+        system.addVehicle(testCar);
+        system.addCustomer(testCustomer);
+        system.addCustomer(namesake);
+        LocalDate day = LocalDate.of(2024, 6, 1);
+        assertTrue(system.rentVehicleCents(testCar, namesake, day, day.plusDays(21), 9000));
+        
+        RentalSystem reopened = new RentalSystem(tempDir.getPath());
+        ActiveRental open = reopened.getActiveRental("ABC123");
+        assertEquals(1002, open.getCustomer().getCustomerId(), "Same-named customers should not be confused");
+        assertEquals(day.plusDays(21), open.getDueDate());
+        assertEquals(9000, reopened.getCustomerStats(1002).getTotalCents());
+        assertEquals(0, reopened.getCustomerStats(1001).getTotalCents());
+        assertTrue(reopened.returnVehicleCents(reopened.findVehicleByPlate("ABC123"), reopened.findCustomerById(1002), day.plusDays(20), 0));
+        
+        // Lines written before IDs were stored still resolve by name.
+        RentalRecord legacy = reopened.parseRecord("RENT | Plate: ABC123 | Customer: John Doe | Date: 2024-06-01 | Amount: $90.00");
+        assertEquals(1001, legacy.getCustomer().getCustomerId());
+        assertNull(legacy.getDueDate());
+    }
+    
+    @Test
+    @DisplayName("Clock Ticks And Rentals Do Not Deadlock")
+    void testSchedulerLockOrder() throws InterruptedException {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        system.addVehicle(testCar);
+        system.addCustomer(testCustomer);
+        system.getScheduler().setServiceInterval(1);
+        system.getScheduler().setServiceUsage(1);
+        LocalDate start = LocalDate.now();
+        Thread clock = new Thread(() -> {
+            for (int i = 1; i <= 2000; i++) {
+                system.advanceClock(start.plusDays(i));
+                system.getScheduler().serviceCompleted(testCar, start.plusDays(i));
+            }
+        });
+        Thread desk = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                system.rentVehicleCents(testCar, testCustomer, start, 1000);
+                system.returnVehicleCents(testCar, testCustomer, start.plusDays(2), 0);
+            }
+        });
+        clock.setDaemon(true);
+        desk.setDaemon(true);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            clock.start();
+            desk.start();
+            clock.join(20000);
+            desk.join(20000);
+        } finally {
+            System.setOut(out);
+        }
+        assertFalse(clock.isAlive() || desk.isAlive(), "Scheduler and rentals should not deadlock");
+    }
+
+    @Test
+    @DisplayName("Restart Keeps Last Service Date And Usage")
+    void testServiceStatePersists() {
+        RentalSystem system = new RentalSystem(tempDir.getPath());
+        system.addVehicle(testCar);
+        system.addCustomer(testCustomer);
+        LocalDate start = LocalDate.now();
+        system.getScheduler().serviceCompleted(testCar, start.minusDays(170));
+        system.rentVehicleCents(testCar, testCustomer, start, 1000);
+        system.returnVehicleCents(testCar, testCustomer, start.plusDays(4), 0);
+        system.close();
+        
+        RentalSystem reopened = new RentalSystem(tempDir.getPath());
+        Vehicle car = reopened.findVehicleByPlate("ABC123");
+        assertEquals(start.minusDays(170), reopened.getScheduler().getLastService(car));
+        assertEquals(4, reopened.getScheduler().getUsage(car));
+        reopened.advanceClock(start.plusDays(10));
+        assertEquals(Vehicle.VehicleStatus.MAINTENANCE, car.getStatus(), "Interval counts from the stored service date");
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("Connection Pool Bounds, Times Out And Replaces Broken Connections")
+    void testConnectionPool() throws Exception {
+        List<boolean[]> opened = new ArrayList<>();
+        Driver driver = (Driver) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Driver.class}, (p, m, args) -> {
+            switch (m.getName()) {
+                case "acceptsURL":
+                    return ((String) args[0]).startsWith("jdbc:fakepool:");
+                case "connect": {
+                    // {valid, closed}
+                    boolean[] state = {true, false};
+                    opened.add(state);
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class}, (cp, cm, cargs) -> {
+                        switch (cm.getName()) {
+                            case "isValid":
+                                return state[0];
+                            case "close":
+                                state[1] = true;
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(cp);
+                            case "equals":
+                                return cp == cargs[0];
+                            case "toString":
+                                return "fake connection";
+                            default:
+                                return null;
+                        }
+                    });
+                }
+                case "toString":
+                    return "fake driver";
+                case "jdbcCompliant":
+                    return false;
+                default:
+                    return 0;
+            }
+        });
+        DriverManager.registerDriver(driver);
+        try (ConnectionPool pool = new ConnectionPool("jdbc:fakepool:test", null, null, 2, 50)) {
+            pool.withConnection(a -> pool.withConnection(b -> {
+                assertFalse(a == b);
+                assertThrows(SQLException.class, () -> pool.withConnection(c -> null), "Third borrower should time out");
+                return null;
+            }));
+            assertEquals(2, pool.size());
+            assertEquals(2, opened.size(), "Released connections are reused");
+            
+            opened.get(0)[0] = false;
+            opened.get(1)[0] = false;
+            for (int i = 0; i < 2; i++) {
+                assertThrows(SQLException.class, () -> pool.withConnection(c -> {
+                    throw new SQLException("connection lost");
+                }));
+            }
+            assertEquals(0, pool.size(), "Broken connections leave the pool");
+            assertTrue(opened.get(0)[1] && opened.get(1)[1]);
+            pool.withConnection(c -> null);
+            assertEquals(3, opened.size(), "A fresh connection replaces them");
+        } finally {
+            DriverManager.deregisterDriver(driver);
+        }
+        assertTrue(opened.get(2)[1], "Closing the pool closes its connections");
+    }
+
+    private static boolean hasH2() {
+        try {
+            Class.forName("org.h2.Driver");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Test
+    @DisplayName("JDBC Store Answers History Lookups From Its Indexes")
+    void testJdbcStore() throws IOException {
+        assumeTrue(hasH2(), "H2 driver not on the classpath");
+        String url = "jdbc:h2:" + new File(tempDir, "rental").getAbsolutePath();
+        RentalSystem system = new RentalSystem(new JdbcRentalStore(url));
+        system.addVehicle(testCar);
+        system.addVehicle(testMotorcycle);
+        system.addCustomer(testCustomer);
+        LocalDate start = LocalDate.of(2024, 3, 1);
+        system.rentVehicleCents(testCar, testCustomer, start, 4500);
+        system.returnVehicleCents(testCar, testCustomer, start.plusDays(2), 0);
+        system.rentVehicleCents(testMotorcycle, testCustomer, start, 3000);
+        system.close();
+        
+        RentalSystem reopened = new RentalSystem(new JdbcRentalStore(url));
+        RentalHistory history = reopened.getRentalHistory();
+        assertTrue(history.isLazy(), "Stored records should not be loaded into memory");
+        assertEquals(2, history.getRentalRecordsByVehicle("abc123").size());
+        assertEquals(3, history.getRentalRecordsByCustomer("john").size());
+        assertEquals(7500, history.getTotalAmountCents());
+        assertEquals(Vehicle.VehicleStatus.RENTED, reopened.findVehicleByPlate("XYZ789").getStatus());
+        assertNotNull(reopened.getActiveRental("XYZ789"), "Open rentals are replayed");
+        
+        reopened.returnVehicleCents(reopened.findVehicleByPlate("XYZ789"), reopened.findCustomerById(1001), start.plusDays(3), 0);
+        assertEquals(2, history.getRentalRecordsByVehicle("XYZ789").size(), "New records are not counted twice");
+        assertEquals(1, history.getRentalRecordsByCustomer("john", 3, 10).size());
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("JDBC Batching Commits Records With Their Status Changes")
+    void testJdbcBatching() throws IOException, InterruptedException {
+        assertThrows(IllegalArgumentException.class,
+                () -> new JdbcRentalStore(new ConnectionPool("jdbc:none", null, null, 1, 10), 100, 0));
+        assumeTrue(hasH2(), "H2 driver not on the classpath");
+        String url = "jdbc:h2:" + new File(tempDir, "batched").getAbsolutePath();
+        JdbcRentalStore store = new JdbcRentalStore(new ConnectionPool(url, null, null, 2, 5000), 100, 50);
+        store.saveVehicle(testCar);
+        testCar.setStatus(Vehicle.VehicleStatus.RENTED);
+        store.saveVehicleStatus(testCar);
+        store.saveRecord(new RentalRecord(testCar, testCustomer, LocalDate.of(2024, 3, 1), "RENT", 4500));
+        assertEquals(2, store.getPendingCount(), "Status and record wait together");
+        
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, store.getPendingCount(), "The flush interval bounds how long writes wait");
+        
+        assertEquals(1, store.loadRecordLines().size());
+        assertTrue(store.loadVehicleLines().get(0).contains("RENTED"));
+        
+        // The timer cannot flush a status while its record is still to come.
+        store.saveTogether(() -> {
+            try {
+                testCar.setStatus(Vehicle.VehicleStatus.AVAILABLE);
+                store.saveVehicleStatus(testCar);
+                Thread.sleep(200);
+                assertEquals(1, store.getPendingCount());
+                store.saveRecord(new RentalRecord(testCar, testCustomer, LocalDate.of(2024, 3, 2), "RETURN", 0));
+            } catch (IOException | InterruptedException e) {
+                fail(e.toString());
+            }
+        });
+        store.flush();
+        assertEquals(2, store.loadRecordLines().size());
+        store.close();
+    }
+}
@@ -0,0 +1,65 @@
+// Immutable copy of a vehicle's fields at one point in time, as held in
+// fleet snapshots. Vehicle itself stays mutable for the writers.
+public final class VehicleState {
+    private final Vehicle vehicle;
+    private final String licensePlate;
+    private final String typeName;
+    private final String make;
+    private final String model;
+    private final int year;
+    private final Vehicle.VehicleStatus status;
+    private final String info;
+
+    private VehicleState(Vehicle vehicle) {
+        this.vehicle = vehicle;
+        this.licensePlate = vehicle.getLicensePlate();
+        this.typeName = VehicleCodecs.typeName(vehicle);
+        this.make = vehicle.getMake();
+        this.model = vehicle.getModel();
+        this.year = vehicle.getYear();
+        this.status = vehicle.getStatus();
+        this.info = vehicle.getInfo();
+    }
+
+    public static VehicleState of(Vehicle vehicle) {
+        return new VehicleState(vehicle);
+    }
+
+    // The live object this state was copied from; its fields may have moved on.
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    public String getLicensePlate() {
+        return licensePlate;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public String getMake() {
+        return make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public Vehicle.VehicleStatus getStatus() {
+        return status;
+    }
+
+    public String getInfo() {
+        return info;
+    }
+
+    @Override
+    public String toString() {
+        return info;
+    }
+}